@@ -5,6 +5,7 @@ import candi.compiler.ast.PageNode;
 import candi.compiler.codegen.CodeGenerator;
 import candi.compiler.lexer.Lexer;
 import candi.compiler.lexer.Token;
+import candi.compiler.optimizer.HtmlMinifier;
 import candi.compiler.parser.Parser;
 
 import java.io.IOException;
@@ -17,10 +18,24 @@ import java.util.List;
  * Compiles .jhtml files (Java class + template) to Java source code.
  *
  * Pipeline:
- *   Source → Lexer (splits Java/template) → JavaAnalyzer + Parser → PageNode → CodeGenerator
+ *   Source → Lexer (splits Java/template) → JavaAnalyzer + Parser → PageNode
+ *          → HtmlMinifier (optional) → TemplateOptimizer (run by the generator) → CodeGenerator
  */
 public class CandiCompiler {
 
+    private final boolean minifyHtml;
+
+    public CandiCompiler() {
+        this(false);
+    }
+
+    /**
+     * @param minifyHtml minify the static HTML of the templates (see {@link HtmlMinifier})
+     */
+    public CandiCompiler(boolean minifyHtml) {
+        this.minifyHtml = minifyHtml;
+    }
+
     /**
      * Compile a .jhtml source string to Java source code.
      *
@@ -51,6 +66,9 @@ public class CandiCompiler {
         // Stage 3: Parse template
         Parser parser = new Parser(tokens, fileName);
         BodyNode body = parser.parseBody();
+        if (minifyHtml) {
+            body = new HtmlMinifier().minify(body);
+        }
 
         // Stage 4: Build AST
         String resolvedClassName = classInfo.className() != null ? classInfo.className() : className;
@@ -0,0 +1,20 @@
+package candi.compiler.ast;
+
+import candi.compiler.SourceLocation;
+import candi.compiler.expr.Expression;
+
+/**
+ * {{ cache "sidebar-" ~ category ttl=300 }} ... {{ end }}
+ *
+ * The rendered body is kept in the shared output cache under the key for ttl seconds;
+ * while it is cached the body (and everything it calls) is not evaluated.
+ */
+public record CacheNode(
+        Expression key,
+        long ttlSeconds,
+        BodyNode body,
+        SourceLocation location
+) implements Node {
+
+    public static final long DEFAULT_TTL_SECONDS = 60;
+}
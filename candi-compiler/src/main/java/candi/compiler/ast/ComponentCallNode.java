@@ -7,10 +7,18 @@ import java.util.Map;
 
 /**
  * {{ component "name" param1=expr1 param2=expr2 }}
+ *
+ * @param async the {@code async=true|false} option of a widget call, or null to follow
+ *              the page's {@code @Page(asyncWidgets)} setting
  */
 public record ComponentCallNode(
         String componentName,
         Map<String, Expression> params,
+        Boolean async,
         SourceLocation location
 ) implements Node {
+
+    public ComponentCallNode(String componentName, Map<String, Expression> params, SourceLocation location) {
+        this(componentName, params, null, location);
+    }
 }
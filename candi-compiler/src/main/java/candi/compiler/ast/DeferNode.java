@@ -0,0 +1,17 @@
+package candi.compiler.ast;
+
+import candi.compiler.SourceLocation;
+
+/**
+ * {{ defer "name" }} slow content {{ else }} fallback {{ end }}
+ *
+ * The body renders in the background and is streamed after the rest of the page,
+ * replacing a placeholder that shows the fallback (optional) in the meantime.
+ */
+public record DeferNode(
+        String name,
+        BodyNode body,
+        BodyNode fallback,
+        SourceLocation location
+) implements Node {
+}
@@ -5,11 +5,17 @@ import candi.compiler.expr.Expression;
 
 /**
  * {{ for item in collection }} ... {{ end }}
+ * With {@code parallel} after the collection, chunks of the list render concurrently.
  */
 public record ForNode(
         String variableName,
         Expression collection,
         BodyNode body,
+        boolean parallel,
         SourceLocation location
 ) implements Node {
+
+    public ForNode(String variableName, Expression collection, BodyNode body, SourceLocation location) {
+        this(variableName, collection, body, false, location);
+    }
 }
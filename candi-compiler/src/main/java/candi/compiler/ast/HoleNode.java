@@ -0,0 +1,16 @@
+package candi.compiler.ast;
+
+import candi.compiler.SourceLocation;
+
+/**
+ * {{ hole }} per-request content {{ end }}
+ *
+ * A region that is rendered fresh for every request when the rest of the page is
+ * served from a cached shell (e.g. the signed-in user's header or cart). Like
+ * fragments, the body can only use fields, not enclosing loop variables.
+ */
+public record HoleNode(
+        BodyNode body,
+        SourceLocation location
+) implements Node {
+}
@@ -2,5 +2,12 @@ package candi.compiler.ast;
 
 import candi.compiler.SourceLocation;
 
-public record HtmlNode(String content, SourceLocation location) implements Node {
+/**
+ * Static HTML. {@code verbatim} content comes from a {{ verbatim }} block and is never minified.
+ */
+public record HtmlNode(String content, SourceLocation location, boolean verbatim) implements Node {
+
+    public HtmlNode(String content, SourceLocation location) {
+        this(content, location, false);
+    }
 }
@@ -6,7 +6,7 @@ public sealed interface Node permits
         PageNode, IncludeNode, ContentNode, FragmentNode,
         BodyNode, HtmlNode, ExpressionOutputNode, RawExpressionOutputNode,
         IfNode, ForNode, ComponentCallNode,
-        SetNode, SwitchNode, SlotNode, BlockNode, StackNode, PushNode {
+        SetNode, SwitchNode, SlotNode, BlockNode, StackNode, PushNode, DeferNode, CacheNode, HoleNode {
 
     SourceLocation location();
 }
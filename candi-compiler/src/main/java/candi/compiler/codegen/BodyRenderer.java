@@ -2,9 +2,14 @@ package candi.compiler.codegen;
 
 import candi.compiler.ast.*;
 import candi.compiler.expr.Expression;
+import candi.compiler.type.TypeInfo;
+import candi.compiler.type.TypeResolver;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -56,6 +61,27 @@ public class BodyRenderer {
     private int indent;
     private int tempVarCounter = 0;
 
+    /** Static HTML chunk → name of the pre-encoded constant holding it. */
+    private final Map<String, String> staticChunks = new LinkedHashMap<>();
+    /** {{ defer }} blocks seen so far, rendered as {@code _deferN} methods by renderDeferMethods(). */
+    private final List<DeferNode> deferBlocks = new ArrayList<>();
+    private int deferMethodsRendered;
+    /** {{ hole }} regions seen so far, dispatched by the renderHole method from renderHoleMethod(). */
+    private final List<HoleNode> holes = new ArrayList<>();
+    /** Render holes in place: in widgets, and once renderHole has been generated. */
+    private boolean inlineHoles;
+    private Map<String, SubclassCodeGenerator.WidgetInfo> widgets = Map.of();
+    /** Render widget calls without an async option in parallel (@Page(asyncWidgets = true)). */
+    private boolean asyncWidgets;
+    /** Output the body writes to: {@code out}, or the chunk buffer inside a parallel {{ for }}. */
+    private String outVar = "out";
+    /** Index variables of the loops around the current node; they change per iteration. */
+    private final List<String> loopIndexVars = new ArrayList<>();
+    /** Locals read through an effectively final copy inside parallel loop chunks. */
+    private final Map<String, String> localCopies = new LinkedHashMap<>();
+    /** Field types that could be loaded, for type-directed output, comparisons and switches. */
+    private final Map<String, TypeInfo> fieldTypes = new LinkedHashMap<>();
+
     public BodyRenderer(Set<String> fieldNames, FieldAccessStrategy fieldAccess, StringBuilder sb, int indent) {
         this.fieldNames = fieldNames;
         this.fieldAccess = fieldAccess;
@@ -63,6 +89,23 @@ public class BodyRenderer {
         this.indent = indent;
     }
 
+    /**
+     * Declared types of the fields (as written in the source, e.g. "int" or "List<Post>").
+     * Types {@link TypeResolver} can load get typed code: primitive output written without
+     * {@code String.valueOf}, {@code ==} on primitives, plain boolean conditions and Java
+     * {@code switch} statements. Fields of other types keep the generic code.
+     */
+    public void setFieldTypes(Map<String, String> types) {
+        TypeResolver resolver = new TypeResolver();
+        fieldTypes.clear();
+        types.forEach((name, type) -> {
+            TypeInfo info = resolver.resolveTypeName(type);
+            if (info != null) {
+                fieldTypes.put(name, info);
+            }
+        });
+    }
+
     public void setIndent(int indent) {
         this.indent = indent;
     }
@@ -94,6 +137,9 @@ public class BodyRenderer {
             case BlockNode block -> renderBlock(block);
             case StackNode stack -> renderStack(stack);
             case PushNode push -> renderPush(push);
+            case DeferNode defer -> renderDefer(defer);
+            case CacheNode cache -> renderCache(cache);
+            case HoleNode hole -> renderHole(hole);
             default -> throw new IllegalStateException("Unexpected node in body: " + node.getClass());
         }
     }
@@ -101,18 +147,35 @@ public class BodyRenderer {
     private void renderHtml(HtmlNode html) {
         String content = html.content();
         if (!content.isEmpty()) {
-            line("out.append(\"" + CodeGenerator.escapeJavaString(content) + "\");");
+            line(outVar + ".append(" + staticChunk(content) + ");");
         }
     }
 
     private void renderExpressionOutput(ExpressionOutputNode node) {
-        String javaExpr = generateExpression(node.expression());
-        line("out.appendEscaped(String.valueOf(" + javaExpr + "));");
+        line(outputStatement(outVar, node.expression(), true));
     }
 
     private void renderRawExpressionOutput(RawExpressionOutputNode node) {
-        String javaExpr = generateExpression(node.expression());
-        line("out.append(String.valueOf(" + javaExpr + "));");
+        line(outputStatement(outVar, node.expression(), false));
+    }
+
+    /**
+     * The statement writing an expression's value. Numbers of a known primitive type are
+     * written as digits; nothing in them needs escaping.
+     */
+    private String outputStatement(String out, Expression expr, boolean escaped) {
+        String javaExpr = generateExpression(expr);
+        Class<?> type = rawClass(typeOf(expr));
+        if (type == int.class || type == short.class || type == byte.class) {
+            return out + ".appendInt(" + javaExpr + ");";
+        }
+        if (type == long.class) {
+            return out + ".appendLong(" + javaExpr + ");";
+        }
+        if (type == double.class) {
+            return out + ".appendDouble(" + javaExpr + ");";
+        }
+        return out + (escaped ? ".appendEscaped" : ".append") + "(String.valueOf(" + javaExpr + "));";
     }
 
     private void renderIf(IfNode node) {
@@ -131,28 +194,101 @@ public class BodyRenderer {
     }
 
     private void renderFor(ForNode node) {
+        if (node.parallel()) {
+            renderParallelFor(node);
+            return;
+        }
         String collection = generateExpression(node.collection());
         String varName = node.variableName();
         String listVar = "_list_" + varName;
+        String iteratorVar = "_it_" + varName;
         String indexVar = varName + "_index";
         String firstVar = varName + "_first";
         String lastVar = varName + "_last";
-        String sizeVar = "_size_" + varName;
-        String collVar = "_c_" + varName;
         line("{");
         indent++;
-        line("var " + listVar + " = " + collection + ";");
+        line("var " + listVar + " = CandiLoops.iterable(" + collection + ");");
         line("int " + indexVar + " = 0;");
-        line("int " + sizeVar + " = (" + listVar + " instanceof java.util.Collection<?> " + collVar + ") ? " + collVar + ".size() : 0;");
-        line("for (var " + varName + " : " + listVar + ") {");
+        line("try {");
         indent++;
+        line("var " + iteratorVar + " = " + listVar + ".iterator();");
+        line("while (" + iteratorVar + ".hasNext()) {");
+        indent++;
+        line("var " + varName + " = " + iteratorVar + ".next();");
         line("boolean " + firstVar + " = (" + indexVar + " == 0);");
-        line("boolean " + lastVar + " = (" + indexVar + " == " + sizeVar + " - 1);");
+        // One element of lookahead: streams and iterators are never collected
+        line("boolean " + lastVar + " = !" + iteratorVar + ".hasNext();");
+        loopIndexVars.add(indexVar);
         renderBodyNodes(node.body().children());
+        loopIndexVars.removeLast();
         line(indexVar + "++;");
         indent--;
         line("}");
         indent--;
+        line("} finally {");
+        indent++;
+        line("CandiLoops.close(" + listVar + ");");
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * {{ for x in xs parallel }}: the list is split into chunks (see HtmlOutput.parallelChunk)
+     * and each chunk renders through out.async into its own buffer, spliced in order. Index,
+     * first and last are computed from the absolute position, so they match a sequential loop.
+     * The chunk body runs in a lambda: index variables of enclosing loops are read through
+     * effectively final copies taken before the chunks start.
+     */
+    private void renderParallelFor(ForNode node) {
+        String collection = generateExpression(node.collection());
+        String varName = node.variableName();
+        String itemsVar = "_items_" + varName;
+        String sizeVar = "_size_" + varName;
+        String chunkVar = "_chunk_" + varName;
+        String fromVar = "_from_" + varName;
+        String startVar = "_start_" + varName;
+        String endVar = "_end_" + varName;
+        String indexVar = varName + "_index";
+        String chunkOut = "_out" + (tempVarCounter++);
+        line("{");
+        indent++;
+        Map<String, String> savedCopies = new LinkedHashMap<>(localCopies);
+        for (String enclosing : loopIndexVars) {
+            String copy = "_" + enclosing + (tempVarCounter++);
+            line("int " + copy + " = " + localCopies.getOrDefault(enclosing, enclosing) + ";");
+            localCopies.put(enclosing, copy);
+        }
+        line("var " + itemsVar + " = CandiLoops.toList(" + collection + ");");
+        line("int " + sizeVar + " = " + itemsVar + ".size();");
+        line("int " + chunkVar + " = " + outVar + ".parallelChunk(" + sizeVar + ");");
+        line("for (int " + fromVar + " = 0; " + fromVar + " < " + sizeVar + "; " + fromVar + " += " + chunkVar + ") {");
+        indent++;
+        line("int " + startVar + " = " + fromVar + ";");
+        line(outVar + ".asyncChunk(" + chunkVar + ", " + sizeVar + ", " + chunkOut + " -> {");
+        indent++;
+        line("int " + endVar + " = Math.min(" + startVar + " + " + chunkVar + ", " + sizeVar + ");");
+        line("for (int " + indexVar + " = " + startVar + "; " + indexVar + " < " + endVar + "; " + indexVar + "++) {");
+        indent++;
+        line("var " + varName + " = " + itemsVar + ".get(" + indexVar + ");");
+        line("boolean " + varName + "_first = (" + indexVar + " == 0);");
+        line("boolean " + varName + "_last = (" + indexVar + " == " + sizeVar + " - 1);");
+        String savedOut = outVar;
+        outVar = chunkOut;
+        loopIndexVars.add(indexVar);
+        renderBodyNodes(node.body().children());
+        loopIndexVars.removeLast();
+        outVar = savedOut;
+        localCopies.clear();
+        localCopies.putAll(savedCopies);
+        indent--;
+        line("}");
+        indent--;
+        line("});");
+        indent--;
+        line("}");
+        indent--;
         line("}");
     }
 
@@ -162,6 +298,18 @@ public class BodyRenderer {
 
     private void renderWidgetCall(ComponentCallNode node) {
         String beanName = widgetBeanName(node.componentName());
+        SubclassCodeGenerator.WidgetInfo widget = widgets.get(beanName);
+        boolean typed = widget != null && widget.paramTypes().keySet().containsAll(node.params().keySet());
+        boolean async = node.async() != null ? node.async() : asyncWidgets;
+        // Pure widgets stay on the page's thread: their memo is consulted in document order
+        if (async && !(typed && widget.pure())) {
+            renderAsyncWidgetCall(node, beanName, typed ? widget : null);
+            return;
+        }
+        if (typed) {
+            renderTypedWidgetCall(node, widget);
+            return;
+        }
         line("{");
         indent++;
         line("CandiComponent _comp = _applicationContext.getBean(\"" + beanName + "\", CandiComponent.class);");
@@ -173,18 +321,143 @@ public class BodyRenderer {
             }
             line("_comp.setParams(_params);");
         }
-        line("_comp.render(out);");
+        line("_comp.render(" + outVar + ");");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * Widget known at compile time: create it through its generated factory method and
+     * pass each parameter to its setter. The cast through Object keeps the runtime
+     * conversion of setParams(Map), without boxing values into a map.
+     */
+    private void renderTypedWidgetCall(ComponentCallNode node, SubclassCodeGenerator.WidgetInfo widget) {
+        if (widget.pure()) {
+            renderMemoizedWidgetCall(node, widget);
+            return;
+        }
+        line("{");
+        indent++;
+        line(widget.className() + " _comp = " + widget.className() + ".create(_applicationContext);");
+        for (var entry : node.params().entrySet()) {
+            String param = entry.getKey();
+            String type = widget.paramTypes().get(param);
+            String value = generateExpression(entry.getValue());
+            line("_comp.set" + Character.toUpperCase(param.charAt(0)) + param.substring(1)
+                    + "((" + type + ") (Object) (" + value + "));");
+        }
+        line("_comp.render(" + outVar + ");");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * Pure widget: parameter values are evaluated once and form the memo key (in the order
+     * of the widget's parameters, {@code WidgetMemo.UNSET} for those not passed); the widget
+     * is only created and rendered when its memo has no output for them.
+     */
+    private void renderMemoizedWidgetCall(ComponentCallNode node, SubclassCodeGenerator.WidgetInfo widget) {
+        line("{");
+        indent++;
+        List<String> args = renderWidgetArgs(node, widget);
+        // One slot per widget parameter, so calls passing different parameters never share a key
+        List<String> key = new ArrayList<>();
+        List<String> passed = new ArrayList<>(node.params().keySet());
+        for (String param : widget.paramTypes().keySet()) {
+            int i = passed.indexOf(param);
+            key.add(i >= 0 ? args.get(i) : "WidgetMemo.UNSET");
+        }
+        line("java.util.List<Object> _memoKey = java.util.Arrays.asList(" + String.join(", ", key) + ");");
+        line("WidgetMemo _memo = WidgetMemo.of(" + widget.className() + ".class);");
+        line("HtmlOutput.Captured _memoized = _memo.get(" + outVar + ", _memoKey);");
+        line("if (_memoized != null) {");
+        indent++;
+        line(outVar + ".replay(_memoized);");
+        indent--;
+        line("} else {");
+        indent++;
+        line("HtmlOutput.Region _region = " + outVar + ".beginRegion();");
+        line("try {");
+        indent++;
+        line(widget.className() + " _comp = " + widget.className() + ".create(_applicationContext);");
+        int i = 0;
+        for (String param : node.params().keySet()) {
+            line("_comp.set" + Character.toUpperCase(param.charAt(0)) + param.substring(1) + "(" + args.get(i++) + ");");
+        }
+        line("_comp.render(" + outVar + ");");
+        indent--;
+        line("} finally {");
+        indent++;
+        line("_memoized = " + outVar + ".endRegion(_region);");
+        indent--;
+        line("}");
+        line("_memo.put(" + outVar + ", _memoKey, _memoized);");
+        indent--;
+        line("}");
         indent--;
         line("}");
     }
 
+    /**
+     * Widget call marked async: parameters are evaluated here, in document order, and the
+     * widget renders on another thread into its own buffer, spliced in at this position.
+     */
+    private void renderAsyncWidgetCall(ComponentCallNode node, String beanName,
+                                       SubclassCodeGenerator.WidgetInfo widget) {
+        line("{");
+        indent++;
+        if (widget != null) {
+            List<String> args = renderWidgetArgs(node, widget);
+            line(outVar + ".async(_o -> {");
+            indent++;
+            line(widget.className() + " _comp = " + widget.className() + ".create(_applicationContext);");
+            int i = 0;
+            for (String param : node.params().keySet()) {
+                line("_comp.set" + Character.toUpperCase(param.charAt(0)) + param.substring(1) + "(" + args.get(i++) + ");");
+            }
+        } else {
+            if (!node.params().isEmpty()) {
+                line("Map<String, Object> _params = new HashMap<>();");
+                for (var entry : node.params().entrySet()) {
+                    String value = generateExpression(entry.getValue());
+                    line("_params.put(\"" + CodeGenerator.escapeJavaString(entry.getKey()) + "\", " + value + ");");
+                }
+            }
+            line(outVar + ".async(_o -> {");
+            indent++;
+            line("CandiComponent _comp = _applicationContext.getBean(\"" + beanName + "\", CandiComponent.class);");
+            if (!node.params().isEmpty()) {
+                line("_comp.setParams(_params);");
+            }
+        }
+        line("_comp.render(_o);");
+        indent--;
+        line("});");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * Evaluate the parameters of a typed widget call into {@code _argN} locals.
+     */
+    private List<String> renderWidgetArgs(ComponentCallNode node, SubclassCodeGenerator.WidgetInfo widget) {
+        List<String> args = new ArrayList<>();
+        for (var entry : node.params().entrySet()) {
+            String arg = "_arg" + args.size();
+            String type = widget.paramTypes().get(entry.getKey());
+            line("var " + arg + " = (" + type + ") (Object) (" + generateExpression(entry.getValue()) + ");");
+            args.add(arg);
+        }
+        return args;
+    }
+
     private void renderFragment(FragmentNode node) {
         // Inline: just render the body children as part of the normal page
         renderBodyNodes(node.body().children());
     }
 
     private void renderContent(ContentNode node) {
-        line("slots.renderSlot(\"content\", out);");
+        line("slots.renderSlot(\"content\", " + outVar + ");");
     }
 
     private void renderSet(SetNode node) {
@@ -193,6 +466,11 @@ public class BodyRenderer {
     }
 
     private void renderSwitch(SwitchNode node) {
+        List<String> labels = switchLabels(node);
+        if (labels != null) {
+            renderJavaSwitch(node, labels);
+            return;
+        }
         String subject = generateExpression(node.subject());
         String tmpVar = "_sw" + (tempVarCounter++);
         line("{");
@@ -229,14 +507,77 @@ public class BodyRenderer {
         line("}");
     }
 
+    /**
+     * A Java switch statement, for a String, enum or int subject with distinct literal
+     * cases. {@code case null} joins the default branch, as the equals chain would.
+     */
+    private void renderJavaSwitch(SwitchNode node, List<String> labels) {
+        line("switch (" + generateExpression(node.subject()) + ") {");
+        indent++;
+        for (int i = 0; i < labels.size(); i++) {
+            line("case " + labels.get(i) + " -> {");
+            indent++;
+            renderBodyNodes(node.cases().get(i).body().children());
+            indent--;
+            line("}");
+        }
+        boolean primitive = rawClass(typeOf(node.subject())).isPrimitive();
+        line((primitive ? "default" : "case null, default") + " -> {");
+        indent++;
+        if (node.defaultBody() != null) {
+            renderBodyNodes(node.defaultBody().children());
+        }
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * Case labels for a Java switch over the subject, or null when its type or the case
+     * values do not allow one.
+     */
+    private List<String> switchLabels(SwitchNode node) {
+        Class<?> type = rawClass(typeOf(node.subject()));
+        if (type == null || node.cases().isEmpty()) {
+            return null;
+        }
+        List<String> labels = new ArrayList<>();
+        for (SwitchNode.CaseBranch branch : node.cases()) {
+            String label = null;
+            if (type == String.class && branch.value() instanceof Expression.StringLiteral str) {
+                label = generateExpression(str);
+            } else if (type.isEnum() && branch.value() instanceof Expression.StringLiteral str
+                    && isEnumConstant(type, str.value())) {
+                label = str.value();
+            } else if ((type == int.class || type == Integer.class) && intLiteral(branch.value()) != null) {
+                label = Integer.toString(intLiteral(branch.value()));
+            }
+            if (label == null || labels.contains(label)) {
+                return null;
+            }
+            labels.add(label);
+        }
+        return labels;
+    }
+
+    private static boolean isEnumConstant(Class<?> enumType, String name) {
+        for (Object constant : enumType.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void renderSlot(SlotNode node) {
         String slotName = node.name();
         // In a layout, render the slot content or fall back to default
         line("{");
         indent++;
-        line("int _before = out.length();");
-        line("slots.renderSlot(\"" + CodeGenerator.escapeJavaString(slotName) + "\", out);");
-        line("if (out.length() == _before) {");
+        line("long _before = " + outVar + ".contentMark();");
+        line("slots.renderSlot(\"" + CodeGenerator.escapeJavaString(slotName) + "\", " + outVar + ");");
+        line("if (" + outVar + ".contentMark() == _before) {");
         indent++;
         if (node.defaultContent() != null) {
             renderBodyNodes(node.defaultContent().children());
@@ -253,25 +594,125 @@ public class BodyRenderer {
     }
 
     private void renderStack(StackNode node) {
-        line("out.renderStack(\"" + CodeGenerator.escapeJavaString(node.name()) + "\");");
+        line(outVar + ".renderStack(\"" + CodeGenerator.escapeJavaString(node.name()) + "\");");
     }
 
     private void renderPush(PushNode node) {
         String tmpVar = "_push" + (tempVarCounter++);
         line("{");
         indent++;
-        line("HtmlOutput " + tmpVar + " = new HtmlOutput();");
+        line("HtmlOutput " + tmpVar + " = new HtmlOutput(256);");
         // Render push body into temp output
         // We need to swap 'out' temporarily — but since we're generating code, we just use the temp var
         // Actually, we generate the body with tmpVar as output
         for (Node child : node.body().children()) {
             renderPushBodyNode(child, tmpVar);
         }
-        line("out.pushStack(\"" + CodeGenerator.escapeJavaString(node.name()) + "\", " + tmpVar + ".toHtml());");
+        line(outVar + ".pushStack(\"" + CodeGenerator.escapeJavaString(node.name()) + "\", " + tmpVar + ".toByteArray());");
         indent--;
         line("}");
     }
 
+    /**
+     * The deferred body becomes a method so it can render on another thread into its own
+     * output; like fragments, it can only use page fields, not enclosing loop variables.
+     */
+    private void renderDefer(DeferNode node) {
+        String method = "_defer" + deferBlocks.size();
+        deferBlocks.add(node);
+        line("if (" + outVar + ".beginDefer(\"" + CodeGenerator.escapeJavaString(node.name()) + "\", this::" + method + ")) {");
+        indent++;
+        if (node.fallback() != null) {
+            renderBodyNodes(node.fallback().children());
+        }
+        line(outVar + ".endDefer();");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * The region renders in place, so it sees enclosing loop variables; on a cache hit
+     * beginCache() has already appended the stored bytes and the region is skipped.
+     */
+    private void renderCache(CacheNode node) {
+        String keyVar = "_cacheKey" + tempVarCounter;
+        String markVar = "_cacheMark" + (tempVarCounter++);
+        line("{");
+        indent++;
+        line("String " + keyVar + " = String.valueOf(" + generateExpression(node.key()) + ");");
+        line("int " + markVar + " = " + outVar + ".beginCache(" + keyVar + ");");
+        line("if (" + markVar + " >= 0) {");
+        indent++;
+        renderBodyNodes(node.body().children());
+        line(outVar + ".endCache(" + keyVar + ", " + markVar + ", " + node.ttlSeconds() + "L);");
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * Generate the {@code _deferN} methods for all {{ defer }} blocks rendered so far,
+     * including blocks nested inside them. Called after all render methods; blocks whose
+     * methods were generated by an earlier call are skipped.
+     */
+    public void renderDeferMethods() {
+        while (deferMethodsRendered < deferBlocks.size()) {
+            int i = deferMethodsRendered++;
+            line("");
+            line("private void _defer" + i + "(HtmlOutput out) {");
+            indent++;
+            renderBodyNodes(deferBlocks.get(i).body().children());
+            indent--;
+            line("}");
+        }
+    }
+
+    /**
+     * The hole renders through the class's renderHole(id, out), both in place and when a
+     * cached page shell is filled in, so it is the same code either way.
+     */
+    private void renderHole(HoleNode node) {
+        if (inlineHoles) {
+            renderBodyNodes(node.body().children());
+            return;
+        }
+        line(outVar + ".hole(this, " + holes.size() + ");");
+        holes.add(node);
+    }
+
+    /**
+     * Generate the renderHole(id, out) dispatch for all {{ hole }} regions rendered so far.
+     * Called once per class after the render and defer methods; holes found later (in
+     * deferred blocks of holes) render in place.
+     */
+    public void renderHoleMethod() {
+        inlineHoles = true;
+        if (holes.isEmpty()) return;
+        line("");
+        line("@Override");
+        line("public void renderHole(int _id, HtmlOutput out) {");
+        indent++;
+        line("switch (_id) {");
+        indent++;
+        for (int i = 0; i < holes.size(); i++) {
+            line("case " + i + " -> {");
+            indent++;
+            renderBodyNodes(holes.get(i).body().children());
+            indent--;
+            line("}");
+        }
+        line("default -> throw new IllegalArgumentException(\"Unknown hole: \" + _id);");
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+    }
+
+    public void setInlineHoles(boolean inlineHoles) {
+        this.inlineHoles = inlineHoles;
+    }
+
     /**
      * Render a body node but targeting a different output variable.
      */
@@ -280,17 +721,11 @@ public class BodyRenderer {
             case HtmlNode html -> {
                 String content = html.content();
                 if (!content.isEmpty()) {
-                    line(outVar + ".append(\"" + CodeGenerator.escapeJavaString(content) + "\");");
+                    line(outVar + ".append(" + staticChunk(content) + ");");
                 }
             }
-            case ExpressionOutputNode expr -> {
-                String javaExpr = generateExpression(expr.expression());
-                line(outVar + ".appendEscaped(String.valueOf(" + javaExpr + "));");
-            }
-            case RawExpressionOutputNode raw -> {
-                String javaExpr = generateExpression(raw.expression());
-                line(outVar + ".append(String.valueOf(" + javaExpr + "));");
-            }
+            case ExpressionOutputNode expr -> line(outputStatement(outVar, expr.expression(), true));
+            case RawExpressionOutputNode raw -> line(outputStatement(outVar, raw.expression(), false));
             default -> {
                 // For complex nodes inside push, fall back to rendering into the temp output
                 // This is a simplified approach — complex nested structures in push blocks
@@ -326,6 +761,10 @@ public class BodyRenderer {
                 }
             } else if (node instanceof ForNode forNode) {
                 collectFragmentsFromNodes(forNode.body().children(), fragments);
+            } else if (node instanceof CacheNode cache) {
+                collectFragmentsFromNodes(cache.body().children(), fragments);
+            } else if (node instanceof HoleNode hole) {
+                collectFragmentsFromNodes(hole.body().children(), fragments);
             }
         }
     }
@@ -352,6 +791,10 @@ public class BodyRenderer {
                 }
             } else if (node instanceof ForNode forNode) {
                 collectBlocksFromNodes(forNode.body().children(), blocks);
+            } else if (node instanceof CacheNode cache) {
+                collectBlocksFromNodes(cache.body().children(), blocks);
+            } else if (node instanceof HoleNode hole) {
+                collectBlocksFromNodes(hole.body().children(), blocks);
             }
         }
     }
@@ -403,11 +846,37 @@ public class BodyRenderer {
         }
     }
 
+    // ========== Static Chunk Constants ==========
+
+    /**
+     * Get the constant name for a static HTML chunk, registering it on first use.
+     * Identical chunks share one constant.
+     */
+    private String staticChunk(String content) {
+        return staticChunks.computeIfAbsent(content, c -> "_HTML_" + staticChunks.size());
+    }
+
+    /**
+     * Generate the {@code static final byte[]} constants for all static HTML chunks
+     * referenced so far. Called once per class, after all render methods.
+     */
+    public void renderStaticChunks() {
+        if (staticChunks.isEmpty()) return;
+        line("");
+        for (var entry : staticChunks.entrySet()) {
+            line("private static final byte[] " + entry.getValue() + " = HtmlOutput.utf8(\""
+                    + CodeGenerator.escapeJavaString(entry.getKey()) + "\");");
+        }
+    }
+
     // ========== Expression Code Generation ==========
 
     public String generateExpression(Expression expr) {
         return switch (expr) {
             case Expression.Variable v -> {
+                if (localCopies.containsKey(v.name())) {
+                    yield localCopies.get(v.name());
+                }
                 if (fieldNames.contains(v.name())) {
                     yield fieldAccess.readField(v.name());
                 }
@@ -445,7 +914,10 @@ public class BodyRenderer {
             case Expression.BinaryOp b -> {
                 String left = generateExpression(b.left());
                 String right = generateExpression(b.right());
-                if ("==".equals(b.operator())) {
+                if (("==".equals(b.operator()) || "!=".equals(b.operator()))
+                        && comparableAsPrimitives(typeOf(b.left()), typeOf(b.right()))) {
+                    yield "(" + left + " " + b.operator() + " " + right + ")";
+                } else if ("==".equals(b.operator())) {
                     yield "Objects.equals(" + left + ", " + right + ")";
                 } else if ("!=".equals(b.operator())) {
                     yield "!Objects.equals(" + left + ", " + right + ")";
@@ -511,16 +983,190 @@ public class BodyRenderer {
         if (expr instanceof Expression.Ternary) {
             return javaExpr;
         }
+        if (rawClass(typeOf(expr)) == boolean.class) {
+            return javaExpr;
+        }
         return javaExpr + " != null && !Boolean.FALSE.equals(" + javaExpr + ")";
     }
 
+    // ========== Static types ==========
+
+    /**
+     * The static type of an expression's generated Java code, or null where it is not known
+     * (e.g. properties of classes that cannot be loaded, filters, null-safe access).
+     */
+    private TypeInfo typeOf(Expression expr) {
+        return switch (expr) {
+            case Expression.Variable v -> {
+                if (loopIndexVars.contains(v.name())) {
+                    yield TypeInfo.INT;
+                }
+                if (isLoopFlag(v.name())) {
+                    yield TypeInfo.BOOLEAN;
+                }
+                yield fieldNames.contains(v.name()) ? fieldTypes.get(v.name()) : null;
+            }
+            case Expression.StringLiteral ignored -> TypeInfo.STRING;
+            case Expression.NumberLiteral n -> intLiteral(n) != null ? TypeInfo.INT
+                    : n.value().matches("-?[0-9]+\\.[0-9]+") ? TypeInfo.DOUBLE : null;
+            case Expression.BooleanLiteral ignored -> TypeInfo.BOOLEAN;
+            case Expression.PropertyAccess p -> {
+                TypeInfo object = typeOf(p.object());
+                yield object != null && !object.rawClass().isPrimitive() ? object.resolveProperty(p.property()) : null;
+            }
+            case Expression.MethodCall m -> {
+                TypeInfo object = typeOf(m.object());
+                yield object != null && !object.rawClass().isPrimitive()
+                        ? object.resolveMethod(m.methodName(), m.arguments().size()) : null;
+            }
+            case Expression.BinaryOp b -> switch (b.operator()) {
+                case "==", "!=", "<", ">", "<=", ">=", "&&", "||" -> TypeInfo.BOOLEAN;
+                case "~" -> TypeInfo.STRING;
+                case "+", "-", "*", "/", "%" -> {
+                    TypeInfo left = typeOf(b.left());
+                    TypeInfo right = typeOf(b.right());
+                    if (b.operator().equals("+") && (isString(left) || isString(right))) {
+                        yield TypeInfo.STRING;
+                    }
+                    yield numericPromotion(left, right);
+                }
+                default -> null;
+            };
+            case Expression.UnaryNot ignored -> TypeInfo.BOOLEAN;
+            case Expression.UnaryMinus u -> numericPromotion(typeOf(u.operand()), TypeInfo.INT);
+            case Expression.Grouped g -> typeOf(g.inner());
+            case Expression.Ternary t -> {
+                TypeInfo then = typeOf(t.thenExpr());
+                yield then != null && then.equals(typeOf(t.elseExpr())) ? then : null;
+            }
+            default -> null;
+        };
+    }
+
+    private static Class<?> rawClass(TypeInfo type) {
+        return type != null ? type.rawClass() : null;
+    }
+
+    private static boolean isString(TypeInfo type) {
+        return type != null && type.isString();
+    }
+
+    private static boolean isPrimitiveNumber(TypeInfo type) {
+        Class<?> c = rawClass(type);
+        return c != null && c.isPrimitive() && c != boolean.class && c != char.class && c != void.class;
+    }
+
+    /**
+     * Java's binary numeric promotion for two primitive operands; null unless both are.
+     */
+    private static TypeInfo numericPromotion(TypeInfo left, TypeInfo right) {
+        if (!isPrimitiveNumber(left) || !isPrimitiveNumber(right)) {
+            return null;
+        }
+        Class<?> l = left.rawClass();
+        Class<?> r = right.rawClass();
+        if (l == double.class || r == double.class) return TypeInfo.DOUBLE;
+        if (l == float.class || r == float.class) return new TypeInfo(float.class);
+        if (l == long.class || r == long.class) return TypeInfo.LONG;
+        return TypeInfo.INT;
+    }
+
+    /**
+     * Both sides primitive numbers, or both primitive booleans: {@code ==} compares values,
+     * where Objects.equals would box them (and find {@code 1L} and {@code 1} different).
+     */
+    private static boolean comparableAsPrimitives(TypeInfo left, TypeInfo right) {
+        return (isPrimitiveNumber(left) && isPrimitiveNumber(right))
+                || (rawClass(left) == boolean.class && rawClass(right) == boolean.class);
+    }
+
+    /**
+     * Value of an int literal written in plain decimal, or null.
+     */
+    private static Integer intLiteral(Expression expr) {
+        if (!(expr instanceof Expression.NumberLiteral n) || !n.value().matches("-?(0|[1-9][0-9]*)")) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(n.value());
+        } catch (NumberFormatException tooLarge) {
+            return null;
+        }
+    }
+
     // ========== Helpers ==========
 
+    /**
+     * x_first / x_last of an enclosing loop: primitive booleans.
+     */
+    private boolean isLoopFlag(String name) {
+        for (String suffix : List.of("_first", "_last")) {
+            if (name.endsWith(suffix)
+                    && loopIndexVars.contains(name.substring(0, name.length() - suffix.length()) + "_index")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String toGetter(String property) {
         return "get" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
     }
 
-    private String widgetBeanName(String widgetName) {
+    /**
+     * Widgets whose generated class is known at compile time, keyed by bean name.
+     * Calls to these widgets are rendered without a bean lookup or parameter map.
+     */
+    public void setWidgets(Map<String, SubclassCodeGenerator.WidgetInfo> widgets) {
+        this.widgets = widgets;
+    }
+
+    public void setAsyncWidgets(boolean asyncWidgets) {
+        this.asyncWidgets = asyncWidgets;
+    }
+
+    /**
+     * Names of all widgets called in a template body, e.g. "alert" for {{ widget "alert" }}.
+     */
+    public static Set<String> collectWidgetNames(BodyNode body) {
+        Set<String> names = new LinkedHashSet<>();
+        collectWidgetNames(body, names);
+        return names;
+    }
+
+    private static void collectWidgetNames(BodyNode body, Set<String> names) {
+        if (body == null) return;
+        for (Node node : body.children()) {
+            switch (node) {
+                case ComponentCallNode call -> names.add(call.componentName());
+                case IfNode ifNode -> {
+                    collectWidgetNames(ifNode.thenBody(), names);
+                    collectWidgetNames(ifNode.elseBody(), names);
+                }
+                case ForNode forNode -> collectWidgetNames(forNode.body(), names);
+                case FragmentNode fragment -> collectWidgetNames(fragment.body(), names);
+                case BlockNode block -> collectWidgetNames(block.body(), names);
+                case PushNode push -> collectWidgetNames(push.body(), names);
+                case CacheNode cache -> collectWidgetNames(cache.body(), names);
+                case HoleNode hole -> collectWidgetNames(hole.body(), names);
+                case DeferNode defer -> {
+                    collectWidgetNames(defer.body(), names);
+                    collectWidgetNames(defer.fallback(), names);
+                }
+                case SlotNode slot -> collectWidgetNames(slot.defaultContent(), names);
+                case SwitchNode switchNode -> {
+                    for (SwitchNode.CaseBranch branch : switchNode.cases()) {
+                        collectWidgetNames(branch.body(), names);
+                    }
+                    collectWidgetNames(switchNode.defaultBody(), names);
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    public static String widgetBeanName(String widgetName) {
         StringBuilder sb = new StringBuilder();
         boolean nextUpper = true;
         for (char c : widgetName.toCharArray()) {
@@ -548,6 +1194,15 @@ public class BodyRenderer {
             if (node instanceof FragmentNode fragmentNode) {
                 if (hasComponentCallsInBody(fragmentNode.body())) return true;
             }
+            if (node instanceof DeferNode defer) {
+                if (hasComponentCallsInBody(defer.body()) || hasComponentCallsInBody(defer.fallback())) return true;
+            }
+            if (node instanceof CacheNode cache) {
+                if (hasComponentCallsInBody(cache.body())) return true;
+            }
+            if (node instanceof HoleNode hole) {
+                if (hasComponentCallsInBody(hole.body())) return true;
+            }
         }
         return false;
     }
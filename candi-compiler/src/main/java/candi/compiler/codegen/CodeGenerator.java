@@ -3,6 +3,7 @@ package candi.compiler.codegen;
 import candi.compiler.JavaAnalyzer;
 import candi.compiler.ast.*;
 import candi.compiler.expr.Expression;
+import candi.compiler.optimizer.TemplateOptimizer;
 
 import java.util.ArrayList;
 import java.util.*;
@@ -24,7 +25,9 @@ public class CodeGenerator {
     private int tempVarCounter = 0;
 
     public CodeGenerator(PageNode page, String packageName, String className) {
-        this.page = page;
+        this.page = new PageNode(page.javaSource(), page.className(), page.fileType(), page.pagePath(),
+                page.layoutName(), page.fieldNames(), page.fieldTypes(),
+                new TemplateOptimizer().optimize(page.body()), page.location());
         this.packageName = packageName;
         this.className = className;
     }
@@ -402,6 +405,11 @@ public class CodeGenerator {
             case BlockNode block -> generateBlock(block);
             case StackNode stack -> generateStack(stack);
             case PushNode push -> generatePush(push);
+            // The legacy generator has no background rendering: deferred content renders in place
+            case DeferNode defer -> generateBodyNodes(defer.body().children());
+            case CacheNode cache -> generateCache(cache);
+            // The legacy generator does not cache page shells: holes render in place
+            case HoleNode hole -> generateBodyNodes(hole.body().children());
             default -> throw new IllegalStateException("Unexpected node in body: " + node.getClass());
         }
     }
@@ -531,9 +539,9 @@ public class CodeGenerator {
         String slotName = node.name();
         line("{");
         indent++;
-        line("int _before = out.length();");
+        line("long _before = out.contentMark();");
         line("slots.renderSlot(\"" + escapeJavaString(slotName) + "\", out);");
-        line("if (out.length() == _before) {");
+        line("if (out.contentMark() == _before) {");
         indent++;
         if (node.defaultContent() != null) {
             generateBodyNodes(node.defaultContent().children());
@@ -552,11 +560,28 @@ public class CodeGenerator {
         line("out.renderStack(\"" + escapeJavaString(node.name()) + "\");");
     }
 
+    private void generateCache(CacheNode node) {
+        String keyVar = "_cacheKey" + tempVarCounter;
+        String markVar = "_cacheMark" + (tempVarCounter++);
+        line("{");
+        indent++;
+        line("String " + keyVar + " = String.valueOf(" + generateExpression(node.key()) + ");");
+        line("int " + markVar + " = out.beginCache(" + keyVar + ");");
+        line("if (" + markVar + " >= 0) {");
+        indent++;
+        generateBodyNodes(node.body().children());
+        line("out.endCache(" + keyVar + ", " + markVar + ", " + node.ttlSeconds() + "L);");
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+    }
+
     private void generatePush(PushNode node) {
         String tmpVar = "_push" + (tempVarCounter++);
         line("{");
         indent++;
-        line("HtmlOutput " + tmpVar + " = new HtmlOutput();");
+        line("HtmlOutput " + tmpVar + " = new HtmlOutput(256);");
         for (Node child : node.body().children()) {
             switch (child) {
                 case HtmlNode html -> {
@@ -576,7 +601,7 @@ public class CodeGenerator {
                 default -> generateBodyNode(child);
             }
         }
-        line("out.pushStack(\"" + escapeJavaString(node.name()) + "\", " + tmpVar + ".toHtml());");
+        line("out.pushStack(\"" + escapeJavaString(node.name()) + "\", " + tmpVar + ".toByteArray());");
         indent--;
         line("}");
     }
@@ -634,6 +659,10 @@ public class CodeGenerator {
                 }
             } else if (node instanceof ForNode forNode) {
                 collectFragmentsFromNodes(forNode.body().children(), fragments);
+            } else if (node instanceof CacheNode cache) {
+                collectFragmentsFromNodes(cache.body().children(), fragments);
+            } else if (node instanceof HoleNode hole) {
+                collectFragmentsFromNodes(hole.body().children(), fragments);
             }
         }
     }
@@ -657,6 +686,10 @@ public class CodeGenerator {
                 }
             } else if (node instanceof ForNode forNode) {
                 collectBlocksFromNodes(forNode.body().children(), blocks);
+            } else if (node instanceof CacheNode cache) {
+                collectBlocksFromNodes(cache.body().children(), blocks);
+            } else if (node instanceof HoleNode hole) {
+                collectBlocksFromNodes(hole.body().children(), blocks);
             }
         }
     }
@@ -841,6 +874,15 @@ public class CodeGenerator {
             if (node instanceof FragmentNode fragmentNode) {
                 if (hasComponentCallsInBody(fragmentNode.body())) return true;
             }
+            if (node instanceof DeferNode defer) {
+                if (hasComponentCallsInBody(defer.body())) return true;
+            }
+            if (node instanceof CacheNode cache) {
+                if (hasComponentCallsInBody(cache.body())) return true;
+            }
+            if (node instanceof HoleNode hole) {
+                if (hasComponentCallsInBody(hole.body())) return true;
+            }
         }
         return false;
     }
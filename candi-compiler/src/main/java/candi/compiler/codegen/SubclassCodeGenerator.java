@@ -4,6 +4,7 @@ import candi.compiler.JavaAnalyzer;
 import candi.compiler.ast.BlockNode;
 import candi.compiler.ast.BodyNode;
 import candi.compiler.ast.FragmentNode;
+import candi.compiler.optimizer.TemplateOptimizer;
 
 import java.util.*;
 
@@ -30,6 +31,51 @@ public class SubclassCodeGenerator {
      */
     public record RequestParamInfo(String paramName, String defaultValue, boolean required) {}
 
+    /**
+     * An action method the generated class can call directly from dispatchAction().
+     * Only non-private, no-arg methods qualify; others are left to the runtime fallback.
+     *
+     * @param returnType "void", "ActionResult", or any other type (result is then ignored)
+     */
+    public record ActionHandler(String methodName, String returnType) {}
+
+    /**
+     * An {@code @Autowired} field of the user class, injected by the generated page factory.
+     *
+     * @param type      fully qualified, non-generic type name
+     * @param viaSetter true for private fields, which are set through their setter
+     */
+    public record Injection(String fieldName, String type, boolean viaSetter) {}
+
+    /**
+     * Dependencies of a page that can be created by a generated {@code Factory}
+     * instead of the request scope. Absent (null) when the page must stay Spring-managed.
+     * For widgets, present with no injections when the widget can be created with {@code new}.
+     */
+    public record PageFactoryInfo(List<Injection> injections) {}
+
+    /**
+     * A widget whose generated class is known when compiling a page.
+     *
+     * @param className  fully qualified name of the widget's {@code _Candi} class
+     * @param paramTypes parameter name → fully qualified type, for params with accessible setters
+     * @param pure       declared {@code @Widget(pure = true)}: calls are memoized by parameter values
+     */
+    public record WidgetInfo(String className, Map<String, String> paramTypes, boolean pure) {
+        public WidgetInfo(String className, Map<String, String> paramTypes) {
+            this(className, paramTypes, false);
+        }
+    }
+
+    /**
+     * A {@code @LazyLoad} getter, overridden in the generated class to load its value once.
+     *
+     * @param modifier   access modifier of the getter ("public", "protected" or "")
+     * @param returnType fully qualified return type, as declared
+     * @param valueType  {@code returnType} with primitives boxed, for the {@code LazyValue}
+     */
+    public record LazyGetter(String methodName, String modifier, String returnType, String valueType) {}
+
     /**
      * Input data for subclass generation. All information needed to generate the _Candi class.
      * Replaces PageNode as the input — the annotation processor constructs this directly.
@@ -47,18 +93,54 @@ public class SubclassCodeGenerator {
             Map<String, RequestParamInfo> requestParams,  // fieldName -> info
             Map<String, String> pathVariables,             // fieldName -> varName
             Set<String> pageableFields,                    // fields of type Pageable
-            boolean hasInitMethod                          // whether parent has init()
-    ) {}
+            boolean hasInitMethod,                         // whether parent has init()
+            Map<String, ActionHandler> actionHandlers,     // "POST" -> directly callable action method
+            PageFactoryInfo pageFactory,                   // nullable: no factory, use the request scope
+            Map<String, WidgetInfo> widgets,               // widget bean name -> compile-time widget info
+            List<LazyGetter> lazyGetters,                  // @LazyLoad getters to memoize
+            boolean asyncWidgets                           // @Page(asyncWidgets = true)
+    ) {
+        public SubclassInput(String userClassName, String packageName, JavaAnalyzer.FileType fileType,
+                             String pagePath, String layoutName,
+                             Set<String> fieldNames, Map<String, String> fieldTypes, Set<String> actionMethods,
+                             BodyNode body,
+                             Map<String, RequestParamInfo> requestParams, Map<String, String> pathVariables,
+                             Set<String> pageableFields, boolean hasInitMethod,
+                             Map<String, ActionHandler> actionHandlers, PageFactoryInfo pageFactory,
+                             Map<String, WidgetInfo> widgets) {
+            this(userClassName, packageName, fileType, pagePath, layoutName,
+                    fieldNames, fieldTypes, actionMethods, body,
+                    requestParams, pathVariables, pageableFields, hasInitMethod,
+                    actionHandlers, pageFactory, widgets, List.of(), false);
+        }
+
+        public SubclassInput(String userClassName, String packageName, JavaAnalyzer.FileType fileType,
+                             String pagePath, String layoutName,
+                             Set<String> fieldNames, Map<String, String> fieldTypes, Set<String> actionMethods,
+                             BodyNode body,
+                             Map<String, RequestParamInfo> requestParams, Map<String, String> pathVariables,
+                             Set<String> pageableFields, boolean hasInitMethod) {
+            this(userClassName, packageName, fileType, pagePath, layoutName,
+                    fieldNames, fieldTypes, actionMethods, body,
+                    requestParams, pathVariables, pageableFields, hasInitMethod, Map.of(), null, Map.of());
+        }
+    }
 
     private final SubclassInput input;
+    /** The template body after {@link TemplateOptimizer}. */
+    private final BodyNode body;
     private final StringBuilder sb = new StringBuilder();
     private int indent = 0;
     private final BodyRenderer bodyRenderer;
 
     public SubclassCodeGenerator(SubclassInput input) {
         this.input = input;
+        this.body = new TemplateOptimizer().optimize(input.body);
         this.bodyRenderer = new BodyRenderer(
                 input.fieldNames, BodyRenderer.GETTER_SETTER, sb, 0);
+        this.bodyRenderer.setWidgets(input.widgets);
+        this.bodyRenderer.setAsyncWidgets(input.asyncWidgets);
+        this.bodyRenderer.setFieldTypes(input.fieldTypes);
     }
 
     public String generate() {
@@ -88,7 +170,7 @@ public class SubclassCodeGenerator {
         line("import org.springframework.web.context.WebApplicationContext;");
         line("import candi.runtime.*;");
         line("import java.util.Objects;");
-        if (bodyRenderer.hasComponentCallsInBody(input.body)) {
+        if (bodyRenderer.hasComponentCallsInBody(body)) {
             line("import org.springframework.context.ApplicationContext;");
             line("import java.util.Map;");
             line("import java.util.HashMap;");
@@ -124,7 +206,7 @@ public class SubclassCodeGenerator {
         line("public class " + generatedClassName + " extends " + input.userClassName + " implements CandiPage {");
         indent++;
 
-        if (bodyRenderer.hasComponentCallsInBody(input.body)) {
+        if (bodyRenderer.hasComponentCallsInBody(body)) {
             line("");
             line("@Autowired");
             line("private ApplicationContext _applicationContext;");
@@ -147,79 +229,266 @@ public class SubclassCodeGenerator {
             generateInitOverride();
         }
 
+        if (!input.actionHandlers.isEmpty()) {
+            line("");
+            generateDispatchAction();
+        }
+
+        generateLazyGetters();
+
         line("");
         generatePageRender();
         generateFragmentMethods();
+        generateDeferMethods();
+        generateStaticChunks();
+
+        if (input.pageFactory != null) {
+            line("");
+            generatePageFactory();
+        }
 
         indent--;
         line("}");
     }
 
+    /**
+     * Direct calls to the action methods, replacing per-request reflection in the adapter.
+     * Methods without a handler return null so the adapter falls back to its lookup.
+     */
+    private void generateDispatchAction() {
+        line("@Override");
+        line("public ActionResult dispatchAction(String httpMethod) throws Exception {");
+        indent++;
+        line("switch (httpMethod) {");
+        indent++;
+        for (Map.Entry<String, ActionHandler> entry : input.actionHandlers.entrySet()) {
+            ActionHandler handler = entry.getValue();
+            String call = "this." + handler.methodName() + "()";
+            line("case \"" + entry.getKey() + "\" -> {");
+            indent++;
+            if ("ActionResult".equals(handler.returnType())) {
+                line("ActionResult _result = " + call + ";");
+                line("return _result != null ? _result : ActionResult.render();");
+            } else {
+                line(call + ";");
+                line("return ActionResult.render();");
+            }
+            indent--;
+            line("}");
+        }
+        line("default -> {");
+        indent++;
+        line("return null;");
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+        indent--;
+        line("}");
+    }
+
+    /**
+     * Override each {@code @LazyLoad} getter so the template's first read loads the value
+     * and later reads (and the page's own calls) reuse it.
+     */
+    private void generateLazyGetters() {
+        for (LazyGetter getter : input.lazyGetters) {
+            String field = "_lazy_" + getter.methodName();
+            line("");
+            line("private final LazyValue<" + getter.valueType() + "> " + field + " = new LazyValue<>();");
+            line("");
+            line("@Override");
+            String modifier = getter.modifier().isEmpty() ? "" : getter.modifier() + " ";
+            line(modifier + getter.returnType() + " " + getter.methodName() + "() {");
+            indent++;
+            line("return " + field + ".get(super::" + getter.methodName() + ");");
+            indent--;
+            line("}");
+        }
+    }
+
     private void generatePageRender() {
+        if (input.layoutName != null) {
+            generateLayoutPageRender();
+            return;
+        }
         line("@Override");
         line("public void render(HtmlOutput out) {");
         indent++;
         bodyRenderer.setIndent(indent);
-        if (input.layoutName != null) {
-            String layoutField = layoutFieldName(input.layoutName);
-            List<BlockNode> blocks = bodyRenderer.collectBlocks(input.body);
-            line(layoutField + ".render(out, (slotName, slotOut) -> {");
+        if (body != null) {
+            bodyRenderer.renderBodyNodes(body.children());
+        }
+        indent--;
+        bodyRenderer.setIndent(indent);
+        line("}");
+    }
+
+    /**
+     * Pages with a layout render through {@code _renderLayout}, which the early-flush
+     * variant calls with an EarlyFlush that loads page data at the first slot.
+     */
+    private void generateLayoutPageRender() {
+        line("@Override");
+        line("public void render(HtmlOutput out) {");
+        indent++;
+        line("_renderLayout(out, null);");
+        indent--;
+        line("}");
+        line("");
+        line("@Override");
+        line("public void renderWithEarlyFlush(HtmlOutput out, EarlyFlush earlyFlush) {");
+        indent++;
+        line("_renderLayout(out, earlyFlush);");
+        indent--;
+        line("}");
+        line("");
+        line("private void _renderLayout(HtmlOutput out, EarlyFlush earlyFlush) {");
+        indent++;
+        bodyRenderer.setIndent(indent);
+        String layoutField = layoutFieldName(input.layoutName);
+        List<BlockNode> blocks = bodyRenderer.collectBlocks(body);
+        line("SlotProvider _slots = (slotName, slotOut) -> {");
+        indent++;
+        bodyRenderer.setIndent(indent);
+        if (blocks.isEmpty()) {
+            line("if (\"content\".equals(slotName)) {");
             indent++;
             bodyRenderer.setIndent(indent);
-            if (blocks.isEmpty()) {
-                line("if (\"content\".equals(slotName)) {");
-                indent++;
-                bodyRenderer.setIndent(indent);
-                if (input.body != null) {
-                    bodyRenderer.renderBodyNodes(input.body.children());
-                }
-                indent--;
-                bodyRenderer.setIndent(indent);
-                line("}");
-            } else {
-                line("switch (slotName) {");
-                indent++;
-                bodyRenderer.setIndent(indent);
-                line("case \"content\" -> {");
+            if (body != null) {
+                bodyRenderer.renderBodyNodes(body.children());
+            }
+            indent--;
+            bodyRenderer.setIndent(indent);
+            line("}");
+        } else {
+            line("switch (slotName) {");
+            indent++;
+            bodyRenderer.setIndent(indent);
+            line("case \"content\" -> {");
+            indent++;
+            bodyRenderer.setIndent(indent);
+            if (body != null) {
+                bodyRenderer.renderBodyNodes(body.children());
+            }
+            indent--;
+            bodyRenderer.setIndent(indent);
+            line("}");
+            for (BlockNode block : blocks) {
+                line("case \"" + CodeGenerator.escapeJavaString(block.name()) + "\" -> {");
                 indent++;
                 bodyRenderer.setIndent(indent);
-                if (input.body != null) {
-                    bodyRenderer.renderBodyNodes(input.body.children());
-                }
-                indent--;
-                bodyRenderer.setIndent(indent);
-                line("}");
-                for (BlockNode block : blocks) {
-                    line("case \"" + CodeGenerator.escapeJavaString(block.name()) + "\" -> {");
-                    indent++;
-                    bodyRenderer.setIndent(indent);
-                    bodyRenderer.renderBodyNodes(block.body().children());
-                    indent--;
-                    bodyRenderer.setIndent(indent);
-                    line("}");
-                }
-                line("default -> {}");
+                bodyRenderer.renderBodyNodes(block.body().children());
                 indent--;
                 bodyRenderer.setIndent(indent);
                 line("}");
             }
+            line("default -> {}");
             indent--;
             bodyRenderer.setIndent(indent);
-            line("});");
-        } else if (input.body != null) {
-            bodyRenderer.renderBodyNodes(input.body.children());
+            line("}");
         }
         indent--;
         bodyRenderer.setIndent(indent);
+        line("};");
+        line(layoutField + ".render(out, earlyFlush != null ? earlyFlush.wrap(_slots) : _slots);");
+        indent--;
+        bodyRenderer.setIndent(indent);
         line("}");
     }
 
     private void generateFragmentMethods() {
-        List<FragmentNode> fragments = bodyRenderer.collectFragments(input.body);
+        List<FragmentNode> fragments = bodyRenderer.collectFragments(body);
         bodyRenderer.setIndent(indent);
         bodyRenderer.renderFragmentMethods(fragments);
     }
 
+    private void generateDeferMethods() {
+        bodyRenderer.setIndent(indent);
+        bodyRenderer.renderDeferMethods();
+        // Hole bodies may contain further deferred blocks
+        bodyRenderer.renderHoleMethod();
+        bodyRenderer.renderDeferMethods();
+    }
+
+    private void generateStaticChunks() {
+        bodyRenderer.setIndent(indent);
+        bodyRenderer.renderStaticChunks();
+    }
+
+    /**
+     * Nested factory that creates the page with {@code new} and plain field/setter injection,
+     * bypassing the request scope (see CandiPageFactory).
+     */
+    private void generatePageFactory() {
+        String generatedClassName = input.userClassName + "_Candi";
+        List<Injection> injections = input.pageFactory.injections();
+
+        line("@Component");
+        line("public static class Factory extends CandiPageFactory {");
+        indent++;
+        if (input.layoutName != null) {
+            line("private CandiPageFactory.Dependency<CandiLayout> _" + layoutFieldName(input.layoutName) + ";");
+        }
+        for (Injection injection : injections) {
+            line("private CandiPageFactory.Dependency<" + injection.type() + "> _" + injection.fieldName() + ";");
+        }
+
+        line("");
+        line("@Override");
+        line("public Class<? extends CandiPage> pageClass() {");
+        indent++;
+        line("return " + generatedClassName + ".class;");
+        indent--;
+        line("}");
+
+        line("");
+        line("@Override");
+        line("protected void resolveDependencies() {");
+        indent++;
+        if (input.layoutName != null) {
+            String layoutField = layoutFieldName(input.layoutName);
+            line("_" + layoutField + " = dependency(" + generatedClassName + ".class, \"" + layoutField + "\");");
+        }
+        for (Injection injection : injections) {
+            line("_" + injection.fieldName() + " = dependency(" + input.userClassName + ".class, \""
+                    + injection.fieldName() + "\");");
+        }
+        indent--;
+        line("}");
+
+        line("");
+        line("@Override");
+        line("public CandiPage create(jakarta.servlet.http.HttpServletRequest request) {");
+        indent++;
+        line(generatedClassName + " page = new " + generatedClassName + "();");
+        if (bodyRenderer.hasComponentCallsInBody(body)) {
+            line("page._applicationContext = applicationContext();");
+        }
+        if (hasParamBindings()) {
+            line("page._request = request;");
+        }
+        if (input.layoutName != null) {
+            String layoutField = layoutFieldName(input.layoutName);
+            line("page." + layoutField + " = _" + layoutField + ".get();");
+        }
+        for (Injection injection : injections) {
+            String value = "_" + injection.fieldName() + ".get()";
+            if (injection.viaSetter()) {
+                String fieldName = injection.fieldName();
+                line("page.set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1) + "(" + value + ");");
+            } else {
+                line("page." + injection.fieldName() + " = " + value + ";");
+            }
+        }
+        line("return page;");
+        indent--;
+        line("}");
+
+        indent--;
+        line("}");
+    }
+
     // ========== LAYOUT Generation ==========
 
     private void generateLayoutClass() {
@@ -230,8 +499,16 @@ public class SubclassCodeGenerator {
         line("public class " + generatedClassName + " extends " + input.userClassName + " implements CandiLayout {");
         indent++;
 
+        if (bodyRenderer.hasComponentCallsInBody(body)) {
+            line("");
+            line("@Autowired");
+            line("private ApplicationContext _applicationContext;");
+        }
+
         line("");
         generateLayoutRender();
+        generateDeferMethods();
+        generateStaticChunks();
 
         indent--;
         line("}");
@@ -242,8 +519,8 @@ public class SubclassCodeGenerator {
         line("public void render(HtmlOutput out, SlotProvider slots) {");
         indent++;
         bodyRenderer.setIndent(indent);
-        if (input.body != null) {
-            bodyRenderer.renderBodyNodes(input.body.children());
+        if (body != null) {
+            bodyRenderer.renderBodyNodes(body.children());
         }
         indent--;
         bodyRenderer.setIndent(indent);
@@ -260,16 +537,39 @@ public class SubclassCodeGenerator {
         String generatedClassName = input.userClassName + "_Candi";
         line("public class " + generatedClassName + " extends " + input.userClassName + " implements CandiComponent {");
         indent++;
+        // A widget is a fresh instance per call, so its holes cannot be rendered on their own
+        bodyRenderer.setInlineHoles(true);
 
+        line("");
+        generateWidgetCreate(generatedClassName, beanName);
         line("");
         generateWidgetSetParams();
         line("");
         generateWidgetRender();
+        generateDeferMethods();
+        generateStaticChunks();
 
         indent--;
         line("}");
     }
 
+    /**
+     * Factory method used by typed widget calls in generated pages: plain construction
+     * when the widget has no injected dependencies, otherwise a prototype bean lookup.
+     */
+    private void generateWidgetCreate(String generatedClassName, String beanName) {
+        line("public static " + generatedClassName + " create(org.springframework.context.ApplicationContext context) {");
+        indent++;
+        if (input.pageFactory != null && input.pageFactory.injections().isEmpty()) {
+            line("return new " + generatedClassName + "();");
+        } else {
+            line("return context.getBean(\"" + CodeGenerator.escapeJavaString(beanName) + "\", "
+                    + generatedClassName + ".class);");
+        }
+        indent--;
+        line("}");
+    }
+
     private void generateWidgetSetParams() {
         line("@Override");
         line("public void setParams(java.util.Map<String, Object> params) {");
@@ -298,8 +598,8 @@ public class SubclassCodeGenerator {
         line("public void render(HtmlOutput out) {");
         indent++;
         bodyRenderer.setIndent(indent);
-        if (input.body != null) {
-            bodyRenderer.renderBodyNodes(input.body.children());
+        if (body != null) {
+            bodyRenderer.renderBodyNodes(body.children());
         }
         indent--;
         bodyRenderer.setIndent(indent);
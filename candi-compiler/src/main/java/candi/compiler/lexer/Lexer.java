@@ -426,6 +426,10 @@ public class Lexer {
                 advance("content".length());
                 tokens.add(new Token(TokenType.KEYWORD_CONTENT, "content", start));
             }
+            case "hole" -> {
+                advance("hole".length());
+                tokens.add(new Token(TokenType.KEYWORD_HOLE, "hole", start));
+            }
             case "set" -> {
                 advance("set".length());
                 tokens.add(new Token(TokenType.KEYWORD_SET, "set", start));
@@ -492,6 +496,19 @@ public class Lexer {
                 skipWhitespace();
                 tokens.add(readStringLiteral());
             }
+            case "defer" -> {
+                advance("defer".length());
+                tokens.add(new Token(TokenType.KEYWORD_DEFER, "defer", start));
+                skipWhitespace();
+                tokens.add(readStringLiteral());
+            }
+            case "cache" -> {
+                advance("cache".length());
+                tokens.add(new Token(TokenType.KEYWORD_CACHE, "cache", start));
+                skipWhitespace();
+                // Key expression followed by options: key=value
+                lexExpressionTokensUntilClose();
+            }
             default -> {
                 // Regular expression output
                 lexExpressionTokensUntilClose();
@@ -531,7 +548,7 @@ public class Lexer {
                     }
                     // Emit verbatim content as HTML
                     if (!sb.isEmpty()) {
-                        tokens.add(new Token(TokenType.HTML, sb.toString(), start));
+                        tokens.add(new Token(TokenType.HTML, sb.toString(), start, true));
                     }
                     return;
                 }
@@ -545,7 +562,7 @@ public class Lexer {
         }
         // Unterminated verbatim — emit what we have
         if (!sb.isEmpty()) {
-            tokens.add(new Token(TokenType.HTML, sb.toString(), start));
+            tokens.add(new Token(TokenType.HTML, sb.toString(), start, true));
         }
     }
 
@@ -582,7 +599,7 @@ public class Lexer {
                 if (trimmed.isEmpty()) {
                     tokens.remove(i);
                 } else {
-                    tokens.set(i, new Token(TokenType.HTML, trimmed, t.location()));
+                    tokens.set(i, new Token(TokenType.HTML, trimmed, t.location(), t.verbatim()));
                 }
                 break;
             } else if (t.type() != TokenType.EXPR_END && t.type() != TokenType.EXPR_START) {
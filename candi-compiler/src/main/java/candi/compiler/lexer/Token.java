@@ -2,7 +2,14 @@ package candi.compiler.lexer;
 
 import candi.compiler.SourceLocation;
 
-public record Token(TokenType type, String value, SourceLocation location) {
+/**
+ * @param verbatim HTML from a {{ verbatim }} block, to be emitted exactly as written
+ */
+public record Token(TokenType type, String value, SourceLocation location, boolean verbatim) {
+
+    public Token(TokenType type, String value, SourceLocation location) {
+        this(type, value, location, false);
+    }
 
     @Override
     public String toString() {
@@ -27,6 +27,9 @@ public enum TokenType {
     KEYWORD_BLOCK,     // block (slot content in page)
     KEYWORD_STACK,     // stack (render stacked content)
     KEYWORD_PUSH,      // push (push content to stack)
+    KEYWORD_DEFER,     // defer (out-of-order streamed block)
+    KEYWORD_CACHE,     // cache (cached output region)
+    KEYWORD_HOLE,      // hole (per-request region of a cached page)
 
     // Literals
     STRING_LITERAL, // "..."
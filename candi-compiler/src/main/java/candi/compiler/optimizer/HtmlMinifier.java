@@ -0,0 +1,236 @@
+package candi.compiler.optimizer;
+
+import candi.compiler.ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minifies the static HTML of a template at compile time, so the generated class
+ * appends (and the response carries) fewer bytes:
+ * <ul>
+ *   <li>Runs of whitespace become a single space, or between tags a single newline if
+ *       the run contains one. Whitespace is collapsed rather than removed because between
+ *       inline elements it is rendered.</li>
+ *   <li>HTML comments are removed, except conditional comments ({@code <!--[if IE]>})
+ *       and comments that contain a {{ }} expression.</li>
+ * </ul>
+ * The content of {@code <pre>}, {@code <textarea>}, {@code <script>} and {@code <style>},
+ * quoted attribute values and {{ verbatim }} blocks are left as written.
+ *
+ * <p>The HTML is scanned in document order across expressions and blocks, so an element
+ * opened before an {{ if }} is still known inside it. Where the branches of an {{ if }}
+ * end in different states, the scan continues from the most conservative one.
+ */
+public final class HtmlMinifier {
+
+    private static final List<String> RAW_ELEMENTS = List.of("pre", "textarea", "script", "style");
+
+    public BodyNode minify(BodyNode body) {
+        if (body == null) {
+            return null;
+        }
+        return minifyBody(body, new State());
+    }
+
+    private BodyNode minifyBody(BodyNode body, State state) {
+        if (body == null) {
+            return null;
+        }
+        List<Node> nodes = new ArrayList<>(body.children().size());
+        for (Node child : body.children()) {
+            nodes.add(minifyNode(child, state));
+        }
+        return new BodyNode(nodes, body.location());
+    }
+
+    private Node minifyNode(Node node, State state) {
+        return switch (node) {
+            case HtmlNode html -> html.verbatim() ? html
+                    : new HtmlNode(minifyHtml(html.content(), state), html.location());
+            case IfNode ifNode -> {
+                State elseState = state.copy();
+                BodyNode thenBody = minifyBody(ifNode.thenBody(), state);
+                BodyNode elseBody = minifyBody(ifNode.elseBody(), elseState);
+                state.join(elseState);
+                yield new IfNode(ifNode.condition(), thenBody, elseBody, ifNode.location());
+            }
+            case SwitchNode sw -> {
+                State start = state.copy();
+                List<SwitchNode.CaseBranch> cases = new ArrayList<>();
+                for (SwitchNode.CaseBranch branch : sw.cases()) {
+                    State branchState = start.copy();
+                    cases.add(new SwitchNode.CaseBranch(branch.value(), minifyBody(branch.body(), branchState)));
+                    state.join(branchState);
+                }
+                State defaultState = start.copy();
+                BodyNode defaultBody = minifyBody(sw.defaultBody(), defaultState);
+                state.join(defaultState);
+                yield new SwitchNode(sw.subject(), cases, defaultBody, sw.location());
+            }
+            case ForNode forNode -> new ForNode(forNode.variableName(), forNode.collection(),
+                    minifyBody(forNode.body(), state), forNode.parallel(), forNode.location());
+            case FragmentNode fragment -> new FragmentNode(fragment.name(),
+                    minifyBody(fragment.body(), state), fragment.location());
+            case BlockNode block -> new BlockNode(block.name(), minifyBody(block.body(), state), block.location());
+            case SlotNode slot -> new SlotNode(slot.name(), minifyBody(slot.defaultContent(), state), slot.location());
+            // Pushed content renders elsewhere in the layout: scan it on its own
+            case PushNode push -> new PushNode(push.name(), minifyBody(push.body(), new State()), push.location());
+            case DeferNode defer -> {
+                State fallbackState = state.copy();
+                BodyNode deferred = minifyBody(defer.body(), state);
+                BodyNode fallback = minifyBody(defer.fallback(), fallbackState);
+                state.join(fallbackState);
+                yield new DeferNode(defer.name(), deferred, fallback, defer.location());
+            }
+            case CacheNode cache -> new CacheNode(cache.key(), cache.ttlSeconds(),
+                    minifyBody(cache.body(), state), cache.location());
+            case HoleNode hole -> new HoleNode(minifyBody(hole.body(), state), hole.location());
+            case BodyNode body -> minifyBody(body, state);
+            default -> node;
+        };
+    }
+
+    private static String minifyHtml(String html, State state) {
+        StringBuilder out = new StringBuilder(html.length());
+        int i = 0;
+        int n = html.length();
+        while (i < n) {
+            char c = html.charAt(i);
+            if (state.comment) {
+                int end = html.indexOf("-->", i);
+                int stop = end < 0 ? n : end + 3;
+                out.append(html, i, stop);
+                state.comment = end < 0;
+                i = stop;
+            } else if (state.rawElement != null) {
+                int end = indexOfIgnoreCase(html, "</" + state.rawElement, i);
+                int stop = end < 0 ? n : end;
+                out.append(html, i, stop);
+                if (end >= 0) {
+                    state.rawElement = null;
+                }
+                i = stop;
+            } else if (state.quote != 0) {
+                out.append(c);
+                if (c == state.quote) {
+                    state.quote = 0;
+                }
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                boolean newline = false;
+                while (i < n && Character.isWhitespace(html.charAt(i))) {
+                    newline |= html.charAt(i) == '\n';
+                    i++;
+                }
+                // Also joins with the run before a dropped comment
+                int last = out.length() - 1;
+                if (last >= 0 && (out.charAt(last) == ' ' || out.charAt(last) == '\n')) {
+                    newline |= out.charAt(last) == '\n';
+                    out.setLength(last);
+                }
+                out.append(newline && !state.tag ? '\n' : ' ');
+            } else if (state.tag) {
+                out.append(c);
+                if (c == '"' || c == '\'') {
+                    state.quote = c;
+                } else if (c == '>') {
+                    state.tag = false;
+                    state.rawElement = state.openingRaw;
+                    state.openingRaw = null;
+                }
+                i++;
+            } else if (html.startsWith("<!--", i)) {
+                int end = html.indexOf("-->", i + 4);
+                if (isConditional(html, i) || end < 0) {
+                    // Kept: a conditional comment, or one closed after an expression
+                    int stop = end < 0 ? n : end + 3;
+                    out.append(html, i, stop);
+                    state.comment = end < 0;
+                    i = stop;
+                } else {
+                    i = end + 3;
+                }
+            } else if (c == '<' && i + 1 < n && isTagStart(html.charAt(i + 1))) {
+                state.tag = true;
+                state.openingRaw = rawElementAt(html, i + 1);
+                out.append(c);
+                i++;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isTagStart(char c) {
+        return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+    }
+
+    private static boolean isConditional(String html, int commentStart) {
+        return html.startsWith("<!--[if", commentStart) || html.startsWith("<!--<![endif]", commentStart);
+    }
+
+    /**
+     * The raw-text element opened by the tag name at {@code start}, or null.
+     */
+    private static String rawElementAt(String html, int start) {
+        for (String name : RAW_ELEMENTS) {
+            int end = start + name.length();
+            if (html.regionMatches(true, start, name, 0, name.length())
+                    && (end == html.length() || !Character.isLetterOrDigit(html.charAt(end)))) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOfIgnoreCase(String html, String target, int from) {
+        for (int i = from; i <= html.length() - target.length(); i++) {
+            if (html.regionMatches(true, i, target, 0, target.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Where the scan is in the HTML: inside a tag (and a quoted attribute value),
+     * a comment or the content of a raw-text element.
+     */
+    private static final class State {
+        boolean tag;
+        char quote;
+        boolean comment;
+        String openingRaw;
+        String rawElement;
+
+        State copy() {
+            State copy = new State();
+            copy.tag = tag;
+            copy.quote = quote;
+            copy.comment = comment;
+            copy.openingRaw = openingRaw;
+            copy.rawElement = rawElement;
+            return copy;
+        }
+
+        /**
+         * Continue from whichever of the two states leaves more of the HTML untouched.
+         */
+        void join(State other) {
+            tag |= other.tag;
+            if (quote == 0) {
+                quote = other.quote;
+            }
+            comment |= other.comment;
+            if (openingRaw == null) {
+                openingRaw = other.openingRaw;
+            }
+            if (rawElement == null) {
+                rawElement = other.rawElement;
+            }
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package candi.compiler.optimizer;
+
+import candi.compiler.SourceLocation;
+import candi.compiler.ast.*;
+import candi.compiler.expr.Expression;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simplifies a parsed template body before code generation (both CodeGenerator and
+ * SubclassCodeGenerator run it):
+ * <ul>
+ *   <li>Folds expressions over literals: arithmetic and comparisons on int literals,
+ *       {@code ~} and string {@code +}, boolean operators, ternaries with a literal
+ *       condition and filters on literals ({@code "abc" | upper}).</li>
+ *   <li>Turns output of a constant into static HTML (escaped as at runtime).</li>
+ *   <li>Drops {{ if }} branches whose condition is a literal. A dropped branch holding a
+ *       {{ fragment }} or {{ block }} is kept, since those are also rendered on their own.</li>
+ *   <li>Merges adjacent static HTML, e.g. the pieces left by {@code {{- -}}} trimming,
+ *       so each run becomes a single append.</li>
+ * </ul>
+ * Folding only applies where the result is the same as evaluating at runtime: doubles,
+ * overflowing arithmetic, division by zero and locale-sensitive case changes are left alone.
+ *
+ * <p>{@code -Dcandi.dumpAst=true} prints each optimized body to standard error.
+ */
+public final class TemplateOptimizer {
+
+    static final boolean DUMP = Boolean.getBoolean("candi.dumpAst");
+
+    private final Map<String, Expression> constants;
+
+    public TemplateOptimizer() {
+        this(Map.of());
+    }
+
+    /**
+     * @param constants variables known to hold a literal, substituted before folding
+     *                  (the body must not declare locals with these names)
+     */
+    public TemplateOptimizer(Map<String, Expression> constants) {
+        this.constants = constants;
+    }
+
+    public BodyNode optimize(BodyNode body) {
+        if (body == null) {
+            return null;
+        }
+        BodyNode optimized = optimizeBody(body);
+        if (DUMP) {
+            System.err.println("Candi: optimized template " + body.location().file() + "\n" + dump(optimized));
+        }
+        return optimized;
+    }
+
+    private BodyNode optimizeBody(BodyNode body) {
+        if (body == null) {
+            return null;
+        }
+        List<Node> nodes = new ArrayList<>();
+        for (Node child : body.children()) {
+            optimizeNode(child, nodes);
+        }
+        return new BodyNode(mergeHtml(nodes), body.location());
+    }
+
+    private void optimizeNode(Node node, List<Node> out) {
+        switch (node) {
+            case ExpressionOutputNode expr -> {
+                Expression folded = fold(expr.expression());
+                String text = constantText(folded);
+                out.add(text != null
+                        ? new HtmlNode(escapeHtml(text), expr.location())
+                        : new ExpressionOutputNode(folded, expr.location()));
+            }
+            case RawExpressionOutputNode raw -> {
+                Expression folded = fold(raw.expression());
+                String text = constantText(folded);
+                out.add(text != null
+                        ? new HtmlNode(text, raw.location())
+                        : new RawExpressionOutputNode(folded, raw.location()));
+            }
+            case IfNode ifNode -> optimizeIf(ifNode, out);
+            case ForNode forNode -> out.add(new ForNode(forNode.variableName(), fold(forNode.collection()),
+                    optimizeBody(forNode.body()), forNode.parallel(), forNode.location()));
+            case SetNode set -> out.add(new SetNode(set.variableName(), fold(set.value()), set.location()));
+            case SwitchNode sw -> {
+                List<SwitchNode.CaseBranch> cases = new ArrayList<>();
+                for (SwitchNode.CaseBranch branch : sw.cases()) {
+                    cases.add(new SwitchNode.CaseBranch(fold(branch.value()), optimizeBody(branch.body())));
+                }
+                out.add(new SwitchNode(fold(sw.subject()), cases, optimizeBody(sw.defaultBody()), sw.location()));
+            }
+            case ComponentCallNode call -> out.add(new ComponentCallNode(call.componentName(),
+                    foldParams(call.params()), call.async(), call.location()));
+            case IncludeNode include -> out.add(new IncludeNode(include.fileName(),
+                    foldParams(include.params()), include.location()));
+            case FragmentNode fragment -> out.add(new FragmentNode(fragment.name(),
+                    optimizeBody(fragment.body()), fragment.location()));
+            case BlockNode block -> out.add(new BlockNode(block.name(), optimizeBody(block.body()), block.location()));
+            case SlotNode slot -> out.add(new SlotNode(slot.name(),
+                    optimizeBody(slot.defaultContent()), slot.location()));
+            case PushNode push -> out.add(new PushNode(push.name(), optimizeBody(push.body()), push.location()));
+            case DeferNode defer -> out.add(new DeferNode(defer.name(), optimizeBody(defer.body()),
+                    optimizeBody(defer.fallback()), defer.location()));
+            case CacheNode cache -> out.add(new CacheNode(fold(cache.key()), cache.ttlSeconds(),
+                    optimizeBody(cache.body()), cache.location()));
+            case HoleNode hole -> out.add(new HoleNode(optimizeBody(hole.body()), hole.location()));
+            case BodyNode body -> out.add(optimizeBody(body));
+            default -> out.add(node);
+        }
+    }
+
+    private void optimizeIf(IfNode node, List<Node> out) {
+        Expression condition = fold(node.condition());
+        BodyNode thenBody = optimizeBody(node.thenBody());
+        BodyNode elseBody = optimizeBody(node.elseBody());
+        if (!(condition instanceof Expression.BooleanLiteral literal)) {
+            out.add(new IfNode(condition, thenBody, elseBody, node.location()));
+            return;
+        }
+        BodyNode taken = literal.value() ? thenBody : elseBody;
+        BodyNode dropped = literal.value() ? elseBody : thenBody;
+        if (dropped != null && hasNamedRegions(dropped.children())) {
+            out.add(new IfNode(condition, thenBody, elseBody, node.location()));
+        } else if (taken == null) {
+            // Nothing rendered
+        } else if (taken.children().stream().anyMatch(SetNode.class::isInstance)) {
+            // Keep the branch's scope: its {{ set }} variables may be declared again after it
+            out.add(new IfNode(new Expression.BooleanLiteral(true, condition.location()), taken, null,
+                    node.location()));
+        } else {
+            out.addAll(taken.children());
+        }
+    }
+
+    /**
+     * Whether the nodes hold {{ fragment }} or {{ block }} regions, which code generation
+     * also collects from untaken branches.
+     */
+    private static boolean hasNamedRegions(List<Node> nodes) {
+        for (Node node : nodes) {
+            boolean named = switch (node) {
+                case FragmentNode f -> true;
+                case BlockNode b -> true;
+                case IfNode i -> hasNamedRegions(i.thenBody().children())
+                        || (i.elseBody() != null && hasNamedRegions(i.elseBody().children()));
+                case ForNode f -> hasNamedRegions(f.body().children());
+                case CacheNode c -> hasNamedRegions(c.body().children());
+                case HoleNode h -> hasNamedRegions(h.body().children());
+                case BodyNode b -> hasNamedRegions(b.children());
+                default -> false;
+            };
+            if (named) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Node> mergeHtml(List<Node> nodes) {
+        List<Node> merged = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node instanceof HtmlNode html) {
+                if (html.content().isEmpty()) {
+                    continue;
+                }
+                if (!merged.isEmpty() && merged.getLast() instanceof HtmlNode previous) {
+                    merged.set(merged.size() - 1,
+                            new HtmlNode(previous.content() + html.content(), previous.location(),
+                                    previous.verbatim() && html.verbatim()));
+                    continue;
+                }
+            }
+            merged.add(node);
+        }
+        return merged;
+    }
+
+    private Map<String, Expression> foldParams(Map<String, Expression> params) {
+        Map<String, Expression> folded = new LinkedHashMap<>();
+        params.forEach((name, value) -> folded.put(name, fold(value)));
+        return folded;
+    }
+
+    // ========== Expression folding ==========
+
+    Expression fold(Expression expr) {
+        if (expr == null) {
+            return null;
+        }
+        SourceLocation loc = expr.location();
+        return switch (expr) {
+            case Expression.Variable v when constants.containsKey(v.name()) -> constants.get(v.name());
+            case Expression.Grouped g -> {
+                Expression inner = fold(g.inner());
+                yield isLiteral(inner) ? inner : new Expression.Grouped(inner, loc);
+            }
+            case Expression.UnaryNot u -> {
+                Expression operand = fold(u.operand());
+                yield operand instanceof Expression.BooleanLiteral b
+                        ? new Expression.BooleanLiteral(!b.value(), loc)
+                        : new Expression.UnaryNot(operand, loc);
+            }
+            case Expression.UnaryMinus u -> {
+                Expression operand = fold(u.operand());
+                Integer value = intValue(operand);
+                yield value != null && value != Integer.MIN_VALUE
+                        ? new Expression.NumberLiteral(Integer.toString(-value), loc)
+                        : new Expression.UnaryMinus(operand, loc);
+            }
+            case Expression.BinaryOp b -> {
+                Expression left = fold(b.left());
+                Expression right = fold(b.right());
+                Expression folded = foldBinary(left, b.operator(), right, loc);
+                yield folded != null ? folded : new Expression.BinaryOp(left, b.operator(), right, loc);
+            }
+            case Expression.Ternary t -> {
+                Expression condition = fold(t.condition());
+                Expression thenExpr = fold(t.thenExpr());
+                Expression elseExpr = fold(t.elseExpr());
+                // A number branch may be widened to the other branch's type (true ? 1 : 2.5 is 1.0)
+                Expression taken = condition instanceof Expression.BooleanLiteral b ? (b.value() ? thenExpr : elseExpr) : null;
+                if (taken != null && (!(taken instanceof Expression.NumberLiteral)
+                        || (intValue(thenExpr) != null && intValue(elseExpr) != null))) {
+                    yield taken;
+                }
+                yield new Expression.Ternary(condition, thenExpr, elseExpr, loc);
+            }
+            case Expression.NullCoalesce nc -> {
+                Expression left = fold(nc.left());
+                yield isLiteral(left) ? left : new Expression.NullCoalesce(left, fold(nc.fallback()), loc);
+            }
+            case Expression.FilterCall f -> {
+                Expression input = fold(f.input());
+                List<Expression> args = f.arguments().stream().map(this::fold).toList();
+                Expression folded = foldFilter(input, f.filterName(), args, loc);
+                yield folded != null ? folded : new Expression.FilterCall(input, f.filterName(), args, loc);
+            }
+            case Expression.PropertyAccess p -> new Expression.PropertyAccess(fold(p.object()), p.property(), loc);
+            case Expression.NullSafePropertyAccess p ->
+                    new Expression.NullSafePropertyAccess(fold(p.object()), p.property(), loc);
+            case Expression.MethodCall m -> new Expression.MethodCall(fold(m.object()), m.methodName(),
+                    m.arguments().stream().map(this::fold).toList(), loc);
+            case Expression.NullSafeMethodCall m -> new Expression.NullSafeMethodCall(fold(m.object()),
+                    m.methodName(), m.arguments().stream().map(this::fold).toList(), loc);
+            case Expression.IndexAccess ia -> new Expression.IndexAccess(fold(ia.object()), fold(ia.index()), loc);
+            default -> expr;
+        };
+    }
+
+    private static Expression foldBinary(Expression left, String op, Expression right, SourceLocation loc) {
+        if (op.equals("~")) {
+            String l = constantText(left);
+            String r = constantText(right);
+            return l != null && r != null ? new Expression.StringLiteral(l + r, loc) : null;
+        }
+        if (op.equals("+") && (left instanceof Expression.StringLiteral || right instanceof Expression.StringLiteral)) {
+            String l = constantText(left);
+            String r = constantText(right);
+            return l != null && r != null ? new Expression.StringLiteral(l + r, loc) : null;
+        }
+        // Short-circuits: the right operand is never evaluated
+        if (left instanceof Expression.BooleanLiteral l
+                && ((op.equals("&&") && !l.value()) || (op.equals("||") && l.value()))) {
+            return l;
+        }
+        if (left instanceof Expression.BooleanLiteral l && right instanceof Expression.BooleanLiteral r) {
+            return switch (op) {
+                case "&&" -> new Expression.BooleanLiteral(l.value() && r.value(), loc);
+                case "||" -> new Expression.BooleanLiteral(l.value() || r.value(), loc);
+                case "==" -> new Expression.BooleanLiteral(l.value() == r.value(), loc);
+                case "!=" -> new Expression.BooleanLiteral(l.value() != r.value(), loc);
+                default -> null;
+            };
+        }
+        if (left instanceof Expression.StringLiteral l && right instanceof Expression.StringLiteral r) {
+            return switch (op) {
+                case "==" -> new Expression.BooleanLiteral(l.value().equals(r.value()), loc);
+                case "!=" -> new Expression.BooleanLiteral(!l.value().equals(r.value()), loc);
+                default -> null;
+            };
+        }
+        Integer l = intValue(left);
+        Integer r = intValue(right);
+        if (l == null || r == null) {
+            return null;
+        }
+        try {
+            return switch (op) {
+                case "+" -> number(Math.addExact(l, r), loc);
+                case "-" -> number(Math.subtractExact(l, r), loc);
+                case "*" -> number(Math.multiplyExact(l, r), loc);
+                case "/" -> r == 0 || (l == Integer.MIN_VALUE && r == -1) ? null : number(l / r, loc);
+                case "%" -> r == 0 ? null : number(l % r, loc);
+                case "==" -> new Expression.BooleanLiteral(l.equals(r), loc);
+                case "!=" -> new Expression.BooleanLiteral(!l.equals(r), loc);
+                case "<" -> new Expression.BooleanLiteral(l < r, loc);
+                case ">" -> new Expression.BooleanLiteral(l > r, loc);
+                case "<=" -> new Expression.BooleanLiteral(l <= r, loc);
+                case ">=" -> new Expression.BooleanLiteral(l >= r, loc);
+                default -> null;
+            };
+        } catch (ArithmeticException overflow) {
+            return null;
+        }
+    }
+
+    /**
+     * Filters of CandiFilters whose result on a literal is known at compile time.
+     */
+    private static Expression foldFilter(Expression input, String filter, List<Expression> args,
+                                         SourceLocation loc) {
+        String s = constantText(input);
+        if (s == null) {
+            return null;
+        }
+        return switch (filter) {
+            case "upper" -> localeNeutral(s) && args.isEmpty() ? new Expression.StringLiteral(s.toUpperCase(), loc) : null;
+            case "lower" -> localeNeutral(s) && args.isEmpty() ? new Expression.StringLiteral(s.toLowerCase(), loc) : null;
+            case "capitalize" -> args.isEmpty() ? new Expression.StringLiteral(
+                    s.isEmpty() ? s : Character.toUpperCase(s.charAt(0)) + s.substring(1), loc) : null;
+            case "trim" -> args.isEmpty() ? new Expression.StringLiteral(s.trim(), loc) : null;
+            case "length" -> args.isEmpty() && input instanceof Expression.StringLiteral
+                    ? number(s.length(), loc) : null;
+            case "truncate" -> {
+                Integer max = args.size() == 1 ? intValue(args.getFirst()) : null;
+                if (max == null || max < 0) {
+                    yield null;
+                }
+                yield new Expression.StringLiteral(s.length() <= max ? s : s.substring(0, max) + "...", loc);
+            }
+            case "replace" -> args.size() == 2
+                    && args.get(0) instanceof Expression.StringLiteral from
+                    && args.get(1) instanceof Expression.StringLiteral to
+                    ? new Expression.StringLiteral(s.replace(from.value(), to.value()), loc) : null;
+            default -> null;
+        };
+    }
+
+    /**
+     * Case changes of ASCII text without i/I come out the same in every locale
+     * (the filters use the server's default locale).
+     */
+    private static boolean localeNeutral(String s) {
+        return s.chars().allMatch(c -> c < 128 && c != 'i' && c != 'I');
+    }
+
+    private static Expression.NumberLiteral number(int value, SourceLocation loc) {
+        return new Expression.NumberLiteral(Integer.toString(value), loc);
+    }
+
+    /**
+     * Value of an int literal written in plain decimal, or null.
+     */
+    private static Integer intValue(Expression expr) {
+        if (!(expr instanceof Expression.NumberLiteral n) || !n.value().matches("-?(0|[1-9][0-9]*)")) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(n.value());
+        } catch (NumberFormatException tooLarge) {
+            return null;
+        }
+    }
+
+    private static boolean isLiteral(Expression expr) {
+        return expr instanceof Expression.StringLiteral || expr instanceof Expression.BooleanLiteral
+                || expr instanceof Expression.NumberLiteral;
+    }
+
+    /**
+     * The text String.valueOf produces for a literal at runtime, or null if not constant.
+     */
+    private static String constantText(Expression expr) {
+        return switch (expr) {
+            case Expression.StringLiteral s -> s.value();
+            case Expression.BooleanLiteral b -> String.valueOf(b.value());
+            case Expression.NumberLiteral n -> {
+                Integer value = intValue(n);
+                yield value != null ? value.toString() : null;
+            }
+            default -> null;
+        };
+    }
+
+    /**
+     * Same entities as the runtime HtmlEscaper.
+     */
+    static String escapeHtml(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                case '\'' -> sb.append("&#x27;");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // ========== Dump ==========
+
+    /**
+     * Indented, one node per line description of a body, for inspecting what code
+     * generation receives.
+     */
+    public static String dump(BodyNode body) {
+        StringBuilder sb = new StringBuilder();
+        dumpNodes(body.children(), 1, sb);
+        return sb.toString();
+    }
+
+    private static void dumpNodes(List<Node> nodes, int depth, StringBuilder sb) {
+        for (Node node : nodes) {
+            dumpNode(node, depth, sb);
+        }
+    }
+
+    private static void dumpNode(Node node, int depth, StringBuilder sb) {
+        String pad = "  ".repeat(depth);
+        switch (node) {
+            case HtmlNode html -> sb.append(pad).append("html ").append(quote(html.content())).append('\n');
+            case ExpressionOutputNode expr -> sb.append(pad).append("{{ ").append(describe(expr.expression())).append(" }}\n");
+            case RawExpressionOutputNode raw -> sb.append(pad).append("raw ").append(describe(raw.expression())).append('\n');
+            case IfNode ifNode -> {
+                sb.append(pad).append("if ").append(describe(ifNode.condition())).append('\n');
+                dumpNodes(ifNode.thenBody().children(), depth + 1, sb);
+                if (ifNode.elseBody() != null) {
+                    sb.append(pad).append("else\n");
+                    dumpNodes(ifNode.elseBody().children(), depth + 1, sb);
+                }
+            }
+            case ForNode forNode -> {
+                sb.append(pad).append("for ").append(forNode.variableName()).append(" in ")
+                        .append(describe(forNode.collection())).append(forNode.parallel() ? " parallel" : "").append('\n');
+                dumpNodes(forNode.body().children(), depth + 1, sb);
+            }
+            case SetNode set -> sb.append(pad).append("set ").append(set.variableName()).append(" = ")
+                    .append(describe(set.value())).append('\n');
+            case SwitchNode sw -> {
+                sb.append(pad).append("switch ").append(describe(sw.subject())).append('\n');
+                for (SwitchNode.CaseBranch branch : sw.cases()) {
+                    sb.append(pad).append("case ").append(describe(branch.value())).append('\n');
+                    dumpNodes(branch.body().children(), depth + 1, sb);
+                }
+                if (sw.defaultBody() != null) {
+                    sb.append(pad).append("default\n");
+                    dumpNodes(sw.defaultBody().children(), depth + 1, sb);
+                }
+            }
+            case ComponentCallNode call -> {
+                sb.append(pad).append("widget ").append(quote(call.componentName()));
+                call.params().forEach((name, value) -> sb.append(' ').append(name).append('=').append(describe(value)));
+                if (call.async() != null) {
+                    sb.append(" async=").append(call.async());
+                }
+                sb.append('\n');
+            }
+            case FragmentNode fragment -> dumpRegion("fragment " + quote(fragment.name()), fragment.body(), depth, sb);
+            case BlockNode block -> dumpRegion("block " + quote(block.name()), block.body(), depth, sb);
+            case SlotNode slot -> dumpRegion("slot " + quote(slot.name()), slot.defaultContent(), depth, sb);
+            case PushNode push -> dumpRegion("push " + quote(push.name()), push.body(), depth, sb);
+            case StackNode stack -> sb.append(pad).append("stack ").append(quote(stack.name())).append('\n');
+            case DeferNode defer -> {
+                dumpRegion("defer " + quote(defer.name()), defer.body(), depth, sb);
+                if (defer.fallback() != null) {
+                    dumpRegion("fallback", defer.fallback(), depth, sb);
+                }
+            }
+            case CacheNode cache -> dumpRegion("cache " + describe(cache.key()) + " ttl=" + cache.ttlSeconds(),
+                    cache.body(), depth, sb);
+            case HoleNode hole -> dumpRegion("hole", hole.body(), depth, sb);
+            case ContentNode content -> sb.append(pad).append("content\n");
+            case IncludeNode include -> sb.append(pad).append("include ").append(quote(include.fileName())).append('\n');
+            case BodyNode body -> dumpNodes(body.children(), depth, sb);
+            default -> sb.append(pad).append(node.getClass().getSimpleName()).append('\n');
+        }
+    }
+
+    private static void dumpRegion(String header, BodyNode body, int depth, StringBuilder sb) {
+        sb.append("  ".repeat(depth)).append(header).append('\n');
+        if (body != null) {
+            dumpNodes(body.children(), depth + 1, sb);
+        }
+    }
+
+    private static String describe(Expression expr) {
+        return switch (expr) {
+            case Expression.Variable v -> v.name();
+            case Expression.StringLiteral s -> quote(s.value());
+            case Expression.NumberLiteral n -> n.value();
+            case Expression.BooleanLiteral b -> String.valueOf(b.value());
+            case Expression.PropertyAccess p -> describe(p.object()) + "." + p.property();
+            case Expression.NullSafePropertyAccess p -> describe(p.object()) + "?." + p.property();
+            case Expression.MethodCall m -> describe(m.object()) + "." + m.methodName() + describeArgs(m.arguments());
+            case Expression.NullSafeMethodCall m -> describe(m.object()) + "?." + m.methodName() + describeArgs(m.arguments());
+            case Expression.BinaryOp b -> "(" + describe(b.left()) + " " + b.operator() + " " + describe(b.right()) + ")";
+            case Expression.UnaryNot u -> "!" + describe(u.operand());
+            case Expression.UnaryMinus u -> "-" + describe(u.operand());
+            case Expression.Grouped g -> "(" + describe(g.inner()) + ")";
+            case Expression.Ternary t -> "(" + describe(t.condition()) + " ? " + describe(t.thenExpr())
+                    + " : " + describe(t.elseExpr()) + ")";
+            case Expression.NullCoalesce nc -> "(" + describe(nc.left()) + " ?? " + describe(nc.fallback()) + ")";
+            case Expression.FilterCall f -> "(" + describe(f.input()) + " | " + f.filterName()
+                    + (f.arguments().isEmpty() ? "" : describeArgs(f.arguments())) + ")";
+            case Expression.IndexAccess ia -> describe(ia.object()) + "[" + describe(ia.index()) + "]";
+        };
+    }
+
+    private static String describeArgs(List<Expression> args) {
+        return "(" + String.join(", ", args.stream().map(TemplateOptimizer::describe).toList()) + ")";
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\t", "\\t") + "\"";
+    }
+}
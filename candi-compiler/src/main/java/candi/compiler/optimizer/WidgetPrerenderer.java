@@ -0,0 +1,160 @@
+package candi.compiler.optimizer;
+
+import candi.compiler.ast.*;
+import candi.compiler.expr.Expression;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Replaces widget calls whose output is known at compile time with static HTML.
+ *
+ * <p>A call is prerendered when the widget is pure, every parameter is a literal of
+ * the parameter's type, and the widget's template, with the parameters substituted,
+ * folds to static HTML in {@link TemplateOptimizer}. Anything else — a getter without
+ * a parameter behind it, a nested widget, a filter the optimizer does not fold — keeps
+ * the runtime call, so prerendering never changes what a page renders.
+ */
+public final class WidgetPrerenderer {
+
+    /**
+     * A widget whose calls may be prerendered.
+     *
+     * @param body       the widget's parsed template
+     * @param paramTypes parameter name → fully qualified type, for parameters that
+     *                   the template reads back unchanged
+     */
+    public record PrerenderableWidget(BodyNode body, Map<String, String> paramTypes) {}
+
+    private final Function<String, PrerenderableWidget> widgets;
+
+    /**
+     * @param widgets looks up a widget by the name used in templates ("alert");
+     *                null when its calls cannot be prerendered
+     */
+    public WidgetPrerenderer(Function<String, PrerenderableWidget> widgets) {
+        this.widgets = widgets;
+    }
+
+    public BodyNode prerender(BodyNode body) {
+        if (body == null) {
+            return null;
+        }
+        List<Node> nodes = new ArrayList<>(body.children().size());
+        for (Node child : body.children()) {
+            nodes.add(prerenderNode(child));
+        }
+        return new BodyNode(nodes, body.location());
+    }
+
+    private Node prerenderNode(Node node) {
+        return switch (node) {
+            case ComponentCallNode call -> {
+                String html = render(call);
+                yield html != null ? new HtmlNode(html, call.location()) : call;
+            }
+            case IfNode ifNode -> new IfNode(ifNode.condition(), prerender(ifNode.thenBody()),
+                    prerender(ifNode.elseBody()), ifNode.location());
+            case ForNode forNode -> new ForNode(forNode.variableName(), forNode.collection(),
+                    prerender(forNode.body()), forNode.parallel(), forNode.location());
+            case SwitchNode sw -> {
+                List<SwitchNode.CaseBranch> cases = new ArrayList<>();
+                for (SwitchNode.CaseBranch branch : sw.cases()) {
+                    cases.add(new SwitchNode.CaseBranch(branch.value(), prerender(branch.body())));
+                }
+                yield new SwitchNode(sw.subject(), cases, prerender(sw.defaultBody()), sw.location());
+            }
+            case FragmentNode fragment -> new FragmentNode(fragment.name(), prerender(fragment.body()),
+                    fragment.location());
+            case BlockNode block -> new BlockNode(block.name(), prerender(block.body()), block.location());
+            case SlotNode slot -> new SlotNode(slot.name(), prerender(slot.defaultContent()), slot.location());
+            case PushNode push -> new PushNode(push.name(), prerender(push.body()), push.location());
+            case DeferNode defer -> new DeferNode(defer.name(), prerender(defer.body()),
+                    prerender(defer.fallback()), defer.location());
+            case CacheNode cache -> new CacheNode(cache.key(), cache.ttlSeconds(), prerender(cache.body()),
+                    cache.location());
+            case HoleNode hole -> new HoleNode(prerender(hole.body()), hole.location());
+            case BodyNode body -> prerender(body);
+            default -> node;
+        };
+    }
+
+    /**
+     * The HTML the call renders, or null if it is only known at runtime.
+     */
+    private String render(ComponentCallNode call) {
+        PrerenderableWidget widget = widgets.apply(call.componentName());
+        if (widget == null) {
+            return null;
+        }
+        Map<String, Expression> constants = new LinkedHashMap<>();
+        for (Map.Entry<String, Expression> param : call.params().entrySet()) {
+            Expression value = new TemplateOptimizer().fold(param.getValue());
+            String type = widget.paramTypes().get(param.getKey());
+            if (type == null || !isLiteralOf(value, type)) {
+                return null;
+            }
+            constants.put(param.getKey(), value);
+        }
+        Set<String> locals = new HashSet<>();
+        collectLocals(widget.body().children(), locals);
+        if (locals.removeAll(widget.paramTypes().keySet())) {
+            return null;
+        }
+        // Parameters not passed keep their field initializers, which stay runtime reads
+        BodyNode rendered = new TemplateOptimizer(constants).optimize(widget.body());
+        StringBuilder html = new StringBuilder();
+        for (Node node : rendered.children()) {
+            if (!(node instanceof HtmlNode part)) {
+                return null;
+            }
+            html.append(part.content());
+        }
+        return html.toString();
+    }
+
+    private static boolean isLiteralOf(Expression value, String type) {
+        return switch (type) {
+            case "java.lang.String", "java.lang.CharSequence" -> value instanceof Expression.StringLiteral;
+            case "boolean", "java.lang.Boolean" -> value instanceof Expression.BooleanLiteral;
+            case "int", "java.lang.Integer", "long", "java.lang.Long" ->
+                    value instanceof Expression.NumberLiteral n && n.value().matches("-?(0|[1-9][0-9]{0,8})");
+            default -> false;
+        };
+    }
+
+    /**
+     * Names declared by {{ for }} and {{ set }}, which would shadow a parameter.
+     */
+    private static void collectLocals(List<Node> nodes, Set<String> locals) {
+        for (Node node : nodes) {
+            switch (node) {
+                case SetNode set -> locals.add(set.variableName());
+                case ForNode forNode -> {
+                    locals.add(forNode.variableName());
+                    collectLocals(forNode.body().children(), locals);
+                }
+                case IfNode ifNode -> {
+                    collectLocals(ifNode.thenBody().children(), locals);
+                    if (ifNode.elseBody() != null) {
+                        collectLocals(ifNode.elseBody().children(), locals);
+                    }
+                }
+                case SwitchNode sw -> {
+                    sw.cases().forEach(branch -> collectLocals(branch.body().children(), locals));
+                    if (sw.defaultBody() != null) {
+                        collectLocals(sw.defaultBody().children(), locals);
+                    }
+                }
+                case BodyNode body -> collectLocals(body.children(), locals);
+                default -> {
+                }
+            }
+        }
+    }
+}
@@ -36,7 +36,7 @@ public class Parser {
         while (!isAtEnd()) {
             if (check(TokenType.HTML)) {
                 Token html = consume();
-                children.add(new HtmlNode(html.value(), html.location()));
+                children.add(new HtmlNode(html.value(), html.location(), html.verbatim()));
             } else if (check(TokenType.EXPR_START)) {
                 children.add(parseTemplateExpression());
             } else if (check(TokenType.EOF)) {
@@ -60,7 +60,7 @@ public class Parser {
         while (!isAtEnd()) {
             if (check(TokenType.HTML)) {
                 Token html = consume();
-                children.add(new HtmlNode(html.value(), html.location()));
+                children.add(new HtmlNode(html.value(), html.location(), html.verbatim()));
             } else if (check(TokenType.EXPR_START)) {
                 // Peek ahead to check for end/else/case/default keywords
                 if (isExprKeyword(TokenType.KEYWORD_END)
@@ -109,6 +109,9 @@ public class Parser {
             case KEYWORD_BLOCK -> parseBlockBlock(start);
             case KEYWORD_STACK -> parseStack(start);
             case KEYWORD_PUSH -> parsePushBlock(start);
+            case KEYWORD_DEFER -> parseDeferBlock(start);
+            case KEYWORD_CACHE -> parseCacheBlock(start);
+            case KEYWORD_HOLE -> parseHoleBlock(start);
             default -> parseExpressionOutput(start);
         };
     }
@@ -152,7 +155,20 @@ public class Parser {
         consume(); // for keyword
         Token varName = expect(TokenType.IDENTIFIER, "loop variable name");
         expect(TokenType.KEYWORD_IN, "'in'");
-        Expression collection = parseExpression();
+        List<Token> collectionTokens = new ArrayList<>();
+        while (!check(TokenType.EXPR_END) && !isAtEnd()
+                && (collectionTokens.isEmpty() || !isParallelOption())) {
+            collectionTokens.add(consume());
+        }
+        if (collectionTokens.isEmpty()) {
+            throw error("Expected expression", start);
+        }
+        Expression collection = new ExpressionParser(collectionTokens).parse();
+        boolean parallel = false;
+        if (isParallelOption()) {
+            consume();
+            parallel = true;
+        }
         expect(TokenType.EXPR_END, "'}}'");
 
         BodyNode body = parseBodyUntilEndOrElse();
@@ -162,7 +178,7 @@ public class Parser {
         expect(TokenType.KEYWORD_END, "'end'");
         expect(TokenType.EXPR_END, "'}}'");
 
-        return new ForNode(varName.value(), collection, body, start);
+        return new ForNode(varName.value(), collection, body, parallel, start);
     }
 
     private FragmentNode parseFragmentBlock(SourceLocation start) {
@@ -213,8 +229,18 @@ public class Parser {
 
         Map<String, Expression> params = parseKeyValueParams();
 
+        // async=true|false is an option of the call, not a widget parameter
+        Boolean async = null;
+        Expression asyncOption = params.remove("async");
+        if (asyncOption != null) {
+            if (!(asyncOption instanceof Expression.BooleanLiteral literal)) {
+                throw error("Widget option 'async' must be true or false", asyncOption.location());
+            }
+            async = literal.value();
+        }
+
         expect(TokenType.EXPR_END, "'}}'");
-        return new ComponentCallNode(name.value(), params, start);
+        return new ComponentCallNode(name.value(), params, async, start);
     }
 
     /**
@@ -386,6 +412,96 @@ public class Parser {
         return new PushNode(name.value(), body, start);
     }
 
+    private DeferNode parseDeferBlock(SourceLocation start) {
+        consume(); // defer keyword
+        Token name = expect(TokenType.STRING_LITERAL, "defer block name");
+        expect(TokenType.EXPR_END, "'}}'");
+
+        BodyNode body = parseBodyUntilEndOrElse();
+
+        // Optional {{ else }} fallback, shown until the block arrives
+        BodyNode fallback = null;
+        if (isExprKeyword(TokenType.KEYWORD_ELSE)) {
+            expect(TokenType.EXPR_START, "'{{'");
+            consume(); // else keyword
+            expect(TokenType.EXPR_END, "'}}'");
+            fallback = parseBodyUntilEndOrElse();
+        }
+
+        // Consume {{ end }}
+        expect(TokenType.EXPR_START, "'{{'");
+        expect(TokenType.KEYWORD_END, "'end'");
+        expect(TokenType.EXPR_END, "'}}'");
+
+        return new DeferNode(name.value(), body, fallback, start);
+    }
+
+    private CacheNode parseCacheBlock(SourceLocation start) {
+        consume(); // cache keyword
+
+        // The key expression runs up to the first option (name=value) or '}}'
+        List<Token> keyTokens = new ArrayList<>();
+        while (!check(TokenType.EXPR_END) && !isAtEnd() && !isOptionStart()) {
+            keyTokens.add(consume());
+        }
+        if (keyTokens.isEmpty()) {
+            throw error("Expected cache key", start);
+        }
+        Expression key = new ExpressionParser(keyTokens).parse();
+
+        long ttl = CacheNode.DEFAULT_TTL_SECONDS;
+        while (!check(TokenType.EXPR_END) && !isAtEnd()) {
+            Token option = expect(TokenType.IDENTIFIER, "cache option");
+            expect(TokenType.EQUALS_SIGN, "'='");
+            if (!option.value().equals("ttl")) {
+                throw error("Unknown cache option '" + option.value() + "'", option.location());
+            }
+            Token value = expect(TokenType.NUMBER, "ttl in seconds");
+            try {
+                ttl = Long.parseLong(value.value());
+            } catch (NumberFormatException e) {
+                throw error("ttl must be a whole number of seconds", value.location());
+            }
+        }
+        expect(TokenType.EXPR_END, "'}}'");
+
+        BodyNode body = parseBodyUntilEndOrElse();
+
+        // Consume {{ end }}
+        expect(TokenType.EXPR_START, "'{{'");
+        expect(TokenType.KEYWORD_END, "'end'");
+        expect(TokenType.EXPR_END, "'}}'");
+
+        return new CacheNode(key, ttl, body, start);
+    }
+
+    /**
+     * {@code parallel} as the last word of a for tag.
+     */
+    private boolean isParallelOption() {
+        return check(TokenType.IDENTIFIER) && peek().value().equals("parallel")
+                && pos + 1 < tokens.size() && tokens.get(pos + 1).type() == TokenType.EXPR_END;
+    }
+
+    private boolean isOptionStart() {
+        return check(TokenType.IDENTIFIER) && pos + 1 < tokens.size()
+                && tokens.get(pos + 1).type() == TokenType.EQUALS_SIGN;
+    }
+
+    private HoleNode parseHoleBlock(SourceLocation start) {
+        consume(); // hole keyword
+        expect(TokenType.EXPR_END, "'}}'");
+
+        BodyNode body = parseBodyUntilEndOrElse();
+
+        // Consume {{ end }}
+        expect(TokenType.EXPR_START, "'{{'");
+        expect(TokenType.KEYWORD_END, "'end'");
+        expect(TokenType.EXPR_END, "'}}'");
+
+        return new HoleNode(body, start);
+    }
+
     private ExpressionOutputNode parseExpressionOutput(SourceLocation start) {
         Expression expr = parseExpression();
         expect(TokenType.EXPR_END, "'}}'");
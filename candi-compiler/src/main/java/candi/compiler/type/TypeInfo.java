@@ -14,6 +14,7 @@ public class TypeInfo {
     public static final TypeInfo STRING = new TypeInfo(String.class, String.class);
     public static final TypeInfo BOOLEAN = new TypeInfo(boolean.class, boolean.class);
     public static final TypeInfo INT = new TypeInfo(int.class, int.class);
+    public static final TypeInfo LONG = new TypeInfo(long.class, long.class);
     public static final TypeInfo DOUBLE = new TypeInfo(double.class, double.class);
     public static final TypeInfo VOID = new TypeInfo(void.class, void.class);
 
@@ -38,13 +39,13 @@ public class TypeInfo {
     }
 
     /**
-     * Get the element type for Iterable/Collection types.
-     * e.g. List<Post> → Post, Set<String> → String
+     * Get the element type for the sources a for loop accepts.
+     * e.g. List<Post> → Post, Set<String> → String, Stream<Row> → Row
      */
     public TypeInfo elementType() {
         if (genericType instanceof ParameterizedType pt) {
             Type[] args = pt.getActualTypeArguments();
-            if (args.length > 0 && Iterable.class.isAssignableFrom(rawClass)) {
+            if (args.length > 0 && isIterable()) {
                 return fromReflectType(args[0]);
             }
         }
@@ -90,8 +91,14 @@ public class TypeInfo {
         return null;
     }
 
+    /**
+     * Whether a for loop accepts this type: Iterable, Stream, Iterator or Spliterator.
+     */
     public boolean isIterable() {
-        return Iterable.class.isAssignableFrom(rawClass);
+        return Iterable.class.isAssignableFrom(rawClass)
+                || java.util.stream.Stream.class.isAssignableFrom(rawClass)
+                || java.util.Iterator.class.isAssignableFrom(rawClass)
+                || java.util.Spliterator.class.isAssignableFrom(rawClass);
     }
 
     public boolean isBoolean() {
@@ -13,6 +13,10 @@ import java.util.*;
  */
 public class TypeResolver {
 
+    private static final Map<String, Class<?>> PRIMITIVES = Map.of(
+            "boolean", boolean.class, "byte", byte.class, "short", short.class, "char", char.class,
+            "int", int.class, "long", long.class, "float", float.class, "double", double.class);
+
     private final ClassLoader classLoader;
     private final Map<String, TypeInfo> symbolTable = new LinkedHashMap<>();
     private final List<TypeCheckError> errors = new ArrayList<>();
@@ -70,8 +74,9 @@ public class TypeResolver {
 
     /**
      * Resolve a type name string to TypeInfo via classpath reflection.
+     * Primitive names resolve to their primitive class; null if the class cannot be loaded.
      */
-    TypeInfo resolveTypeName(String typeName) {
+    public TypeInfo resolveTypeName(String typeName) {
         // Strip generics for class loading (e.g. "List<Post>" -> "List")
         String rawName = typeName;
         int genericStart = typeName.indexOf('<');
@@ -79,7 +84,10 @@ public class TypeResolver {
             rawName = typeName.substring(0, genericStart).trim();
         }
 
-        Class<?> clazz = tryLoadClass(rawName);
+        Class<?> clazz = PRIMITIVES.get(rawName);
+        if (clazz == null) {
+            clazz = tryLoadClass(rawName);
+        }
         if (clazz == null) return null;
 
         return new TypeInfo(clazz);
@@ -98,6 +106,10 @@ public class TypeResolver {
             return classLoader.loadClass("java.util." + name);
         } catch (ClassNotFoundException ignored) {}
 
+        try {
+            return classLoader.loadClass("java.util.stream." + name);
+        } catch (ClassNotFoundException ignored) {}
+
         return null;
     }
 
@@ -145,6 +157,17 @@ public class TypeResolver {
                     resolveExpressionType(expr);
                 }
             }
+            case DeferNode defer -> {
+                checkBody(defer.body().children());
+                if (defer.fallback() != null) {
+                    checkBody(defer.fallback().children());
+                }
+            }
+            case CacheNode cache -> {
+                resolveExpressionType(cache.key());
+                checkBody(cache.body().children());
+            }
+            case HoleNode hole -> checkBody(hole.body().children());
             case ContentNode ignored -> {}
             default -> {}
         }
@@ -1,7 +1,10 @@
 package candi.compiler.codegen;
 
+import candi.compiler.CompileError;
 import candi.compiler.JavaAnalyzer;
 import candi.compiler.ast.BodyNode;
+import candi.compiler.ast.ForNode;
+import candi.compiler.expr.Expression;
 import candi.compiler.lexer.Lexer;
 import candi.compiler.lexer.Token;
 import candi.compiler.parser.Parser;
@@ -39,7 +42,25 @@ class SubclassCodeGeneratorTest {
         assertTrue(java.contains("@Component"));
         assertTrue(java.contains("@Scope(WebApplicationContext.SCOPE_REQUEST)"));
         assertTrue(java.contains("@CandiRoute(path = \"/hello\""));
-        assertTrue(java.contains("out.append(\"<h1>Hello World</h1>"));
+        assertTrue(java.contains("out.append(_HTML_0);"));
+        assertTrue(java.contains("private static final byte[] _HTML_0 = HtmlOutput.utf8(\"<h1>Hello World</h1>\");"));
+    }
+
+    @Test
+    void testIdenticalStaticChunksShareOneConstant() {
+        BodyNode body = parseTemplate("<li>{{ a }}</li><li>{{ b }}</li>");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "ListPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/list", null,
+                Set.of("a", "b"), Map.of("a", "String", "b", "String"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("_HTML_0 = HtmlOutput.utf8(\"<li>\");"));
+        assertTrue(java.contains("_HTML_1 = HtmlOutput.utf8(\"</li><li>\");"));
+        assertTrue(java.contains("_HTML_2 = HtmlOutput.utf8(\"</li>\");"));
+        assertFalse(java.contains("_HTML_3"), "Each distinct chunk should be encoded once");
     }
 
     @Test
@@ -87,6 +108,61 @@ class SubclassCodeGeneratorTest {
         assertTrue(java.contains("baseLayout.render(out,"));
     }
 
+    @Test
+    void testLayoutPageSupportsEarlyFlush() {
+        BodyNode body = parseTemplate("<h1>About</h1>");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "AboutPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/about", "base",
+                Set.of(), Map.of(), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("public void renderWithEarlyFlush(HtmlOutput out, EarlyFlush earlyFlush)"));
+        assertTrue(java.contains("_renderLayout(out, null);"), "Plain render skips early flush");
+        assertTrue(java.contains("baseLayout.render(out, earlyFlush != null ? earlyFlush.wrap(_slots) : _slots);"));
+    }
+
+    @Test
+    void testDeferBlockRendersInBackgroundMethod() {
+        BodyNode body = parseTemplate(
+                "<h1>Home</h1>{{ defer \"recs\" }}<ul>{{ recommendations }}</ul>{{ else }}<p>Loading</p>{{ end }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "HomePage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/", null,
+                Set.of("recommendations"), Map.of("recommendations", "String"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("if (out.beginDefer(\"recs\", this::_defer0)) {"));
+        assertTrue(java.contains("out.endDefer();"));
+        assertTrue(java.contains("private void _defer0(HtmlOutput out) {"));
+        int method = java.indexOf("private void _defer0");
+        assertTrue(java.indexOf("this.getRecommendations()") > method,
+                "Deferred content is rendered by the method, not inline");
+    }
+
+    @Test
+    void testCacheBlockSkipsRegionOnHit() {
+        BodyNode body = parseTemplate(
+                "{{ for category in categories }}{{ cache \"sidebar-\" ~ category ttl=300 }}<nav>{{ category }}</nav>{{ end }}{{ end }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "ShopPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/shop", null,
+                Set.of("categories"), Map.of("categories", "List<String>"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("int _cacheMark0 = out.beginCache(_cacheKey0);"));
+        assertTrue(java.contains("if (_cacheMark0 >= 0) {"));
+        assertTrue(java.contains("out.endCache(_cacheKey0, _cacheMark0, 300L);"));
+        assertTrue(java.indexOf("out.appendEscaped(String.valueOf(category))") > java.indexOf("if (_cacheMark0 >= 0) {"),
+                "The region renders inside the miss branch");
+    }
+
     @Test
     void testPageWithActions() {
         BodyNode body = parseTemplate("<form method=\"POST\"><button>Submit</button></form>");
@@ -99,6 +175,67 @@ class SubclassCodeGeneratorTest {
                 Map.of(), Map.of(), Set.of(), true));
 
         assertTrue(java.contains("methods = {\"GET\", \"POST\", \"DELETE\"}"));
+        assertFalse(java.contains("dispatchAction"), "No handlers, no generated dispatch");
+    }
+
+    @Test
+    void testPageWithActionHandlersGeneratesDispatch() {
+        BodyNode body = parseTemplate("<form method=\"POST\"><button>Submit</button></form>");
+
+        Map<String, SubclassCodeGenerator.ActionHandler> handlers = new LinkedHashMap<>();
+        handlers.put("POST", new SubclassCodeGenerator.ActionHandler("save", "ActionResult"));
+        handlers.put("DELETE", new SubclassCodeGenerator.ActionHandler("remove", "void"));
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "SubmitPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/submit", null,
+                Set.of(), Map.of(), new LinkedHashSet<>(List.of("POST", "DELETE")),
+                body,
+                Map.of(), Map.of(), Set.of(), true, handlers, null, Map.of()));
+
+        assertTrue(java.contains("public ActionResult dispatchAction(String httpMethod) throws Exception {"));
+        assertTrue(java.contains("ActionResult _result = this.save();"));
+        assertTrue(java.contains("this.remove();\n"));
+        assertTrue(java.contains("return null;"), "Unknown methods fall back to the runtime");
+    }
+
+    @Test
+    void testPageFactoryInjectsFieldsAndLayout() {
+        BodyNode body = parseTemplate("<h1>{{ title }}</h1>");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "PostsPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/posts", "base",
+                Set.of("title"), Map.of("title", "String"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), false, Map.of(),
+                new SubclassCodeGenerator.PageFactoryInfo(List.of(
+                        new SubclassCodeGenerator.Injection("postService", "demo.PostService", true),
+                        new SubclassCodeGenerator.Injection("clock", "java.time.Clock", false))),
+                Map.of()));
+
+        assertTrue(java.contains("public static class Factory extends CandiPageFactory {"));
+        assertTrue(java.contains("return PostsPage_Candi.class;"));
+        assertTrue(java.contains("_postService = dependency(PostsPage.class, \"postService\");"));
+        assertTrue(java.contains("_baseLayout = dependency(PostsPage_Candi.class, \"baseLayout\");"));
+        assertTrue(java.contains("PostsPage_Candi page = new PostsPage_Candi();"));
+        assertTrue(java.contains("page.baseLayout = _baseLayout.get();"));
+        assertTrue(java.contains("page.setPostService(_postService.get());"));
+        assertTrue(java.contains("page.clock = _clock.get();"));
+    }
+
+    @Test
+    void testNoPageFactoryWhenNotEligible() {
+        BodyNode body = parseTemplate("<p>test</p>");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of(), Map.of(), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertFalse(java.contains("CandiPageFactory"));
     }
 
     @Test
@@ -128,8 +265,8 @@ class SubclassCodeGeneratorTest {
                 body,
                 Map.of(), Map.of(), Set.of(), true));
 
-        assertTrue(java.contains("for (var post : _list_post)"),
-                "for loop should use enhanced for-each iteration");
+        assertTrue(java.contains("var post = _it_post.next();"),
+                "for loop should iterate the source");
         assertTrue(java.contains("int post_index = 0;"),
                 "loop index should be initialized before loop");
         assertTrue(java.contains("post.getTitle()"));
@@ -178,8 +315,9 @@ class SubclassCodeGeneratorTest {
                 Map.of(), Map.of(), Set.of(), true));
 
         // Inline rendering in render()
-        assertTrue(java.contains("out.append(\"<h1>Posts</h1>\");"));
-        assertTrue(java.contains("out.append(\"<ul><li>item</li></ul>\");"));
+        assertTrue(java.contains("_HTML_0 = HtmlOutput.utf8(\"<h1>Posts</h1>\");"));
+        assertTrue(java.contains("_HTML_1 = HtmlOutput.utf8(\"<ul><li>item</li></ul>\");"));
+        assertTrue(java.contains("out.append(_HTML_0);"));
 
         // renderFragment dispatch
         assertTrue(java.contains("public void renderFragment(String _name, HtmlOutput out)"));
@@ -276,6 +414,45 @@ class SubclassCodeGeneratorTest {
         assertTrue(java.contains("slots.renderSlot(\"content\", out)"));
     }
 
+    @Test
+    void testLazyGetterIsMemoized() {
+        BodyNode body = parseTemplate("{{ fragment \"list\" }}{{ for c in comments }}{{ c }}{{ end }}{{ end }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "PostPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/post", null,
+                Set.of("comments"), Map.of("comments", "List<String>"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true, Map.of(), null, Map.of(),
+                List.of(new SubclassCodeGenerator.LazyGetter("getComments", "public",
+                        "java.util.List<java.lang.String>", "java.util.List<java.lang.String>")), false));
+
+        assertTrue(java.contains("private final LazyValue<java.util.List<java.lang.String>> _lazy_getComments = new LazyValue<>();"));
+        assertTrue(java.contains("public java.util.List<java.lang.String> getComments() {\n"
+                + "        return _lazy_getComments.get(super::getComments);"));
+        assertTrue(java.contains("this.getComments()"), "Templates read the property through the getter");
+    }
+
+    @Test
+    void testLayoutHoleIsDispatchedByRenderHole() {
+        BodyNode body = parseTemplate(
+                "<header>{{ hole }}{{ widget \"cart\" }}{{ end }}</header>{{ content }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "BaseLayout", "layouts", JavaAnalyzer.FileType.LAYOUT,
+                null, "base",
+                Set.of(), Map.of(), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("out.hole(this, 0);"));
+        assertTrue(java.contains("public void renderHole(int _id, HtmlOutput out) {"));
+        assertTrue(java.indexOf("getBean(\"Cart__Widget\"") > java.indexOf("public void renderHole"),
+                "The hole body is rendered by renderHole only");
+        assertTrue(java.contains("private ApplicationContext _applicationContext;"),
+                "Layouts calling widgets get the application context");
+    }
+
     // ========== WIDGET Tests ==========
 
     @Test
@@ -353,6 +530,142 @@ class SubclassCodeGeneratorTest {
         assertTrue(java.contains("_params.put(\"type\""));
     }
 
+    @Test
+    void testPageWithKnownWidgetCallsSettersDirectly() {
+        BodyNode body = parseTemplate("{{ for item in items }}{{ widget \"alert\" type=\"error\" count=item }}{{ end }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of("items"), Map.of("items", "List<Integer>"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true, Map.of(), null,
+                Map.of("Alert__Widget", new SubclassCodeGenerator.WidgetInfo(
+                        "widgets.Alert_Candi", Map.of("type", "java.lang.String", "count", "int")))));
+
+        assertTrue(java.contains("widgets.Alert_Candi _comp = widgets.Alert_Candi.create(_applicationContext);"));
+        assertTrue(java.contains("_comp.setType((java.lang.String) (Object) (\"error\"));"));
+        assertTrue(java.contains("_comp.setCount((int) (Object) (item));"));
+        assertFalse(java.contains("_params"), "Typed calls should not build a parameter map");
+    }
+
+    @Test
+    void testPureWidgetCallLooksUpMemoFirst() {
+        BodyNode body = parseTemplate("{{ widget \"alert\" type=\"error\" count=total }}");
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("type", "java.lang.String");
+        params.put("count", "int");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of("total"), Map.of("total", "int"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true, Map.of(), null,
+                Map.of("Alert__Widget", new SubclassCodeGenerator.WidgetInfo(
+                        "widgets.Alert_Candi", params, true))));
+
+        assertTrue(java.contains("var _arg1 = (int) (Object) (this.getTotal());"));
+        assertTrue(java.contains("java.util.List<Object> _memoKey = java.util.Arrays.asList(_arg0, _arg1);"));
+        assertTrue(java.contains("HtmlOutput.Captured _memoized = _memo.get(out, _memoKey);"));
+        assertTrue(java.contains("out.replay(_memoized);"), "A hit also pushes the widget's stack content");
+        assertTrue(java.indexOf(".create(_applicationContext)") > java.indexOf("} else {"),
+                "The widget is only created on a memo miss");
+        assertTrue(java.contains("} finally {\n"
+                + "                    _memoized = out.endRegion(_region);\n"
+                + "                }\n"
+                + "                _memo.put(out, _memoKey, _memoized);"), java);
+    }
+
+    @Test
+    void testPureWidgetMemoKeyHasASlotPerParameter() {
+        BodyNode body = parseTemplate("{{ widget \"alert\" type=\"x\" }}{{ widget \"alert\" message=\"x\" }}");
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("type", "java.lang.String");
+        params.put("message", "java.lang.String");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of(), Map.of(), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true, Map.of(), null,
+                Map.of("Alert__Widget", new SubclassCodeGenerator.WidgetInfo("widgets.Alert_Candi", params, true))));
+
+        assertTrue(java.contains("_memoKey = java.util.Arrays.asList(_arg0, WidgetMemo.UNSET);"), java);
+        assertTrue(java.contains("_memoKey = java.util.Arrays.asList(WidgetMemo.UNSET, _arg0);"),
+                "Equal values for different parameters give different keys");
+    }
+
+    @Test
+    void testAsyncWidgetCallEvaluatesParamsBeforeRendering() {
+        BodyNode body = parseTemplate("{{ for item in items }}{{ widget \"alert\" count=item_index }}{{ end }}"
+                + "{{ widget \"chart\" async=false }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of("items"), Map.of("items", "List<Integer>"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true, Map.of(), null,
+                Map.of("Alert__Widget", new SubclassCodeGenerator.WidgetInfo(
+                        "widgets.Alert_Candi", Map.of("count", "int"))),
+                List.of(), true));
+
+        assertTrue(java.contains("var _arg0 = (int) (Object) (item_index);\n"
+                + "                        out.async(_o -> {\n"
+                + "                            widgets.Alert_Candi _comp = widgets.Alert_Candi.create(_applicationContext);\n"
+                + "                            _comp.setCount(_arg0);\n"
+                + "                            _comp.render(_o);"));
+        assertTrue(java.contains("_applicationContext.getBean(\"Chart__Widget\", CandiComponent.class);\n"
+                + "            _comp.render(out);"), "async=false overrides the page setting");
+        assertFalse(java.contains("\"async\""), "async is not passed as a widget parameter");
+    }
+
+    @Test
+    void testAsyncOptionMustBeLiteral() {
+        assertThrows(CompileError.class, () -> parseTemplate("{{ widget \"chart\" async=flag }}"));
+    }
+
+    @Test
+    void testKnownWidgetWithUnknownParamFallsBackToMap() {
+        BodyNode body = parseTemplate("{{ widget \"alert\" extra=\"x\" }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of(), Map.of(), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true, Map.of(), null,
+                Map.of("Alert__Widget", new SubclassCodeGenerator.WidgetInfo(
+                        "widgets.Alert_Candi", Map.of("type", "java.lang.String")))));
+
+        assertTrue(java.contains("_params.put(\"extra\""));
+    }
+
+    @Test
+    void testWidgetCreateMethod() {
+        BodyNode body = parseTemplate("<div>{{ type }}</div>");
+
+        String direct = generate(new SubclassCodeGenerator.SubclassInput(
+                "Alert", "widgets", JavaAnalyzer.FileType.WIDGET,
+                null, null,
+                Set.of("type"), Map.of("type", "String"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true, Map.of(),
+                new SubclassCodeGenerator.PageFactoryInfo(List.of()), Map.of()));
+        assertTrue(direct.contains("public static Alert_Candi create(org.springframework.context.ApplicationContext context) {"));
+        assertTrue(direct.contains("return new Alert_Candi();"));
+
+        String injected = generate(new SubclassCodeGenerator.SubclassInput(
+                "Alert", "widgets", JavaAnalyzer.FileType.WIDGET,
+                null, null,
+                Set.of("type"), Map.of("type", "String"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+        assertTrue(injected.contains("return context.getBean(\"Alert__Widget\", Alert_Candi.class);"));
+    }
+
     // ========== Equality/Expression Tests ==========
 
     @Test
@@ -415,9 +728,56 @@ class SubclassCodeGeneratorTest {
                 body,
                 Map.of(), Map.of(), Set.of(), true));
 
-        assertTrue(java.contains("for (var item : _list_item)"), "Should generate enhanced for-each loop");
+        assertTrue(java.contains("var _list_item = CandiLoops.iterable(this.getItems());"), "Should accept any loop source");
+        assertTrue(java.contains("var item = _it_item.next();"), "Should iterate the source");
         assertTrue(java.contains("boolean item_first = (item_index == 0);"), "Should generate item_first");
-        assertTrue(java.contains("boolean item_last = (item_index == _size_item - 1);"), "Should generate item_last");
+        assertTrue(java.contains("boolean item_last = !_it_item.hasNext();"), "Should generate item_last by lookahead");
+        assertTrue(java.contains("CandiLoops.close(_list_item);"), "Should release the source");
+    }
+
+    @Test
+    void testParallelForLoopRendersChunks() {
+        BodyNode body = parseTemplate(
+                "{{ for group in groups }}" +
+                "{{ for row in group.rows parallel }}" +
+                "<tr data-group=\"{{ group_index }}\">{{ row_index }}{{ if row_last }}.{{ end }}</tr>" +
+                "{{ end }}" +
+                "{{ end }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of("groups"), Map.of("groups", "List<Group>"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("int _group_index1 = group_index;\n"
+                + "                        var _items_row = CandiLoops.toList(group.getRows());\n"
+                + "                        int _size_row = _items_row.size();\n"
+                + "                        int _chunk_row = out.parallelChunk(_size_row);\n"
+                + "                        for (int _from_row = 0; _from_row < _size_row; _from_row += _chunk_row) {\n"
+                + "                            int _start_row = _from_row;\n"
+                + "                            out.asyncChunk(_chunk_row, _size_row, _out0 -> {\n"
+                + "                                int _end_row = Math.min(_start_row + _chunk_row, _size_row);\n"
+                + "                                for (int row_index = _start_row; row_index < _end_row; row_index++) {\n"
+                + "                                    var row = _items_row.get(row_index);\n"
+                + "                                    boolean row_first = (row_index == 0);\n"
+                + "                                    boolean row_last = (row_index == _size_row - 1);\n"), java);
+        assertTrue(java.contains("_out0.appendInt(_group_index1);"),
+                "Enclosing loop indexes are read through a copy");
+        assertTrue(java.contains("_out0.appendInt(row_index);"));
+        assertTrue(java.contains("while (_it_group.hasNext())"), "Only the marked loop is parallel");
+    }
+
+    @Test
+    void testParallelIsOnlyAnOptionAtTheEnd() {
+        ForNode loop = (ForNode) parseTemplate("{{ for x in parallel }}{{ x }}{{ end }}").children().getFirst();
+        assertFalse(loop.parallel());
+        assertEquals("parallel", ((Expression.Variable) loop.collection()).name());
+
+        loop = (ForNode) parseTemplate("{{ for x in xs parallel }}{{ x }}{{ end }}").children().getFirst();
+        assertTrue(loop.parallel());
+        assertEquals("xs", ((Expression.Variable) loop.collection()).name());
     }
 
     // ========== Ternary Expression Tests ==========
@@ -622,10 +982,60 @@ class SubclassCodeGeneratorTest {
                 body,
                 Map.of(), Map.of(), Set.of(), true));
 
-        assertTrue(java.contains("Objects.equals("), "Switch should use Objects.equals");
-        assertTrue(java.contains("\"active\""), "Should check active case");
-        assertTrue(java.contains("\"inactive\""), "Should check inactive case");
-        assertTrue(java.contains("} else {"), "Should have default else branch");
+        assertTrue(java.contains("switch (this.getStatus()) {"), "A String subject is a Java switch");
+        assertTrue(java.contains("case \"active\" -> {"), "Should check active case");
+        assertTrue(java.contains("case \"inactive\" -> {"), "Should check inactive case");
+        assertTrue(java.contains("case null, default -> {"), "Null goes to the default branch");
+    }
+
+    @Test
+    void testSwitchOnUnknownTypeComparesWithEquals() {
+        BodyNode body = parseTemplate(
+                "{{ switch status }}{{ case \"a\" }}A{{ case 1 }}B{{ end }}" +
+                "{{ switch count }}{{ case 1 }}one{{ case 1 }}again{{ end }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of("status", "count"), Map.of("status", "com.example.Status", "count", "int"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("if (java.util.Objects.equals(_sw0, \"a\")) {"), java);
+        assertTrue(java.contains("if (java.util.Objects.equals(_sw1, 1)) {"), "Duplicate cases keep the chain");
+        assertFalse(java.contains("switch ("));
+    }
+
+    @Test
+    void testTypedOutputComparisonsAndSwitch() {
+        BodyNode body = parseTemplate(
+                "{{ count }} {{ total }} {{ ratio }} {{ raw count * 2 }} {{ name.length() }} {{ name }}" +
+                "{{ if active }}A{{ end }}{{ if count == total }}E{{ end }}{{ if name == \"x\" }}N{{ end }}" +
+                "{{ switch count }}{{ case 1 }}one{{ case -2 }}minus{{ default }}many{{ end }}" +
+                "{{ switch day }}{{ case \"MONDAY\" }}start{{ end }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of("count", "total", "ratio", "name", "active", "day"),
+                Map.of("count", "int", "total", "long", "ratio", "double", "name", "String",
+                        "active", "boolean", "day", "java.time.DayOfWeek"), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("out.appendInt(this.getCount());"), java);
+        assertTrue(java.contains("out.appendLong(this.getTotal());"));
+        assertTrue(java.contains("out.appendDouble(this.getRatio());"));
+        assertTrue(java.contains("out.appendInt((this.getCount() * 2));"), "Raw int output is digits too");
+        assertTrue(java.contains("out.appendInt(this.getName().length());"), "Method return types are resolved");
+        assertTrue(java.contains("out.appendEscaped(String.valueOf(this.getName()));"));
+        assertTrue(java.contains("if (this.getActive()) {"), "A primitive boolean needs no null check");
+        assertTrue(java.contains("if ((this.getCount() == this.getTotal())) {"), "Primitives compare with ==");
+        assertTrue(java.contains("Objects.equals(this.getName(), \"x\")"));
+        assertTrue(java.contains("switch (this.getCount()) {\n"), java);
+        assertTrue(java.contains("case -2 -> {"));
+        assertEquals(1, java.split("case null, default -> \\{").length - 1, "An int subject cannot be null");
+        assertTrue(java.contains("case MONDAY -> {"), "Enum constants are named by the case strings");
     }
 
     // ========== Named Slot Tests ==========
@@ -644,6 +1054,8 @@ class SubclassCodeGeneratorTest {
 
         assertTrue(java.contains("implements CandiLayout"), "Should implement CandiLayout");
         assertTrue(java.contains("slots.renderSlot(\"sidebar\", out)"), "Should render named slot");
+        assertTrue(java.contains("if (out.contentMark() == _before) {"),
+                "Default content should also count async renders as slot content");
     }
 
     @Test
@@ -712,6 +1124,24 @@ class SubclassCodeGeneratorTest {
         assertTrue(java.contains("<p>World</p>"), "HTML after comment should remain");
     }
 
+    @Test
+    void testOptimizedBodyIsRendered() {
+        BodyNode body = parseTemplate("<h1>Hello</h1>{{-- comment --}}<p>{{ \"world\" | upper }}</p>"
+                + "{{ if false }}{{ widget \"debug\" }}{{ end }}");
+
+        String java = generate(new SubclassCodeGenerator.SubclassInput(
+                "TestPage", "pages", JavaAnalyzer.FileType.PAGE,
+                "/test", null,
+                Set.of(), Map.of(), Set.of(),
+                body,
+                Map.of(), Map.of(), Set.of(), true));
+
+        assertTrue(java.contains("_HTML_0 = HtmlOutput.utf8(\"<h1>Hello</h1><p>WORLD</p>\");"), java);
+        assertFalse(java.contains("_HTML_1"), "Adjacent static HTML is one append");
+        assertFalse(java.contains("CandiFilters"), "Filters on literals are applied at compile time");
+        assertFalse(java.contains("Debug__Widget"), "Unreachable widget calls are dropped");
+    }
+
     // ========== Verbatim Tests (codegen) ==========
 
     @Test
@@ -511,4 +511,36 @@ class LexerTest {
         assertEquals(TokenType.STRING_LITERAL, tokens.get(2).type());
         assertEquals("scripts", tokens.get(2).value());
     }
+
+    @Test
+    void testDeferKeyword() {
+        String source = "{{ defer \"recommendations\" }}<ul></ul>{{ else }}Loading{{ end }}";
+        List<Token> tokens = Lexer.tokenizeTemplate(source, "test.jhtml");
+
+        assertEquals(TokenType.KEYWORD_DEFER, tokens.get(1).type());
+        assertEquals(TokenType.STRING_LITERAL, tokens.get(2).type());
+        assertEquals("recommendations", tokens.get(2).value());
+    }
+
+    @Test
+    void testCacheKeyword() {
+        String source = "{{ cache \"sidebar-\" ~ category ttl=300 }}<nav></nav>{{ end }}";
+        List<Token> tokens = Lexer.tokenizeTemplate(source, "test.jhtml");
+
+        assertEquals(TokenType.KEYWORD_CACHE, tokens.get(1).type());
+        assertEquals(TokenType.STRING_LITERAL, tokens.get(2).type());
+        assertEquals(TokenType.TILDE, tokens.get(3).type());
+        assertEquals(TokenType.IDENTIFIER, tokens.get(4).type());
+        assertEquals("ttl", tokens.get(5).value());
+        assertEquals(TokenType.EQUALS_SIGN, tokens.get(6).type());
+        assertEquals("300", tokens.get(7).value());
+    }
+
+    @Test
+    void testHoleKeyword() {
+        List<Token> tokens = Lexer.tokenizeTemplate("{{ hole }}<b>cart</b>{{ end }}", "test.jhtml");
+
+        assertEquals(TokenType.KEYWORD_HOLE, tokens.get(1).type());
+        assertEquals(TokenType.EXPR_END, tokens.get(2).type());
+    }
 }
@@ -0,0 +1,68 @@
+package candi.compiler.optimizer;
+
+import candi.compiler.ast.*;
+import candi.compiler.lexer.Lexer;
+import candi.compiler.lexer.Token;
+import candi.compiler.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlMinifierTest {
+
+    private BodyNode minify(String template) {
+        List<Token> tokens = Lexer.tokenizeTemplate(template, "test.java");
+        return new HtmlMinifier().minify(new Parser(tokens, "test.java").parseBody());
+    }
+
+    /**
+     * The static HTML of a minified body, with "{}" for each dynamic node.
+     */
+    private String html(String template) {
+        StringBuilder sb = new StringBuilder();
+        appendHtml(minify(template), sb);
+        return sb.toString();
+    }
+
+    private static void appendHtml(BodyNode body, StringBuilder sb) {
+        for (Node node : body.children()) {
+            switch (node) {
+                case HtmlNode html -> sb.append(html.content());
+                case IfNode ifNode -> {
+                    sb.append("{if}");
+                    appendHtml(ifNode.thenBody(), sb);
+                    sb.append("{end}");
+                }
+                default -> sb.append("{}");
+            }
+        }
+    }
+
+    @Test
+    void collapsesWhitespaceAndDropsComments() {
+        assertEquals("<ul>\n<li>a</li>\n<li> b c </li>\n</ul>\n",
+                html("<ul>\n    <li>a</li>  <!-- first -->\n    <li>  b   c </li>\n</ul>\n"));
+        assertEquals("<a href=\"x\" class=\"  two  spaces \">{}</a>",
+                html("<a   href=\"x\"\n   class=\"  two  spaces \">{{ label }}</a>"));
+        assertEquals("<!--[if IE]><p>old</p><![endif]-->", html("<!--[if IE]><p>old</p><![endif]-->"));
+        assertEquals("1 < 2 <p>", html("1  <  2   <p>"));
+    }
+
+    @Test
+    void rawTextElementsAndVerbatimAreKept() {
+        String pre = "<pre>  a\n    b  </pre> <textarea>\n  x  </textarea> <script>if (a  <  b) {}</script>";
+        assertEquals(pre, html(pre));
+        assertEquals("<PRE class=\"c\">  {}  </PRE> <p>", html("<PRE class=\"c\">  {{ code }}  </PRE>   <p>"));
+        assertEquals("{{ not   parsed }}  <b>", html("{{ verbatim }}{{ not   parsed }}  <b>{{ end }}"));
+    }
+
+    @Test
+    void stateCarriesAcrossExpressionsAndBlocks() {
+        assertEquals("<pre>{if}  x  {end}  y  </pre> <p>",
+                html("<pre>{{ if flag }}  x  {{ end }}  y  </pre>   <p>"));
+        assertEquals("<input value=\"{}  kept  \"> <p>", html("<input value=\"{{ v }}  kept  \">   <p>"));
+        assertEquals("<!-- {} -->", html("<!-- {{ note }} -->"));
+    }
+}
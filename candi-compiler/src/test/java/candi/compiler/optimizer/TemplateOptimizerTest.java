@@ -0,0 +1,79 @@
+package candi.compiler.optimizer;
+
+import candi.compiler.ast.*;
+import candi.compiler.expr.Expression;
+import candi.compiler.lexer.Lexer;
+import candi.compiler.lexer.Token;
+import candi.compiler.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateOptimizerTest {
+
+    private BodyNode optimize(String template) {
+        List<Token> tokens = Lexer.tokenizeTemplate(template, "test.java");
+        return new TemplateOptimizer().optimize(new Parser(tokens, "test.java").parseBody());
+    }
+
+    private static String html(BodyNode body) {
+        assertEquals(1, body.children().size(), () -> TemplateOptimizer.dump(body));
+        return assertInstanceOf(HtmlNode.class, body.children().getFirst()).content();
+    }
+
+    @Test
+    void constantOutputBecomesEscapedStaticHtml() {
+        assertEquals("<b>ABC 7 &lt;1 true</b>",
+                html(optimize("<b>{{ \"abc\" | upper }} {{ 2 * 3 + 1 }} {{ \"<\" ~ 1 }} {{ !false }}</b>")));
+        assertEquals("<p>Hello</p><p>World</p>",
+                html(optimize("<p>Hello</p>{{-- comment --}}<p>{{ \"World\" }}</p>")));
+        assertEquals("<i>", html(optimize("{{ raw \"<i>\" }}")));
+        assertEquals("Long...", html(optimize("{{ \"Longer text\" | truncate(4) | capitalize }}")));
+    }
+
+    @Test
+    void foldsOnlyWhatRuntimeWouldComputeTheSame() {
+        for (String expr : List.of("\"title\" | upper", "1 / 0", "2147483647 + 1", "1.5 + 1",
+                "true ? 1 : 2.5", "007", "name | upper")) {
+            BodyNode body = optimize("{{ " + expr + " }}");
+            assertInstanceOf(ExpressionOutputNode.class, body.children().getFirst(), expr);
+        }
+    }
+
+    @Test
+    void unreachableBranchesAreDropped() {
+        assertEquals("<p>no</p>", html(optimize("<p>{{ if 1 > 2 }}yes{{ else }}no{{ end }}</p>")));
+        assertEquals("ab", html(optimize("a{{ if false && flag }}x{{ end }}{{ if true || flag }}{{ else }}y{{ end }}b")));
+
+        BodyNode body = optimize("{{ if flag }}x{{ end }}");
+        assertInstanceOf(IfNode.class, body.children().getFirst());
+    }
+
+    @Test
+    void branchesWithFragmentsOrLocalsKeepTheirIf() {
+        BodyNode fragment = optimize("{{ if false }}{{ fragment \"list\" }}x{{ end }}{{ end }}");
+        assertInstanceOf(IfNode.class, fragment.children().getFirst(), "fragments are also rendered on their own");
+
+        BodyNode scoped = optimize("{{ if true }}{{ set x = 1 }}{{ x }}{{ end }}{{ set x = 2 }}");
+        IfNode kept = assertInstanceOf(IfNode.class, scoped.children().getFirst());
+        assertEquals(new Expression.BooleanLiteral(true, kept.condition().location()), kept.condition());
+        assertNull(kept.elseBody());
+    }
+
+    @Test
+    void dumpShowsTheOptimizedTree() {
+        String dump = TemplateOptimizer.dump(optimize(
+                "<ul>{{ for item in items }}<li>{{ item.name | upper }}</li>{{ end }}</ul>"));
+
+        assertEquals("""
+                  html "<ul>"
+                  for item in items
+                    html "<li>"
+                    {{ (item.name | upper) }}
+                    html "</li>"
+                  html "</ul>"
+                """, dump);
+    }
+}
@@ -0,0 +1,52 @@
+package candi.compiler.optimizer;
+
+import candi.compiler.ast.*;
+import candi.compiler.lexer.Lexer;
+import candi.compiler.parser.Parser;
+import candi.compiler.optimizer.WidgetPrerenderer.PrerenderableWidget;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WidgetPrerendererTest {
+
+    private static BodyNode parse(String template) {
+        return new Parser(Lexer.tokenizeTemplate(template, "test.java"), "test.java").parseBody();
+    }
+
+    private static BodyNode prerender(String template, String widgetTemplate) {
+        PrerenderableWidget alert = new PrerenderableWidget(parse(widgetTemplate),
+                Map.of("type", "java.lang.String", "message", "java.lang.String", "dismissible", "boolean"));
+        return new WidgetPrerenderer(name -> name.equals("alert") ? alert : null).prerender(parse(template));
+    }
+
+    @Test
+    void literalCallsBecomeStaticHtml() {
+        BodyNode body = prerender(
+                "{{ if ok }}{{ widget \"alert\" type=\"success\" message=\"Saved <3\" dismissible=true }}{{ end }}",
+                "<div class=\"alert-{{ type }}\">{{ message }}{{ if dismissible }} <button>x</button>{{ end }}</div>");
+
+        IfNode ifNode = assertInstanceOf(IfNode.class, body.children().getFirst());
+        HtmlNode html = assertInstanceOf(HtmlNode.class, ifNode.thenBody().children().getFirst());
+        assertEquals("<div class=\"alert-success\">Saved &lt;3 <button>x</button></div>", html.content());
+    }
+
+    @Test
+    void callsNeedingRuntimeValuesAreKept() {
+        String widget = "<div class=\"alert-{{ type }}\">{{ message }}</div>";
+        for (String call : new String[]{
+                "{{ widget \"alert\" type=\"info\" message=text }}",         // not a literal
+                "{{ widget \"alert\" type=\"info\" }}",                       // message keeps its initializer
+                "{{ widget \"alert\" type=1 message=\"m\" }}",                // wrong type
+                "{{ widget \"alert\" type=\"info\" message=\"m\" icon=\"i\" }}", // not a plain parameter
+                "{{ widget \"other\" }}"}) {
+            assertInstanceOf(ComponentCallNode.class, prerender(call, widget).children().getFirst(), call);
+        }
+
+        BodyNode shadowed = prerender("{{ widget \"alert\" type=\"a\" message=\"m\" }}",
+                "{{ set message = \"other\" }}{{ message }}");
+        assertInstanceOf(ComponentCallNode.class, shadowed.children().getFirst());
+    }
+}
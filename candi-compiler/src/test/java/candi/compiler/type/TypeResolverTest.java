@@ -74,6 +74,29 @@ class TypeResolverTest {
         assertEquals(TypeInfo.STRING, resolver.getVariableType("name"));
     }
 
+    @Test
+    void resolvesPrimitiveFieldTypes() {
+        PageNode page = parse("""
+                @Page("/test")
+                public class TestPage {
+
+                    private int count;
+                    private boolean active;
+                }
+
+                <template>
+                <p>{{ count }}{{ active }}</p>
+                </template>
+                """);
+
+        TypeResolver resolver = new TypeResolver();
+        List<TypeCheckError> errors = resolver.resolve(page);
+
+        assertTrue(errors.isEmpty(), "Expected no errors, got: " + errors);
+        assertEquals(TypeInfo.INT, resolver.getVariableType("count"));
+        assertEquals(TypeInfo.BOOLEAN, resolver.getVariableType("active"));
+    }
+
     @Test
     void reportsUnknownFieldType() {
         PageNode page = parse("""
@@ -179,6 +202,30 @@ class TypeResolverTest {
         assertNotNull(resolver.getVariableType("item"));
     }
 
+    @Test
+    void handlesForLoopOverStreamAndIterator() {
+        PageNode page = parse("""
+                @Page("/test")
+                public class TestPage {
+
+                    private Stream rows;
+                    private Iterator cursor;
+                }
+
+                <template>
+                {{ for row in rows }}<p>{{ row }}</p>{{ end }}
+                {{ for entry in cursor }}<p>{{ entry }}</p>{{ end }}
+                </template>
+                """);
+
+        TypeResolver resolver = new TypeResolver();
+        List<TypeCheckError> errors = resolver.resolve(page);
+
+        assertTrue(errors.isEmpty(), "Expected no errors, got: " + errors);
+        assertNotNull(resolver.getVariableType("row"));
+        assertNotNull(resolver.getVariableType("entry"));
+    }
+
     @Test
     void handlesBooleanExpressions() {
         PageNode page = parse("""
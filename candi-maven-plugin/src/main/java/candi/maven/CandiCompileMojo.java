@@ -40,6 +40,12 @@ public class CandiCompileMojo extends AbstractMojo {
     @Parameter(defaultValue = "pages", property = "candi.packageName")
     private String packageName;
 
+    /**
+     * Minify the static HTML of the compiled templates (whitespace and comments).
+     */
+    @Parameter(defaultValue = "false", property = "candi.minifyHtml")
+    private boolean minifyHtml;
+
     @Override
     public void execute() throws MojoExecutionException {
         Path sourcePath = Paths.get(sourceDir);
@@ -59,7 +65,7 @@ public class CandiCompileMojo extends AbstractMojo {
 
         getLog().info("Compiling " + candiFiles.size() + " Candi file(s)...");
 
-        CandiCompiler compiler = new CandiCompiler();
+        CandiCompiler compiler = new CandiCompiler(minifyHtml);
         int compiled = 0;
 
         for (Path candiFile : candiFiles) {
@@ -2,16 +2,31 @@ package candi.processor;
 
 import candi.compiler.JavaAnalyzer;
 import candi.compiler.ast.BodyNode;
+import candi.compiler.codegen.BodyRenderer;
 import candi.compiler.codegen.SubclassCodeGenerator;
+import candi.compiler.codegen.SubclassCodeGenerator.ActionHandler;
+import candi.compiler.codegen.SubclassCodeGenerator.Injection;
+import candi.compiler.codegen.SubclassCodeGenerator.LazyGetter;
+import candi.compiler.codegen.SubclassCodeGenerator.PageFactoryInfo;
 import candi.compiler.codegen.SubclassCodeGenerator.RequestParamInfo;
 import candi.compiler.codegen.SubclassCodeGenerator.SubclassInput;
+import candi.compiler.codegen.SubclassCodeGenerator.WidgetInfo;
 import candi.compiler.lexer.Lexer;
 import candi.compiler.lexer.Token;
+import candi.compiler.optimizer.HtmlMinifier;
+import candi.compiler.optimizer.WidgetPrerenderer;
+import candi.compiler.optimizer.WidgetPrerenderer.PrerenderableWidget;
 import candi.compiler.parser.Parser;
 
+import com.sun.source.tree.MethodTree;
+import com.sun.source.util.Trees;
+
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
@@ -27,6 +42,9 @@ import java.util.*;
  * with the appropriate Spring annotations and render() method.
  *
  * <p>Works with any build tool that runs javac (Maven, Gradle, Bazel) — no plugin needed.
+ *
+ * <p>Options: {@code -Acandi.minifyHtml=true} minifies the static HTML of every template,
+ * as {@code @Template(minify = true)} does for one class.
  */
 @SupportedAnnotationTypes({
         "candi.runtime.Page",
@@ -34,10 +52,44 @@ import java.util.*;
         "candi.runtime.Widget"
 })
 @SupportedSourceVersion(SourceVersion.RELEASE_21)
+@SupportedOptions("candi.minifyHtml")
 public class CandiAnnotationProcessor extends AbstractProcessor {
 
+    /**
+     * Widget classes seen so far, by qualified name. Pages calling these widgets
+     * get typed, map-free widget calls.
+     */
+    private final Map<String, TypeElement> knownWidgets = new LinkedHashMap<>();
+
+    /**
+     * Source trees of the classes being compiled, for checking widget accessors; null
+     * when not running inside javac.
+     */
+    private Trees trees;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        try {
+            trees = Trees.instance(processingEnv);
+        } catch (IllegalArgumentException notJavac) {
+            trees = null;
+        }
+    }
+
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        // Collect widgets first so pages processed earlier in the round can see them
+        for (TypeElement annotation : annotations) {
+            if ("candi.runtime.Widget".contentEquals(annotation.getQualifiedName())) {
+                for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                    if (element instanceof TypeElement widget) {
+                        knownWidgets.put(widget.getQualifiedName().toString(), widget);
+                    }
+                }
+            }
+        }
+
         for (TypeElement annotation : annotations) {
             for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
                 if (element.getKind() != ElementKind.CLASS) {
@@ -173,14 +225,17 @@ public class CandiAnnotationProcessor extends AbstractProcessor {
 
         // Extract action methods and detect init()
         Set<String> actionMethods = new LinkedHashSet<>();
+        Map<String, ActionHandler> actionHandlers = new LinkedHashMap<>();
+        List<LazyGetter> lazyGetters = new ArrayList<>();
         boolean hasInitMethod = false;
         for (Element enclosed : classElement.getEnclosedElements()) {
             if (enclosed.getKind() == ElementKind.METHOD) {
                 ExecutableElement method = (ExecutableElement) enclosed;
-                if (hasAnnotation(method, "candi.runtime.Post")) actionMethods.add("POST");
-                if (hasAnnotation(method, "candi.runtime.Put")) actionMethods.add("PUT");
-                if (hasAnnotation(method, "candi.runtime.Delete")) actionMethods.add("DELETE");
-                if (hasAnnotation(method, "candi.runtime.Patch")) actionMethods.add("PATCH");
+                collectAction(method, "candi.runtime.Post", "POST", actionMethods, actionHandlers);
+                collectAction(method, "candi.runtime.Put", "PUT", actionMethods, actionHandlers);
+                collectAction(method, "candi.runtime.Delete", "DELETE", actionMethods, actionHandlers);
+                collectAction(method, "candi.runtime.Patch", "PATCH", actionMethods, actionHandlers);
+                collectLazyGetter(method, fileType, lazyGetters, fieldNames, fieldTypes);
                 if ("init".equals(method.getSimpleName().toString())
                         && method.getParameters().isEmpty()) {
                     hasInitMethod = true;
@@ -193,6 +248,10 @@ public class CandiAnnotationProcessor extends AbstractProcessor {
         List<Token> tokens = Lexer.tokenizeTemplate(templateContent, fileName);
         Parser parser = new Parser(tokens, fileName);
         BodyNode body = parser.parseBody();
+        if (minifyHtml(classElement)) {
+            body = new HtmlMinifier().minify(body);
+        }
+        body = new WidgetPrerenderer(widgetName -> prerenderableWidget(widgetName, packageName)).prerender(body);
 
         // Generate
         SubclassInput input = new SubclassInput(
@@ -200,7 +259,12 @@ public class CandiAnnotationProcessor extends AbstractProcessor {
                 pagePath, layoutName,
                 fieldNames, fieldTypes, actionMethods,
                 body,
-                requestParams, pathVariables, pageableFields, hasInitMethod);
+                requestParams, pathVariables, pageableFields, hasInitMethod, actionHandlers,
+                fileType != JavaAnalyzer.FileType.LAYOUT ? analyzePageFactory(classElement, classHasLombokSetter) : null,
+                resolveWidgets(body, packageName),
+                lazyGetters,
+                fileType == JavaAnalyzer.FileType.PAGE
+                        && extractAnnotationBooleanValue(classElement, "candi.runtime.Page", "asyncWidgets", false));
 
         SubclassCodeGenerator generator = new SubclassCodeGenerator(input);
         String generatedSource = generator.generate();
@@ -220,6 +284,301 @@ public class CandiAnnotationProcessor extends AbstractProcessor {
         }
     }
 
+    /**
+     * Record an action method for the given HTTP method annotation. Non-private no-arg
+     * methods get a direct call in the generated dispatchAction(); the first one wins,
+     * as with the runtime lookup.
+     */
+    private void collectAction(ExecutableElement method, String annotation, String httpMethod,
+                               Set<String> actionMethods, Map<String, ActionHandler> actionHandlers) {
+        if (!hasAnnotation(method, annotation)) return;
+        actionMethods.add(httpMethod);
+        if (method.getModifiers().contains(Modifier.PRIVATE) || !method.getParameters().isEmpty()) {
+            return;
+        }
+        String returnType = method.getReturnType().toString();
+        // ActionResult or one of its nested record types
+        if (returnType.startsWith("candi.runtime.ActionResult")) {
+            returnType = "ActionResult";
+        }
+        actionHandlers.putIfAbsent(httpMethod,
+                new ActionHandler(method.getSimpleName().toString(), returnType));
+    }
+
+    /**
+     * Record a {@code @LazyLoad} getter and make its property readable from the template.
+     * Only pages qualify: layouts and widgets are shared or reused across requests.
+     */
+    private void collectLazyGetter(ExecutableElement method, JavaAnalyzer.FileType fileType,
+                                   List<LazyGetter> lazyGetters,
+                                   Set<String> fieldNames, Map<String, String> fieldTypes) {
+        if (!hasAnnotation(method, "candi.runtime.LazyLoad")) return;
+        String methodName = method.getSimpleName().toString();
+        String property = propertyName(methodName);
+        Set<Modifier> modifiers = method.getModifiers();
+        String problem = null;
+        if (fileType != JavaAnalyzer.FileType.PAGE) {
+            problem = "@LazyLoad is only supported on pages";
+        } else if (property == null || !method.getParameters().isEmpty()
+                || method.getReturnType().getKind() == TypeKind.VOID) {
+            problem = "@LazyLoad method '" + methodName + "' must be a getter (getX() returning a value)";
+        } else if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)
+                || modifiers.contains(Modifier.STATIC)) {
+            problem = "@LazyLoad getter '" + methodName + "' must not be private, final or static";
+        } else if (!method.getThrownTypes().isEmpty()) {
+            problem = "@LazyLoad getter '" + methodName + "' must not declare exceptions";
+        }
+        if (problem != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, problem, method);
+            return;
+        }
+
+        TypeMirror returnType = method.getReturnType();
+        String valueType = returnType.getKind().isPrimitive()
+                ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) returnType).getQualifiedName().toString()
+                : returnType.toString();
+        String modifier = modifiers.contains(Modifier.PUBLIC) ? "public"
+                : modifiers.contains(Modifier.PROTECTED) ? "protected" : "";
+        lazyGetters.add(new LazyGetter(methodName, modifier, returnType.toString(), valueType));
+        fieldNames.add(property);
+        fieldTypes.putIfAbsent(property, simplifyType(returnType.toString()));
+    }
+
+    /**
+     * "getComments" → "comments"; null if not a getter name. Templates read properties
+     * through getX(), so "is" getters are not accepted.
+     */
+    private static String propertyName(String methodName) {
+        if (!methodName.startsWith("get") || methodName.length() == 3
+                || !Character.isUpperCase(methodName.charAt(3))) {
+            return null;
+        }
+        return Character.toLowerCase(methodName.charAt(3)) + methodName.substring(4);
+    }
+
+    /**
+     * Decide whether the page can be created by a generated factory and collect the
+     * {@code @Autowired} fields it must inject. Returns null (request-scoped bean) for
+     * {@code @Page(springManaged = true)} and for anything the factory cannot reproduce:
+     * a superclass, Spring callback interfaces, non-field injection, lifecycle or proxy
+     * annotations, qualifiers, generic dependency types, or private fields without setters.
+     */
+    private PageFactoryInfo analyzePageFactory(TypeElement classElement, boolean classHasLombokSetter) {
+        if (extractAnnotationBooleanValue(classElement, "candi.runtime.Page", "springManaged", false)) {
+            return null;
+        }
+        if (!"java.lang.Object".equals(classElement.getSuperclass().toString())) {
+            return null;
+        }
+        for (TypeMirror iface : classElement.getInterfaces()) {
+            if (iface.toString().startsWith("org.springframework.")) return null;
+        }
+        if (!onlyAnnotations(classElement, "candi.runtime.", "lombok.")) {
+            return null;
+        }
+
+        List<Injection> injections = new ArrayList<>();
+        for (Element enclosed : classElement.getEnclosedElements()) {
+            switch (enclosed.getKind()) {
+                case FIELD -> {
+                    if (enclosed.getModifiers().contains(Modifier.STATIC)) continue;
+                    VariableElement field = (VariableElement) enclosed;
+                    String autowired = "org.springframework.beans.factory.annotation.Autowired";
+                    if (!onlyAnnotations(field, "candi.runtime.", "lombok.", autowired)) return null;
+                    if (!hasAnnotation(field, autowired)) continue;
+
+                    TypeMirror type = field.asType();
+                    if (type.getKind() != TypeKind.DECLARED
+                            || !((DeclaredType) type).getTypeArguments().isEmpty()
+                            || field.getModifiers().contains(Modifier.FINAL)
+                            || extractAnnotationStringValue(field, autowired, "required") != null) {
+                        return null;
+                    }
+                    String fieldName = field.getSimpleName().toString();
+                    boolean isPrivate = field.getModifiers().contains(Modifier.PRIVATE);
+                    if (isPrivate && !classHasLombokSetter && !hasAnnotation(field, "lombok.Setter")
+                            && !hasMethod(classElement, "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1))) {
+                        return null;
+                    }
+                    injections.add(new Injection(fieldName, type.toString(), isPrivate));
+                }
+                case METHOD -> {
+                    if (!onlyAnnotations(enclosed, "candi.runtime.", "lombok.", "java.lang.Override")) return null;
+                }
+                case CONSTRUCTOR -> {
+                    if (!enclosed.getAnnotationMirrors().isEmpty()) return null;
+                }
+                default -> {
+                }
+            }
+        }
+        return new PageFactoryInfo(injections);
+    }
+
+    /**
+     * Look up the widgets called by a template. A widget is found among the widgets
+     * in this compilation, or as a class named after the widget in the page's package.
+     * Widgets not found are called through the bean factory at runtime.
+     */
+    private Map<String, WidgetInfo> resolveWidgets(BodyNode body, String packageName) {
+        Map<String, WidgetInfo> widgets = new LinkedHashMap<>();
+        for (String widgetName : BodyRenderer.collectWidgetNames(body)) {
+            String beanName = BodyRenderer.widgetBeanName(widgetName);
+            String simpleName = beanName.substring(0, beanName.length() - "__Widget".length());
+            TypeElement widget = findWidget(simpleName, packageName);
+            if (widget == null) continue;
+
+            String widgetPackage = getPackageName(widget);
+            boolean samePackage = widgetPackage.equals(packageName);
+            if (!samePackage && !widget.getModifiers().contains(Modifier.PUBLIC)) continue;
+
+            widgets.put(beanName, new WidgetInfo(
+                    widget.getQualifiedName() + "_Candi", widgetParamTypes(widget, samePackage),
+                    extractAnnotationBooleanValue(widget, "candi.runtime.Widget", "pure", false)));
+        }
+        return widgets;
+    }
+
+    private boolean minifyHtml(TypeElement classElement) {
+        return Boolean.parseBoolean(processingEnv.getOptions().get("candi.minifyHtml"))
+                || extractAnnotationBooleanValue(classElement, "candi.runtime.Template", "minify", false);
+    }
+
+    /**
+     * A widget whose calls with literal parameters can be rendered at build time: pure,
+     * with application-wide memoization, its template in this compilation, and no init().
+     * Only parameters whose setter and getter, where written out, just store and return
+     * the field are offered, so the template reads back exactly the value passed.
+     */
+    private PrerenderableWidget prerenderableWidget(String widgetName, String packageName) {
+        String beanName = BodyRenderer.widgetBeanName(widgetName);
+        TypeElement widget = findWidget(beanName.substring(0, beanName.length() - "__Widget".length()), packageName);
+        if (widget == null || trees == null
+                || !extractAnnotationBooleanValue(widget, "candi.runtime.Widget", "pure", false)
+                || "REQUEST".equals(extractAnnotationStringValue(widget, "candi.runtime.Widget", "memoScope"))
+                || hasMethod(widget, "init")) {
+            return null;
+        }
+        String template = extractTemplateContent(widget);
+        if (template == null) {
+            return null;
+        }
+        Map<String, String> paramTypes = new LinkedHashMap<>();
+        widgetParamTypes(widget, getPackageName(widget).equals(packageName)).forEach((name, type) -> {
+            String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            if (isPlainAccessor(widget, "set" + suffix, name) && isPlainAccessor(widget, "get" + suffix, name)
+                    && isPlainAccessor(widget, "is" + suffix, name)) {
+                paramTypes.put(name, type);
+            }
+        });
+        try {
+            String fileName = widget.getSimpleName() + ".java";
+            BodyNode body = new Parser(Lexer.tokenizeTemplate(template, fileName), fileName).parseBody();
+            return new PrerenderableWidget(minifyHtml(widget) ? new HtmlMinifier().minify(body) : body, paramTypes);
+        } catch (RuntimeException invalid) {
+            // Reported when the widget itself is compiled; calls stay runtime calls
+            return null;
+        }
+    }
+
+    /**
+     * Whether every method of the widget with this name (none counts) is a plain
+     * accessor of the field: {@code return field;} or {@code this.field = value;}.
+     */
+    private boolean isPlainAccessor(TypeElement widget, String methodName, String fieldName) {
+        for (Element member : widget.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD || !member.getSimpleName().contentEquals(methodName)) continue;
+            MethodTree method = trees.getTree((ExecutableElement) member);
+            if (method == null || method.getBody() == null || method.getBody().getStatements().size() != 1) {
+                return false;
+            }
+            String statement = method.getBody().getStatements().getFirst().toString().replaceAll("\\s+", "");
+            boolean plain = switch (method.getParameters().size()) {
+                case 0 -> statement.equals("return" + fieldName + ";")
+                        || statement.equals("returnthis." + fieldName + ";");
+                case 1 -> {
+                    String parameter = method.getParameters().getFirst().getName().toString();
+                    yield statement.equals("this." + fieldName + "=" + parameter + ";")
+                            || (!parameter.equals(fieldName) && statement.equals(fieldName + "=" + parameter + ";"));
+                }
+                default -> false;
+            };
+            if (!plain) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TypeElement findWidget(String simpleName, String packageName) {
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        TypeElement widget = knownWidgets.get(qualifiedName);
+        if (widget == null) {
+            for (TypeElement candidate : knownWidgets.values()) {
+                if (candidate.getSimpleName().contentEquals(simpleName)) {
+                    widget = candidate;
+                    break;
+                }
+            }
+        }
+        if (widget == null) {
+            widget = processingEnv.getElementUtils().getTypeElement(qualifiedName);
+        }
+        if (widget == null || !hasAnnotation(widget, "candi.runtime.Widget")) {
+            return null;
+        }
+        return widget;
+    }
+
+    /**
+     * Widget parameters the page can set directly: fields with a setter accessible
+     * from the page's package (explicit, or generated by Lombok).
+     */
+    private Map<String, String> widgetParamTypes(TypeElement widget, boolean samePackage) {
+        boolean lombokSetters = hasAnnotation(widget, "lombok.Setter") || hasAnnotation(widget, "lombok.Data");
+        Map<String, String> paramTypes = new LinkedHashMap<>();
+        for (Element enclosed : widget.getEnclosedElements()) {
+            if (enclosed.getKind() != ElementKind.FIELD || enclosed.getModifiers().contains(Modifier.STATIC)) continue;
+            TypeMirror type = enclosed.asType();
+            if (type.getKind() == TypeKind.TYPEVAR) continue;
+
+            String fieldName = enclosed.getSimpleName().toString();
+            String setterName = "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            boolean accessible = lombokSetters || hasAnnotation(enclosed, "lombok.Setter");
+            for (Element member : widget.getEnclosedElements()) {
+                if (member.getKind() == ElementKind.METHOD
+                        && member.getSimpleName().contentEquals(setterName)
+                        && ((ExecutableElement) member).getParameters().size() == 1) {
+                    Set<Modifier> modifiers = member.getModifiers();
+                    accessible = modifiers.contains(Modifier.PUBLIC)
+                            || (samePackage && !modifiers.contains(Modifier.PRIVATE));
+                }
+            }
+            if (accessible) {
+                paramTypes.put(fieldName, type.toString());
+            }
+        }
+        return paramTypes;
+    }
+
+    /**
+     * Whether every annotation on the element has one of the given name prefixes.
+     */
+    private boolean onlyAnnotations(Element element, String... allowedPrefixes) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String name = mirror.getAnnotationType().toString();
+            boolean allowed = false;
+            for (String prefix : allowedPrefixes) {
+                if (name.startsWith(prefix)) {
+                    allowed = true;
+                    break;
+                }
+            }
+            if (!allowed) return false;
+        }
+        return true;
+    }
+
     private String extractTemplateContent(TypeElement element) {
         for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
             String annotationName = mirror.getAnnotationType().toString();
@@ -112,7 +112,465 @@ class CandiAnnotationProcessorTest {
         assertTrue(generated.contains("class HelloPage_Candi extends HelloPage"));
         assertTrue(generated.contains("implements CandiPage"));
         assertTrue(generated.contains("@CandiRoute(path = \"/hello\""));
-        assertTrue(generated.contains("out.append(\"<h1>Hello World</h1>"));
+        assertTrue(generated.contains("HtmlOutput.utf8(\"<h1>Hello World</h1>"));
+    }
+
+    @Test
+    void testDeferBlockCompiles() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Page("/feed")
+                @Template(\"\"\"
+                <h1>Feed</h1>
+                {{ defer "audit" }}<p>{{ auditLog }}</p>{{ else }}<p>Loading…</p>{{ end }}
+                \"\"\")
+                public class FeedPage {
+                    private String auditLog = "none";
+                    public String getAuditLog() { return auditLog; }
+                }
+                """;
+
+        assertTrue(compileSource("FeedPage", source));
+
+        String generated = readGenerated("FeedPage");
+        assertTrue(generated.contains("out.beginDefer(\"audit\", this::_defer0)"));
+        assertTrue(generated.contains("private void _defer0(HtmlOutput out)"));
+    }
+
+    @Test
+    void testCacheBlockCompiles() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Page("/shop")
+                @Template(\"\"\"
+                {{ for category in categories }}
+                {{ cache "sidebar-" ~ category ttl=300 }}<nav>{{ category }}</nav>{{ end }}
+                {{ end }}
+                \"\"\")
+                public class ShopPage {
+                    private java.util.List<String> categories = java.util.List.of("a", "b");
+                    public java.util.List<String> getCategories() { return categories; }
+                }
+                """;
+
+        assertTrue(compileSource("ShopPage", source));
+
+        String generated = readGenerated("ShopPage");
+        assertTrue(generated.contains("out.beginCache(_cacheKey0)"));
+    }
+
+    @Test
+    void testPageActionsAreDispatchedDirectly() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.ActionResult;
+                import candi.runtime.Delete;
+                import candi.runtime.Page;
+                import candi.runtime.Post;
+                import candi.runtime.Put;
+                import candi.runtime.Template;
+
+                @Page("/form")
+                @Template(\"\"\"
+                <form method="POST"></form>
+                \"\"\")
+                public class FormPage {
+                    @Post
+                    public ActionResult save() { return ActionResult.redirect("/done"); }
+
+                    @Delete
+                    void remove() {}
+
+                    @Put
+                    private void hidden() {}
+                }
+                """;
+
+        assertTrue(compileSource("FormPage", source));
+
+        String generated = readGenerated("FormPage");
+        assertTrue(generated.contains("case \"POST\" -> {"));
+        assertTrue(generated.contains("ActionResult _result = this.save();"));
+        assertTrue(generated.contains("this.remove();"));
+        assertFalse(generated.contains("this.hidden()"), "Private actions are left to the runtime fallback");
+        assertTrue(generated.contains("methods = {\"GET\", \"POST\", \"DELETE\", \"PUT\"}"));
+    }
+
+    @Test
+    void testPageFactoryGeneratedForAutowiredFields() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.RequestContext;
+                import candi.runtime.Template;
+                import org.springframework.beans.factory.annotation.Autowired;
+
+                @Page("/factory")
+                @Template(\"\"\"
+                <h1>{{ title }}</h1>
+                \"\"\")
+                public class FactoryPage {
+                    @Autowired
+                    RequestContext ctx;
+
+                    @Autowired
+                    private java.time.Clock clock;
+
+                    String title;
+
+                    public String getTitle() { return title; }
+                    public void setClock(java.time.Clock clock) { this.clock = clock; }
+                }
+                """;
+
+        assertTrue(compileSource("FactoryPage", source));
+
+        String generated = readGenerated("FactoryPage");
+        assertTrue(generated.contains("public static class Factory extends CandiPageFactory"));
+        assertTrue(generated.contains("page.ctx = _ctx.get();"));
+        assertTrue(generated.contains("page.setClock(_clock.get());"));
+    }
+
+    @Test
+    void testNoPageFactoryForSpringManagedOrLifecyclePages() throws IOException {
+        String optedOut = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Page(value = "/managed", springManaged = true)
+                @Template("<p>managed</p>")
+                public class ManagedPage {
+                }
+                """;
+        String lifecycle = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+                import org.springframework.beans.factory.annotation.Value;
+
+                @Page("/configured")
+                @Template("<p>configured</p>")
+                public class ConfiguredPage {
+                    @Value("${app.name:demo}")
+                    String appName;
+                }
+                """;
+
+        assertTrue(compileSource("ManagedPage", optedOut));
+        assertFalse(readGenerated("ManagedPage").contains("CandiPageFactory"));
+
+        assertTrue(compileSource("ConfiguredPage", lifecycle));
+        assertFalse(readGenerated("ConfiguredPage").contains("CandiPageFactory"));
+    }
+
+    @Test
+    void testWidgetCallInSameCompilationIsTyped() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+                import candi.runtime.Widget;
+
+                @Page("/rows")
+                @Template(\"\"\"
+                {{ for n in numbers }}{{ widget "badge" label="#" count=n }}{{ end }}
+                \"\"\")
+                public class RowsPage {
+                    java.util.List<Integer> numbers = java.util.List.of(1, 2);
+                    public java.util.List<Integer> getNumbers() { return numbers; }
+                }
+
+                @Widget
+                @Template("<b>{{ label }}{{ count }}</b>")
+                class Badge {
+                    private String label;
+                    private int count;
+                    public String getLabel() { return label; }
+                    public void setLabel(String label) { this.label = label; }
+                    public int getCount() { return count; }
+                    public void setCount(int count) { this.count = count; }
+                }
+                """;
+
+        assertTrue(compileSource("RowsPage", source));
+
+        String page = readGenerated("RowsPage");
+        assertTrue(page.contains("test.Badge_Candi _comp = test.Badge_Candi.create(_applicationContext);"));
+        assertTrue(page.contains("_comp.setCount((int) (Object) (n));"));
+        assertFalse(page.contains("_params"));
+
+        assertTrue(readGenerated("Badge").contains("return new Badge_Candi();"));
+    }
+
+    @Test
+    void testAsyncWidgetPageCompiles() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+                import candi.runtime.Widget;
+
+                @Page(value = "/dashboard", asyncWidgets = true)
+                @Template(\"\"\"
+                {{ for n in numbers }}{{ widget "tile" count=n_index }}{{ widget "legend" n=n }}{{ end }}
+                {{ widget "tile" count=0 async=false }}
+                \"\"\")
+                public class DashboardPage {
+                    java.util.List<Integer> numbers = java.util.List.of(1, 2);
+                    public java.util.List<Integer> getNumbers() { return numbers; }
+                }
+
+                @Widget
+                @Template("<b>{{ count }}</b>")
+                class Tile {
+                    private int count;
+                    public int getCount() { return count; }
+                    public void setCount(int count) { this.count = count; }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertTrue(compileSource("DashboardPage", source, diagnostics), diagnostics.toString());
+
+        String page = readGenerated("DashboardPage");
+        assertTrue(page.contains("out.async(_o -> {"));
+        assertTrue(page.contains("_comp.setParams(_params);"), "Unknown widgets render async through the map");
+        assertTrue(page.contains("_comp.render(out);"), "async=false renders in place");
+    }
+
+    @Test
+    void testLoopsOverStreamsAndIteratorsCompile() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Page("/export")
+                @Template(\"\"\"
+                {{ for row in rows }}<tr>{{ row_index }} {{ row.length() }}{{ if row_last }}.{{ end }}</tr>{{ end }}
+                {{ for id in ids }}{{ id }}{{ end }}
+                {{ for n in counts }}{{ n + 1 }}{{ end }}
+                \"\"\")
+                public class ExportPage {
+                    private java.util.stream.Stream<String> rows = java.util.stream.Stream.of("a", "b");
+                    private java.util.Iterator<Long> ids = java.util.List.of(1L).iterator();
+                    private int[] counts = {1, 2};
+                    public java.util.stream.Stream<String> getRows() { return rows; }
+                    public java.util.Iterator<Long> getIds() { return ids; }
+                    public int[] getCounts() { return counts; }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertTrue(compileSource("ExportPage", source, diagnostics), diagnostics.toString());
+
+        String page = readGenerated("ExportPage");
+        assertTrue(page.contains("CandiLoops.iterable(this.getRows())"));
+        assertTrue(page.contains("CandiLoops.close(_list_row);"));
+    }
+
+    @Test
+    void testParallelLoopPageCompiles() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Page("/report")
+                @Template(\"\"\"
+                {{ for section in sections }}
+                <table>{{ for row in rows parallel }}<tr class="{{ section_index }}">{{ row_index }} {{ row }}{{ if row_last }}!{{ end }}</tr>{{ end }}</table>
+                {{ for tag in tags parallel }}{{ set label = tag + section }}{{ label }}{{ end }}
+                {{ end }}
+                \"\"\")
+                public class ReportPage {
+                    private java.util.List<String> sections = java.util.List.of("a", "b");
+                    private java.util.Set<Integer> rows = java.util.Set.of(1, 2, 3);
+                    private String[] tags = {"x", "y"};
+                    public java.util.List<String> getSections() { return sections; }
+                    public java.util.Set<Integer> getRows() { return rows; }
+                    public String[] getTags() { return tags; }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertTrue(compileSource("ReportPage", source, diagnostics), diagnostics.toString());
+
+        String page = readGenerated("ReportPage");
+        assertTrue(page.contains("CandiLoops.toList(this.getRows())"));
+        assertTrue(page.contains("CandiLoops.toList(this.getTags())"));
+    }
+
+    @Test
+    void testMinifiedTemplateCompiles() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Page("/docs")
+                @Template(value = \"\"\"
+                <!-- page header -->
+                <h1   class="title">  {{ title }}  </h1>
+                <pre>  keep
+                    this</pre>
+                \"\"\", minify = true)
+                public class DocsPage {
+                    private String title = "Docs";
+                    public String getTitle() { return title; }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertTrue(compileSource("DocsPage", source, diagnostics), diagnostics.toString());
+
+        String page = readGenerated("DocsPage");
+        assertFalse(page.contains("page header"), page);
+        assertTrue(page.contains("<h1 class=\\\"title\\\"> "), page);
+        assertTrue(page.contains("<pre>  keep\\n    this</pre>"), page);
+    }
+
+    @Test
+    void testPureWidgetCallIsMemoized() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+                import candi.runtime.Widget;
+
+                @Page("/pills")
+                @Template(\"\"\"
+                {{ for s in states }}{{ widget "pill" state=s }}{{ end }}
+                \"\"\")
+                public class PillsPage {
+                    java.util.List<String> states = java.util.List.of("open", "closed");
+                    public java.util.List<String> getStates() { return states; }
+                }
+
+                @Widget(pure = true)
+                @Template("<span>{{ state }}</span>")
+                class Pill {
+                    private String state;
+                    public String getState() { return state; }
+                    public void setState(String state) { this.state = state; }
+                }
+                """;
+
+        assertTrue(compileSource("PillsPage", source));
+
+        String page = readGenerated("PillsPage");
+        assertTrue(page.contains("WidgetMemo _memo = WidgetMemo.of(test.Pill_Candi.class);"));
+        assertTrue(page.contains("_comp.setState(_arg0);"));
+    }
+
+    @Test
+    void testLiteralPureWidgetCallsArePrerendered() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+                import candi.runtime.Widget;
+
+                @Page("/badges")
+                @Template(\"\"\"
+                {{ widget "badge" label="New & hot" count=3 }}|{{ widget "badge" label=title count=1 }}|{{ widget "shout" text="hi" }}
+                \"\"\")
+                public class BadgesPage {
+                    private String title = "Live";
+                    public String getTitle() { return title; }
+                }
+
+                @Widget(pure = true)
+                @Template("<span class=\\"badge\\">{{ label }} ({{ count }})</span>")
+                class Badge {
+                    private String label;
+                    private int count;
+                    public String getLabel() { return label; }
+                    public void setLabel(String label) { this.label = label; }
+                    public int getCount() { return this.count; }
+                    public void setCount(int count) { this.count = count; }
+                }
+
+                @Widget(pure = true)
+                @Template("<b>{{ text }}</b>")
+                class Shout {
+                    private String text;
+                    public String getText() { return text.toUpperCase(); }
+                    public void setText(String text) { this.text = text; }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertTrue(compileSource("BadgesPage", source, diagnostics), diagnostics.toString());
+
+        String page = readGenerated("BadgesPage");
+        assertTrue(page.contains("<span class=\\\"badge\\\">New &amp; hot (3)</span>|"), page);
+        assertTrue(page.contains("test.Badge_Candi"), "a call with a runtime value stays a call");
+        assertTrue(page.contains("test.Shout_Candi"), "a computing getter is not read back as set");
+    }
+
+    @Test
+    void testTypedExpressionsCompile() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Page("/stats")
+                @Template(\"\"\"
+                <p>{{ visits }} / {{ limit }} = {{ share }}{{ if open }} open{{ end }}{{ if visits == limit }}!{{ end }}</p>
+                {{ switch label }}{{ case "a" }}A{{ default }}?{{ end }}
+                {{ switch visits }}{{ case 0 }}none{{ case 1 }}one{{ end }}
+                {{ switch day }}{{ case "SUNDAY" }}rest{{ default }}work{{ end }}
+                {{ for tag in tags }}{{ tag_index + 1 }}{{ end }}
+                \"\"\")
+                public class StatsPage {
+                    private int visits = 3;
+                    private long limit = 3;
+                    private double share = 1.0;
+                    private boolean open = true;
+                    private String label = "a";
+                    private java.time.DayOfWeek day = java.time.DayOfWeek.SUNDAY;
+                    private java.util.List<String> tags = java.util.List.of("x");
+                    public int getVisits() { return visits; }
+                    public long getLimit() { return limit; }
+                    public double getShare() { return share; }
+                    public boolean getOpen() { return open; }
+                    public String getLabel() { return label; }
+                    public java.time.DayOfWeek getDay() { return day; }
+                    public java.util.List<String> getTags() { return tags; }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertTrue(compileSource("StatsPage", source, diagnostics), diagnostics.toString());
+
+        String page = readGenerated("StatsPage");
+        assertTrue(page.contains("out.appendInt(this.getVisits());"), page);
+        assertTrue(page.contains("if ((this.getVisits() == this.getLimit())) {"));
+        assertTrue(page.contains("case SUNDAY -> {"));
+        assertTrue(page.contains("out.appendInt((tag_index + 1));"));
     }
 
     @Test
@@ -188,6 +646,96 @@ class CandiAnnotationProcessorTest {
         assertTrue(generated.contains("slots.renderSlot(\"content\", out)"));
     }
 
+    @Test
+    void testHolesCompileInLayoutsAndPages() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.Layout;
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Layout
+                @Template(\"\"\"
+                <html><body><header>{{ hole }}<span>{{ user }}</span>{{ end }}</header>{{ content }}</body></html>
+                \"\"\")
+                public class ShellLayout {
+                    private String user = "guest";
+                    public String getUser() { return user; }
+                }
+
+                @Page(value = "/news", layout = "shell")
+                @Template(\"\"\"
+                <h1>News</h1>{{ hole }}<p>{{ greeting }}</p>{{ end }}
+                \"\"\")
+                class NewsPage {
+                    private String greeting = "hi";
+                    public String getGreeting() { return greeting; }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertTrue(compileSource("ShellLayout", source, diagnostics), diagnostics.toString());
+
+        assertTrue(readGenerated("ShellLayout").contains("public void renderHole(int _id, HtmlOutput out)"));
+        assertTrue(readGenerated("NewsPage").contains("out.hole(this, 0);"));
+    }
+
+    @Test
+    void testLazyLoadGettersAreMemoized() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.LazyLoad;
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+                import java.util.List;
+
+                @Page("/post")
+                @Template(\"\"\"
+                {{ fragment "comments" }}{{ for c in comments }}<p>{{ c }}</p>{{ end }}{{ end }}
+                <span>{{ views }}</span>
+                \"\"\")
+                public class PostPage {
+                    @LazyLoad
+                    public List<String> getComments() { return List.of("first"); }
+
+                    @LazyLoad
+                    protected int getViews() { return 42; }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertTrue(compileSource("PostPage", source, diagnostics), diagnostics.toString());
+
+        String generated = readGenerated("PostPage");
+        assertTrue(generated.contains("public java.util.List<java.lang.String> getComments() {"));
+        assertTrue(generated.contains("private final LazyValue<java.lang.Integer> _lazy_getViews = new LazyValue<>();"));
+        assertTrue(generated.contains("protected int getViews() {"));
+    }
+
+    @Test
+    void testLazyLoadRejectsNonGetters() throws IOException {
+        String source = """
+                package test;
+
+                import candi.runtime.LazyLoad;
+                import candi.runtime.Page;
+                import candi.runtime.Template;
+
+                @Page("/broken")
+                @Template("<p></p>")
+                public class LazyBrokenPage {
+                    @LazyLoad
+                    public void load() { }
+                }
+                """;
+
+        var diagnostics = new java.util.ArrayList<Diagnostic<? extends JavaFileObject>>();
+        assertFalse(compileSource("LazyBrokenPage", source, diagnostics));
+        assertTrue(diagnostics.stream().anyMatch(d -> d.getMessage(null).contains("must be a getter")));
+    }
+
     @Test
     void testWidgetGeneration() throws IOException {
         String source = """
@@ -0,0 +1,103 @@
+package candi.runtime;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Invokes @Post/@Put/@Delete/@Patch action methods on pages that do not generate
+ * their own {@link CandiPage#dispatchAction(String)} (e.g. hand-written @Page classes).
+ *
+ * <p>The class hierarchy is scanned once per page class and the action methods are
+ * kept as {@link MethodHandle}s, so requests do not pay for reflection lookups.
+ * PageRegistry builds the tables at startup; classes loaded later (hot reload) are
+ * scanned on first use.
+ */
+final class ActionInvoker {
+
+    private static final Map<String, Class<? extends Annotation>> METHOD_ANNOTATIONS = Map.of(
+            "POST", Post.class,
+            "PUT", Put.class,
+            "DELETE", Delete.class,
+            "PATCH", Patch.class
+    );
+
+    private static final MethodType ACTION_TYPE = MethodType.methodType(Object.class, CandiPage.class);
+
+    private static final ClassValue<Map<String, MethodHandle>> TABLES = new ClassValue<>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return buildTable(type);
+        }
+    };
+
+    private ActionInvoker() {
+    }
+
+    /**
+     * Build the action table for a page class ahead of its first request.
+     */
+    static void prepare(Class<?> pageClass) {
+        TABLES.get(pageClass);
+    }
+
+    /**
+     * Invoke the action method for the given HTTP method.
+     * Returns {@link ActionResult#methodNotAllowed()} if the page has none.
+     */
+    static ActionResult invoke(CandiPage page, String httpMethod) throws Throwable {
+        MethodHandle handle = TABLES.get(page.getClass()).get(httpMethod);
+        if (handle == null) {
+            return ActionResult.methodNotAllowed();
+        }
+        Object result = (Object) handle.invokeExact(page);
+        if (result instanceof ActionResult actionResult) {
+            return actionResult;
+        }
+        // If the method returns void or non-ActionResult, fall through to render
+        return ActionResult.render();
+    }
+
+    /**
+     * Walk the class hierarchy (supports the subclass pattern where @Post/@Delete methods
+     * are on the parent class). The most specific class wins.
+     */
+    private static Map<String, MethodHandle> buildTable(Class<?> pageClass) {
+        Map<String, MethodHandle> table = new HashMap<>();
+        Class<?> current = pageClass;
+        while (current != null && current != Object.class) {
+            for (Method m : current.getDeclaredMethods()) {
+                for (Map.Entry<String, Class<? extends Annotation>> entry : METHOD_ANNOTATIONS.entrySet()) {
+                    if (m.isAnnotationPresent(entry.getValue()) && !table.containsKey(entry.getKey())) {
+                        table.put(entry.getKey(), toHandle(m));
+                    }
+                }
+            }
+            current = current.getSuperclass();
+        }
+        return Map.copyOf(table);
+    }
+
+    private static MethodHandle toHandle(Method m) {
+        if (m.getParameterCount() != 0) {
+            // Fail when the action is invoked, not when the table is built
+            IllegalArgumentException error = new IllegalArgumentException(
+                    "Action method " + m.getName() + " on " + m.getDeclaringClass().getName()
+                            + " must not take parameters");
+            MethodHandle thrower = MethodHandles.throwException(Object.class, IllegalArgumentException.class)
+                    .bindTo(error);
+            return MethodHandles.dropArguments(thrower, 0, CandiPage.class);
+        }
+        try {
+            m.setAccessible(true);
+            return MethodHandles.lookup().unreflect(m).asType(ACTION_TYPE);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Cannot access action method " + m.getName()
+                    + " on " + m.getDeclaringClass().getName(), e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package candi.runtime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches a page's rendered output in {@link OutputCache}.
+ *
+ * <p>A cached GET/HEAD is answered with the stored bytes without creating the page or
+ * running init()/onGet()/render(). On a miss, only one request per key renders; concurrent
+ * requests for the same key wait for it. Entries are keyed by page, path, fragment and
+ * query parameters, and carry {@link #tags()} that {@link Invalidates @Invalidates}
+ * actions or {@link OutputCache#invalidateTags} evict.
+ *
+ * <pre>
+ * &#64;Page("/posts")
+ * &#64;CachedPage(ttl = 60, staleWhileRevalidate = 300, key = {"q", "page"}, tags = "posts")
+ * public class PostsPage { ... }
+ * </pre>
+ *
+ * Only cache pages whose output does not depend on the user, session or cookies.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface CachedPage {
+
+    /**
+     * Seconds a rendered page is served as fresh.
+     */
+    long ttl() default 60;
+
+    /**
+     * Seconds after {@link #ttl()} during which the expired page is still served while
+     * one request re-renders it in the background. 0 re-renders synchronously.
+     */
+    long staleWhileRevalidate() default 0;
+
+    /**
+     * Query parameters that select the cached variant. Empty (the default) uses the
+     * whole query string.
+     */
+    String[] key() default {};
+
+    /**
+     * Tags for invalidation.
+     */
+    String[] tags() default {};
+}
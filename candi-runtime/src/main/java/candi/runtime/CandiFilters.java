@@ -39,20 +39,7 @@ public class CandiFilters {
     }
 
     public static String escape(Object val) {
-        String s = String.valueOf(val);
-        StringBuilder sb = new StringBuilder(s.length());
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            switch (c) {
-                case '&' -> sb.append("&amp;");
-                case '<' -> sb.append("&lt;");
-                case '>' -> sb.append("&gt;");
-                case '"' -> sb.append("&quot;");
-                case '\'' -> sb.append("&#x27;");
-                default -> sb.append(c);
-            }
-        }
-        return sb.toString();
+        return HtmlEscaper.escape(String.valueOf(val));
     }
 
     public static String truncate(Object val, int maxLen) {
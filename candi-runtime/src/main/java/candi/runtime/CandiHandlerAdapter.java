@@ -5,35 +5,76 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.HandlerAdapter;
 import org.springframework.web.servlet.ModelAndView;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.util.Map;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Spring HandlerAdapter that orchestrates the Candi page request lifecycle:
- * 1. Get request-scoped CandiPage bean from Spring DI
+ * 1. Create the CandiPage via its generated factory, or get the request-scoped bean from Spring DI
  * 2. page.init()
- * 3. Check HTTP method → invoke @Post/@Delete/etc annotated method via reflection
- * 4. Render full page
+ * 3. Check HTTP method → invoke @Post/@Delete/etc annotated method
+ * 4. onGet(), then the page's @Load methods concurrently on virtual threads
+ * 5. Render full page
+ *
+ * <p>When {@code candi.output.flush-threshold} is set to a positive value, pages are
+ * streamed to the response in chunks of roughly that many bytes instead of being
+ * buffered whole. Streaming commits the response early, so errors thrown mid-render
+ * can no longer be turned into an error page.
+ *
+ * <p>With {@code candi.output.early-flush=true}, full-page renders stream and data
+ * loading is postponed until the layout first asks for page content (see
+ * {@link EarlyFlush}): the layout head reaches the client before onGet() and the
+ * {@code @Load} methods run. Fragment requests are unaffected.
+ *
+ * <p>Full-page responses stay open after the page is written until its
+ * {@code {{ defer }}} blocks have been streamed (see {@link DeferredBlocks}), at most
+ * {@code candi.defer.timeout} milliseconds (default 10000); blocks still running then
+ * keep their fallback content.
+ *
+ * <p>{@code candi.load.timeout} (milliseconds, 0 = none) bounds how long the @Load
+ * methods may take together; loaders still running at the deadline are cancelled.
+ *
+ * <p>GET/HEAD requests are answered with 304 Not Modified when the page's
+ * {@link CandiPage#etag()} or {@link CandiPage#lastModified()} matches the request's
+ * conditional headers, before any data is loaded. With {@code candi.etag.enabled=true},
+ * buffered responses of other pages get a strong ETag hashed from the rendered bytes,
+ * which saves the transfer (not the render) on a match. Fragment requests have their
+ * own ETags.
+ *
+ * <p>Naming several fragments in one request renders them from a single page lifecycle
+ * into one multipart response (see {@link FragmentBatch}).
+ *
+ * <p>GET/HEAD requests for {@link CachedPage @CachedPage} pages are served from
+ * {@link OutputCache} without creating the page; actions annotated with
+ * {@link Invalidates @Invalidates} evict the tags they name. Cached pages with
+ * {{ hole }} regions are stored as a shell and only the holes render per request.
+ *
+ * <p>Widget calls marked async (see {@link Page#asyncWidgets()}) render concurrently,
+ * at most {@code candi.widget.max-parallel} (default 4, 0 = never) per response, and are
+ * spliced into the output before it is written.
+ *
+ * <p>Buffered pages render into an {@link HtmlOutputPool} buffer pre-sized from the
+ * page's running output-size estimate in {@link PageRegistry}.
  */
 @Component
 public class CandiHandlerAdapter implements HandlerAdapter {
 
     private static final Logger log = LoggerFactory.getLogger(CandiHandlerAdapter.class);
     private static final Set<String> RENDER_METHODS = Set.of("GET", "HEAD");
-
-    private static final Map<String, Class<? extends Annotation>> METHOD_ANNOTATIONS = Map.of(
-            "POST", Post.class,
-            "PUT", Put.class,
-            "DELETE", Delete.class,
-            "PATCH", Patch.class
-    );
+    private static final int EARLY_FLUSH_CHUNK_SIZE = 8192;
 
     @Autowired
     private ApplicationContext applicationContext;
@@ -41,6 +82,30 @@ public class CandiHandlerAdapter implements HandlerAdapter {
     @Autowired
     private PageRegistry pageRegistry;
 
+    @Autowired
+    private HtmlOutputPool outputPool;
+
+    @Autowired
+    private OutputCache outputCache;
+
+    @Value("${candi.output.flush-threshold:0}")
+    private int flushThreshold;
+
+    @Value("${candi.output.early-flush:false}")
+    private boolean earlyFlush;
+
+    @Value("${candi.etag.enabled:false}")
+    private boolean etagEnabled;
+
+    @Value("${candi.defer.timeout:10000}")
+    private long deferTimeout;
+
+    @Value("${candi.load.timeout:0}")
+    private long loadTimeout;
+
+    @Value("${candi.widget.max-parallel:4}")
+    private int maxParallelWidgets;
+
     @Override
     public boolean supports(Object handler) {
         return handler instanceof CandiHandlerMapping.CandiPageHandler;
@@ -61,8 +126,15 @@ public class CandiHandlerAdapter implements HandlerAdapter {
             return null;
         }
 
-        // 1. Get request-scoped page bean
-        CandiPage page = applicationContext.getBean(beanName, CandiPage.class);
+        // Cached pages are answered from OutputCache without creating the page
+        CachedPage cachedPage = pageRegistry.getCachedPage(beanName);
+        if (cachedPage != null && RENDER_METHODS.contains(method)) {
+            serveCached(beanName, cachedPage, request, response);
+            return null;
+        }
+
+        // 1. Create the page via its generated factory, or get the request-scoped page bean
+        CandiPage page = createPage(beanName, request);
 
         // 2. Run init() — shared setup, always runs
         page.init();
@@ -75,6 +147,10 @@ public class CandiHandlerAdapter implements HandlerAdapter {
             }
 
             ActionResult result = invokeAction(page, method);
+            String[] invalidated = pageRegistry.getInvalidatedTags(beanName, method);
+            if (invalidated.length > 0 && !(result instanceof ActionResult.MethodNotAllowed)) {
+                outputCache.invalidateTags(invalidated);
+            }
 
             switch (result) {
                 case ActionResult.Redirect redirect -> {
@@ -91,28 +167,316 @@ public class CandiHandlerAdapter implements HandlerAdapter {
             }
         }
 
-        // 4. onGet() — data loading before render (skipped on redirect)
-        page.onGet();
+        // 4. Detect fragment request (AJAX partial rendering); several names form a batch
+        String fragmentName = fragmentName(request);
+
+        // 5. Conditional GET: the page's etag()/lastModified() can skip loading and rendering
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        boolean conditional = RENDER_METHODS.contains(method);
+        boolean validatedByPage = false;
+        if (conditional) {
+            String etag = page.etag();
+            long lastModified = page.lastModified();
+            if (etag != null || lastModified >= 0) {
+                if (etag != null && fragmentName != null) {
+                    // Each fragment of a page is a different representation
+                    etag = etag + "-" + Integer.toHexString(fragmentName.hashCode());
+                }
+                if (webRequest.checkNotModified(etag, lastModified)) {
+                    return null;
+                }
+                validatedByPage = etag != null;
+            }
+        }
+        boolean hashOutput = etagEnabled && conditional && !validatedByPage;
+
+        // 6. Full-page renders stream {{ defer }} blocks after the page; fragments render them inline
+        String boundary = FragmentBatch.isBatch(fragmentName) ? FragmentBatch.newBoundary() : null;
+        response.setContentType(contentType(boundary));
+        try (DeferredBlocks deferred = fragmentName == null ? new DeferredBlocks(Duration.ofMillis(deferTimeout)) : null;
+             ParallelRenders parallel = maxParallelWidgets > 0 ? new ParallelRenders(maxParallelWidgets) : null) {
+
+            // 7. Early flush: send the layout head, then load data while the browser fetches assets
+            if (earlyFlush && deferred != null) {
+                renderWithEarlyFlush(page, response, deferred, parallel);
+                return null;
+            }
+
+            // 8. onGet() — data loading before render (skipped on redirect)
+            loadData(page);
+
+            // 9. Render and write response
+            if (flushThreshold > 0) {
+                HtmlOutput out = new HtmlOutput(response.getOutputStream(), flushThreshold);
+                out.setDeferredBlocks(deferred);
+                out.setOutputCache(outputCache);
+                out.setParallelRenders(parallel);
+                render(page, fragmentName, boundary, out);
+                out.flush();
+                writeDeferred(deferred, response);
+            } else {
+                HtmlOutput out = outputPool.acquire(pageRegistry.estimateOutputSize(beanName));
+                try {
+                    out.setDeferredBlocks(deferred);
+                    out.setOutputCache(outputCache);
+                    out.setParallelRenders(parallel);
+                    render(page, fragmentName, boundary, out);
+                    if (fragmentName == null) {
+                        pageRegistry.recordOutputSize(beanName, out.length());
+                    }
+                    if (deferred == null || deferred.isEmpty()) {
+                        if (hashOutput && webRequest.checkNotModified(out.etag())) {
+                            return null;
+                        }
+                        // Output is already UTF-8 — write it as-is with an exact Content-Length
+                        response.setContentLength(out.length());
+                        out.writeTo(response.getOutputStream());
+                    } else {
+                        out.writeTo(response.getOutputStream());
+                        response.flushBuffer();
+                        writeDeferred(deferred, response);
+                    }
+                } finally {
+                    outputPool.release(out);
+                }
+            }
+        }
 
-        // 5. Detect fragment request (AJAX partial rendering)
+        return null;
+    }
+
+    private CandiPage createPage(String beanName, HttpServletRequest request) {
+        CandiPageFactory factory = pageRegistry.getPageFactory(beanName);
+        return factory != null
+                ? factory.create(request)
+                : applicationContext.getBean(beanName, CandiPage.class);
+    }
+
+    /**
+     * The requested fragment, or the comma-joined names of a batch, or null for the full page.
+     */
+    private static String fragmentName(HttpServletRequest request) {
         String fragmentName = request.getHeader("Candi-Fragment");
-        if (fragmentName == null) {
-            fragmentName = request.getParameter("_fragment");
+        String[] values = fragmentName != null
+                ? new String[] {fragmentName}
+                : request.getParameterValues("_fragment");
+        if (values == null) {
+            return null;
         }
+        List<String> names = FragmentBatch.names(values);
+        return names.isEmpty() ? null : String.join(",", names);
+    }
 
-        // 6. Render
-        HtmlOutput out = new HtmlOutput();
+    /**
+     * The content type of a batch with the boundary, or of HTML when the boundary is null.
+     */
+    private static String contentType(String boundary) {
+        return boundary != null ? FragmentBatch.contentType(boundary) : "text/html;charset=UTF-8";
+    }
+
+    /**
+     * The content type of a cached response; a batch keeps the boundary it was rendered with.
+     */
+    private static String contentType(String fragmentName, byte[] body) {
+        return contentType(FragmentBatch.isBatch(fragmentName) ? FragmentBatch.boundaryOf(body) : null);
+    }
+
+    /**
+     * Answer a GET/HEAD for a @CachedPage: a fresh entry is written as-is; a stale one is
+     * written and then re-rendered in the background from a snapshot of this request, so
+     * the request completes without waiting for the refresh; a miss renders once per key
+     * while concurrent requests wait.
+     */
+    private void serveCached(String beanName, CachedPage cachedPage, HttpServletRequest request,
+                             HttpServletResponse response) throws Exception {
+        String fragmentName = fragmentName(request);
+        String key = cacheKey(beanName, cachedPage, request, fragmentName);
+        OutputCache.Policy policy = new OutputCache.Policy(
+                TimeUnit.SECONDS.toMillis(cachedPage.ttl()),
+                TimeUnit.SECONDS.toMillis(cachedPage.staleWhileRevalidate()),
+                Set.of(cachedPage.tags()));
+        Callable<OutputCache.Rendering> render = () -> renderForCache(beanName, request, fragmentName);
+
+        OutputCache.Entry entry = outputCache.get(key);
+        if (entry != null && !outputCache.isFresh(entry)) {
+            writeCached(beanName, entry, fragmentName, request, response);
+            // Failures are logged by the cache; the stale entry stays until it expires
+            outputCache.refreshAsync(key, policy, detached(beanName, request, fragmentName));
+            return;
+        }
+        if (entry == null) {
+            entry = outputCache.load(key, policy, render);
+        }
+        writeCached(beanName, entry, fragmentName, request, response);
+    }
+
+    /**
+     * A render for cache that does not read the request after it completes: it runs on a
+     * {@link RequestSnapshot}, bound as the current request while it renders.
+     */
+    private Callable<OutputCache.Rendering> detached(String beanName, HttpServletRequest request,
+                                                     String fragmentName) {
+        RequestSnapshot snapshot = RequestSnapshot.of(request);
+        return () -> {
+            ServletRequestAttributes attributes = new ServletRequestAttributes(snapshot);
+            RequestContextHolder.setRequestAttributes(attributes);
+            try {
+                return renderForCache(beanName, snapshot, fragmentName);
+            } finally {
+                attributes.requestCompleted();
+                RequestContextHolder.resetRequestAttributes();
+            }
+        };
+    }
+
+    private void writeCached(String beanName, OutputCache.Entry entry, String fragmentName,
+                             HttpServletRequest request, HttpServletResponse response) throws Exception {
+        if (!entry.holes().isEmpty()) {
+            writeShell(beanName, entry, fragmentName, request, response);
+            return;
+        }
+        if (etagEnabled && new ServletWebRequest(request, response).checkNotModified(entry.etag())) {
+            return;
+        }
+        response.setContentType(contentType(fragmentName, entry.body()));
+        response.setContentLength(entry.body().length);
+        response.getOutputStream().write(entry.body());
+    }
+
+    /**
+     * Stitch a cached page shell with freshly rendered holes. Page holes render on a new
+     * page that has run the whole data lifecycle (init(), onGet(), @Load), so they read
+     * the same data as when the shell was rendered; layout holes render on the layout.
+     */
+    private void writeShell(String beanName, OutputCache.Entry entry, String fragmentName,
+                            HttpServletRequest request, HttpServletResponse response) throws Exception {
+        byte[] body = entry.body();
+        CandiPage page = null;
+        HtmlOutput out = outputPool.acquire(body.length);
+        try {
+            out.setOutputCache(outputCache);
+            int pos = 0;
+            for (HtmlOutput.Hole hole : entry.holes()) {
+                out.append(body, pos, hole.start() - pos);
+                if (hole.layout() != null) {
+                    hole.layout().renderHole(hole.id(), out);
+                } else {
+                    if (page == null) {
+                        page = createPage(beanName, request);
+                        page.init();
+                        loadData(page);
+                    }
+                    page.renderHole(hole.id(), out);
+                }
+                pos = hole.end();
+            }
+            out.append(body, pos, body.length - pos);
+            response.setContentType(contentType(fragmentName, body));
+            response.setContentLength(out.length());
+            out.writeTo(response.getOutputStream());
+        } finally {
+            outputPool.release(out);
+        }
+    }
+
+    /**
+     * Run the page lifecycle for a cacheable GET and return the rendered bytes, with the
+     * positions of its holes. {{ defer }} blocks render inline, as the cached copy must
+     * be complete.
+     */
+    private OutputCache.Rendering renderForCache(String beanName, HttpServletRequest request, String fragmentName)
+            throws Exception {
+        CandiPage page = createPage(beanName, request);
+        page.init();
+        loadData(page);
+        HtmlOutput out = outputPool.acquire(pageRegistry.estimateOutputSize(beanName));
+        try {
+            out.setOutputCache(outputCache);
+            out.recordHoles();
+            render(page, fragmentName, FragmentBatch.isBatch(fragmentName) ? FragmentBatch.newBoundary() : null, out);
+            if (fragmentName == null) {
+                pageRegistry.recordOutputSize(beanName, out.length());
+            }
+            return new OutputCache.Rendering(out.toByteArray(), out.holes());
+        } finally {
+            outputPool.release(out);
+        }
+    }
+
+    /**
+     * Page, path, fragment and the query parameters named by the policy (or the whole
+     * query string when none are named).
+     */
+    static String cacheKey(String beanName, CachedPage cachedPage, HttpServletRequest request,
+                           String fragmentName) {
+        StringBuilder key = new StringBuilder(beanName).append(' ').append(request.getRequestURI());
+        if (cachedPage.key().length == 0) {
+            if (request.getQueryString() != null) {
+                key.append('?').append(request.getQueryString());
+            }
+        } else {
+            for (String param : cachedPage.key()) {
+                key.append('&').append(param).append('=');
+                String[] values = request.getParameterValues(param);
+                if (values != null) {
+                    key.append(String.join(",", values));
+                }
+            }
+        }
         if (fragmentName != null) {
+            key.append('#').append(fragmentName);
+        }
+        return key.toString();
+    }
+
+    /**
+     * onGet() followed by the page's @Load methods.
+     */
+    private void loadData(CandiPage page) throws Exception {
+        page.onGet();
+        PageLoaders.load(page, loadTimeout > 0 ? Duration.ofMillis(loadTimeout) : null);
+    }
+
+    private void renderWithEarlyFlush(CandiPage page, HttpServletResponse response, DeferredBlocks deferred,
+                                      ParallelRenders parallel) throws Exception {
+        HtmlOutput out = new HtmlOutput(response.getOutputStream(),
+                flushThreshold > 0 ? flushThreshold : EARLY_FLUSH_CHUNK_SIZE);
+        out.setDeferredBlocks(deferred);
+        out.setOutputCache(outputCache);
+        out.setParallelRenders(parallel);
+        EarlyFlush earlyFlush = new EarlyFlush(() -> loadData(page));
+        try {
+            page.renderWithEarlyFlush(out, earlyFlush);
+            // A layout without slots never triggered loading; onGet() still runs
+            earlyFlush.load(out);
+        } catch (EarlyFlush.LoadFailure e) {
+            throw (Exception) e.getCause();
+        }
+        out.flush();
+        writeDeferred(deferred, response);
+    }
+
+    /**
+     * Keep the response open until the page's deferred blocks are written or time out.
+     */
+    private void writeDeferred(DeferredBlocks deferred, HttpServletResponse response) throws IOException {
+        if (deferred != null) {
+            deferred.writeTo(response.getOutputStream());
+        }
+    }
+
+    /**
+     * Render the page, a fragment, or (with a boundary) a batch of fragments.
+     */
+    private void render(CandiPage page, String fragmentName, String boundary, HtmlOutput out) {
+        if (boundary != null) {
+            FragmentBatch.render(page, fragmentName, boundary, out);
+        } else if (fragmentName != null) {
             page.renderFragment(fragmentName, out);
         } else {
             page.render(out);
         }
-
-        // 7. Write response
-        response.setContentType("text/html;charset=UTF-8");
-        response.getWriter().write(out.toHtml());
-
-        return null;
+        out.joinAsync();
     }
 
     @Override
@@ -121,38 +485,16 @@ public class CandiHandlerAdapter implements HandlerAdapter {
     }
 
     /**
-     * Find and invoke the action method annotated with the matching HTTP method annotation.
-     * E.g. for POST, looks for a method annotated with @Post.
+     * Invoke the action method for the given HTTP method. Generated pages dispatch
+     * with direct calls; other pages use the cached handles in {@link ActionInvoker}.
      */
     private ActionResult invokeAction(CandiPage page, String httpMethod) {
-        Class<? extends Annotation> annotationClass = METHOD_ANNOTATIONS.get(httpMethod);
-        if (annotationClass == null) {
-            return ActionResult.methodNotAllowed();
-        }
-
-        // Walk class hierarchy to find action methods (supports subclass pattern
-        // where @Post/@Delete methods are on the parent class)
-        Class<?> current = page.getClass();
-        while (current != null && current != Object.class) {
-            for (Method m : current.getDeclaredMethods()) {
-                if (m.isAnnotationPresent(annotationClass)) {
-                    try {
-                        m.setAccessible(true);
-                        Object result = m.invoke(page);
-                        if (result instanceof ActionResult actionResult) {
-                            return actionResult;
-                        }
-                        // If the method returns void or non-ActionResult, fall through to render
-                        return ActionResult.render();
-                    } catch (Exception e) {
-                        log.error("Error invoking action method {} on {}", m.getName(), page.getClass().getName(), e);
-                        throw new RuntimeException("Action method invocation failed", e);
-                    }
-                }
-            }
-            current = current.getSuperclass();
+        try {
+            ActionResult result = page.dispatchAction(httpMethod);
+            return result != null ? result : ActionInvoker.invoke(page, httpMethod);
+        } catch (Throwable e) {
+            log.error("Error invoking {} action on {}", httpMethod, page.getClass().getName(), e);
+            throw new RuntimeException("Action method invocation failed", e);
         }
-
-        return ActionResult.methodNotAllowed();
     }
 }
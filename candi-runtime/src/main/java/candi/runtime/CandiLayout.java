@@ -13,4 +13,12 @@ public interface CandiLayout {
      * @param slots provider for resolving named slots
      */
     void render(HtmlOutput out, SlotProvider slots);
+
+    /**
+     * Render a {{ hole }} region of the layout on its own, to fill it into a cached page
+     * shell. Generated subclasses override this with a switch dispatch.
+     */
+    default void renderHole(int id, HtmlOutput out) {
+        throw new UnsupportedOperationException("No holes defined in " + getClass().getName());
+    }
 }
@@ -0,0 +1,125 @@
+package candi.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+
+/**
+ * Helpers for the code generated from {{ for }} loops.
+ *
+ * <p>A loop accepts any {@link Iterable} or array, and also a {@link Stream},
+ * {@link Iterator} or {@link Spliterator}, which are read one element ahead of the body
+ * (for {@code x_last}) and never collected into a list. With a streaming output, a loop
+ * over a database cursor therefore renders in constant memory. Streams are closed when
+ * the loop ends, also if the body throws.
+ */
+public final class CandiLoops {
+
+    private CandiLoops() {
+    }
+
+    public static <T> Iterable<T> iterable(Iterable<T> items) {
+        return items;
+    }
+
+    public static <T> Iterable<T> iterable(T[] items) {
+        return Arrays.asList(items);
+    }
+
+    public static Iterable<Integer> iterable(int[] items) {
+        return toList(items);
+    }
+
+    public static Iterable<Long> iterable(long[] items) {
+        return toList(items);
+    }
+
+    public static Iterable<Double> iterable(double[] items) {
+        return toList(items);
+    }
+
+    public static <T> Iterable<T> iterable(Stream<T> items) {
+        return new StreamSource<>(items);
+    }
+
+    /**
+     * A one-shot iterable: the loop consumes the iterator.
+     */
+    public static <T> Iterable<T> iterable(Iterator<T> items) {
+        return () -> items;
+    }
+
+    public static <T> Iterable<T> iterable(Spliterator<T> items) {
+        return () -> Spliterators.iterator(items);
+    }
+
+    /**
+     * Release the source of a finished loop: closes streams passed to the loop.
+     */
+    public static void close(Iterable<?> items) {
+        if (items instanceof StreamSource<?> source) {
+            source.stream.close();
+        }
+    }
+
+    /**
+     * The items as an indexable list: random-access lists as they are, anything else copied.
+     */
+    public static <T> List<T> toList(Iterable<T> items) {
+        if (items instanceof List<T> list && items instanceof RandomAccess) {
+            return list;
+        }
+        List<T> copy = items instanceof Collection<T> c ? new ArrayList<>(c.size()) : new ArrayList<>();
+        for (T item : items) {
+            copy.add(item);
+        }
+        return copy;
+    }
+
+    public static <T> List<T> toList(T[] items) {
+        return Arrays.asList(items);
+    }
+
+    public static List<Integer> toList(int[] items) {
+        return Arrays.stream(items).boxed().toList();
+    }
+
+    public static List<Long> toList(long[] items) {
+        return Arrays.stream(items).boxed().toList();
+    }
+
+    public static List<Double> toList(double[] items) {
+        return Arrays.stream(items).boxed().toList();
+    }
+
+    public static <T> List<T> toList(Stream<T> items) {
+        try (items) {
+            return items.toList();
+        }
+    }
+
+    public static <T> List<T> toList(Iterator<T> items) {
+        List<T> copy = new ArrayList<>();
+        items.forEachRemaining(copy::add);
+        return copy;
+    }
+
+    public static <T> List<T> toList(Spliterator<T> items) {
+        List<T> copy = new ArrayList<>();
+        items.forEachRemaining(copy::add);
+        return copy;
+    }
+
+    private record StreamSource<T>(Stream<T> stream) implements Iterable<T> {
+        @Override
+        public Iterator<T> iterator() {
+            return stream.iterator();
+        }
+    }
+}
@@ -6,7 +6,7 @@ package candi.runtime;
  *
  * Lifecycle:
  *   1. init() — always runs (shared setup)
- *   2. For GET/HEAD: onGet() → render()
+ *   2. For GET/HEAD: onGet() → @Load methods (concurrently) → render()
  *   3. For POST: onPost() → @Post action → redirect or render()
  *   4. For PUT/DELETE/PATCH: @Action → redirect or render()
  */
@@ -24,17 +24,54 @@ public interface CandiPage {
      */
     default void onGet() {}
 
+    /**
+     * Version of the data this page renders, used as its ETag (unquoted). Called for
+     * GET/HEAD after init() and before onGet(): when it matches the client's
+     * If-None-Match, the adapter answers 304 Not Modified without loading data or
+     * rendering. Return null (the default) to always render.
+     */
+    default String etag() {
+        return null;
+    }
+
+    /**
+     * Last modification time of the data this page renders, in epoch milliseconds,
+     * checked against If-Modified-Since like {@link #etag()}. -1 (the default) means unknown.
+     */
+    default long lastModified() {
+        return -1;
+    }
+
     /**
      * Called for POST requests before @Post action dispatch.
      * Use for shared POST setup (CSRF validation, common form parsing, etc.).
      */
     default void onPost() {}
 
+    /**
+     * Invoke the action method for a non-GET HTTP method.
+     * Generated subclasses override this with direct calls; returning null
+     * makes the adapter fall back to its cached method handle lookup.
+     */
+    default ActionResult dispatchAction(String httpMethod) throws Exception {
+        return null;
+    }
+
     /**
      * Render the full page HTML.
      */
     void render(HtmlOutput out);
 
+    /**
+     * Render the page, loading its data via {@link EarlyFlush#load(HtmlOutput)} as late as
+     * possible. Pages with a layout override this to flush the layout markup before the
+     * first slot; by default data is loaded before anything is rendered.
+     */
+    default void renderWithEarlyFlush(HtmlOutput out, EarlyFlush earlyFlush) {
+        earlyFlush.load(out);
+        render(out);
+    }
+
     /**
      * Render a named fragment (for AJAX partial rendering).
      * Generated subclasses override this with a switch dispatch.
@@ -42,4 +79,14 @@ public interface CandiPage {
     default void renderFragment(String name, HtmlOutput out) {
         throw new UnsupportedOperationException("No fragments defined in " + getClass().getName());
     }
+
+    /**
+     * Render a {{ hole }} region on its own, to fill it into a cached page shell.
+     * Called on a page that has run init(), onGet() and its @Load methods, as when the
+     * whole page renders.
+     * Generated subclasses override this with a switch dispatch.
+     */
+    default void renderHole(int id, HtmlOutput out) {
+        throw new UnsupportedOperationException("No holes defined in " + getClass().getName());
+    }
 }
@@ -0,0 +1,139 @@
+package candi.runtime;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Creates page instances for CandiHandlerAdapter without going through the request scope.
+ *
+ * <p>The annotation processor generates a nested {@code Factory} subclass for every
+ * {@code _Candi} page whose dependencies are plain {@code @Autowired} fields. The factory
+ * instantiates the page with {@code new} and injects its dependencies with field writes or
+ * setter calls. Dependencies that are singletons are resolved once at startup; others
+ * (e.g. request-scoped beans) are looked up on each request.
+ *
+ * <p>Pages that need full Spring bean semantics (post-processors, proxies, lifecycle
+ * callbacks) opt out with {@code @Page(springManaged = true)}, and are obtained from
+ * the application context as before.
+ */
+public abstract class CandiPageFactory implements ApplicationContextAware, SmartInitializingSingleton {
+
+    private ApplicationContext applicationContext;
+    private final List<Dependency<?>> dependencies = new ArrayList<>();
+
+    /**
+     * The generated page class this factory creates.
+     */
+    public abstract Class<? extends CandiPage> pageClass();
+
+    /**
+     * Create and inject a page instance for the current request.
+     */
+    public abstract CandiPage create(HttpServletRequest request);
+
+    /**
+     * Declare the page's dependencies. Called once the application context is available.
+     */
+    protected abstract void resolveDependencies();
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+        resolveDependencies();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // Resolve singleton dependencies at startup rather than on the first request
+        for (Dependency<?> dependency : dependencies) {
+            dependency.warmUp();
+        }
+    }
+
+    protected ApplicationContext applicationContext() {
+        return applicationContext;
+    }
+
+    /**
+     * The dependency of an {@code @Autowired} field, resolved with the same rules Spring
+     * applies to the field (type, then field name among several candidates, resolvable
+     * dependencies such as the current request).
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> Dependency<T> dependency(Class<?> declaringClass, String fieldName) {
+        Field field = ReflectionUtils.findField(declaringClass, fieldName);
+        if (field == null) {
+            throw new IllegalStateException("No field '" + fieldName + "' on " + declaringClass.getName());
+        }
+        DependencyDescriptor descriptor = new DependencyDescriptor(field, true);
+        ConfigurableListableBeanFactory beanFactory = beanFactory();
+        Dependency<T> dependency = new Dependency<>(
+                () -> (T) beanFactory.resolveDependency(descriptor, null),
+                allSingletons(beanFactory.getBeanNamesForType(field.getType(), true, false)));
+        dependencies.add(dependency);
+        return dependency;
+    }
+
+    private boolean allSingletons(String[] beanNames) {
+        if (beanNames.length == 0) {
+            // Not a bean (e.g. the current request) or missing: look it up on every request
+            return false;
+        }
+        ConfigurableListableBeanFactory beanFactory = beanFactory();
+        for (String name : beanNames) {
+            if (!beanFactory.isSingleton(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ConfigurableListableBeanFactory beanFactory() {
+        return ((ConfigurableApplicationContext) applicationContext).getBeanFactory();
+    }
+
+    /**
+     * A resolved page dependency. Singletons are cached after the first lookup.
+     */
+    public static final class Dependency<T> {
+
+        private final Supplier<T> provider;
+        private final boolean singleton;
+        private volatile T instance;
+
+        Dependency(Supplier<T> provider, boolean singleton) {
+            this.provider = provider;
+            this.singleton = singleton;
+        }
+
+        public T get() {
+            if (!singleton) {
+                return provider.get();
+            }
+            T value = instance;
+            if (value == null) {
+                value = provider.get();
+                instance = value;
+            }
+            return value;
+        }
+
+        void warmUp() {
+            if (singleton) {
+                get();
+            }
+        }
+    }
+}
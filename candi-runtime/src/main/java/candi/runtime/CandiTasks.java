@@ -0,0 +1,117 @@
+package candi.runtime;
+
+import org.slf4j.MDC;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a group of request-bound tasks concurrently on virtual threads.
+ *
+ * <p>The group is structured: {@link #runAll} returns only after every task has
+ * finished. The first failure cancels (interrupts) the remaining tasks and is
+ * rethrown as-is. Each task sees the caller's request attributes, locale and
+ * logging MDC, so request-scoped beans and {@code RequestContextHolder} work
+ * inside it.
+ */
+public final class CandiTasks {
+
+    private CandiTasks() {
+    }
+
+    /**
+     * Run the tasks concurrently and wait for all of them.
+     *
+     * @param timeout maximum time to wait, or null for no limit. A single task without
+     *                a timeout runs directly on the calling thread.
+     * @throws TimeoutException if the tasks did not finish in time (they are cancelled)
+     */
+    public static void runAll(List<? extends Callable<?>> tasks, Duration timeout) throws Exception {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        if (tasks.size() == 1 && timeout == null) {
+            tasks.get(0).call();
+            return;
+        }
+
+        List<Future<Object>> futures = new ArrayList<>(tasks.size());
+        // close() waits for every task, including cancelled ones, before returning
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<Object> completion = new ExecutorCompletionService<>(executor);
+            try {
+                for (Callable<?> task : tasks) {
+                    futures.add(completion.submit(withRequestContext(task::call)));
+                }
+                long deadline = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+                for (int i = 0; i < futures.size(); i++) {
+                    Future<Object> done = timeout == null
+                            ? completion.take()
+                            : completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        throw new TimeoutException("Tasks did not finish within " + timeout.toMillis() + " ms");
+                    }
+                    done.get();
+                }
+            } catch (ExecutionException e) {
+                throw rethrow(e.getCause());
+            } finally {
+                for (Future<Object> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wrap a task so that, on whichever thread it runs, it sees the request attributes,
+     * locale and MDC of the calling thread.
+     */
+    static <T> Callable<T> withRequestContext(Callable<T> task) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        LocaleContext locale = LocaleContextHolder.getLocaleContext();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return () -> callWithContext(task, attributes, locale, mdc);
+    }
+
+    private static <T> T callWithContext(Callable<T> task, RequestAttributes attributes,
+                                         LocaleContext locale, Map<String, String> mdc) throws Exception {
+        RequestContextHolder.setRequestAttributes(attributes);
+        LocaleContextHolder.setLocaleContext(locale);
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        try {
+            return task.call();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+            LocaleContextHolder.resetLocaleContext();
+            MDC.clear();
+        }
+    }
+
+    private static Exception rethrow(Throwable cause) {
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        if (cause instanceof Exception exception) {
+            return exception;
+        }
+        return new IllegalStateException(cause);
+    }
+}
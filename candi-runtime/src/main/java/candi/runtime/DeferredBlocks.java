@@ -0,0 +1,136 @@
+package candi.runtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The {@code {{ defer }}} blocks of one response.
+ *
+ * <p>Each block starts rendering on its own virtual thread as soon as the page reaches
+ * it, while the page continues with its fallback content inside a
+ * {@code <candi-defer>} placeholder. After the page itself has been written,
+ * {@link #writeTo(OutputStream)} streams every block as it finishes, in a
+ * {@code <template>} followed by a small inline script that swaps it into its
+ * placeholder. Blocks that fail or are still running at the deadline are cancelled
+ * and keep their fallback.
+ *
+ * <p>The page's {{ stack }}s have been written by the time a block finishes, so what
+ * the block pushes to stacks (a widget's scripts and styles) is written at the end of
+ * its {@code <template>} and swapped in with it; browsers run scripts and apply
+ * stylesheets moved into the document that way.
+ */
+final class DeferredBlocks implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DeferredBlocks.class);
+
+    static final String PLACEHOLDER_ID = "candi-defer-";
+
+    private static final byte[] SWAP_SCRIPT = HtmlOutput.utf8(
+            "<script>function candiSwap(i){var p=document.getElementById(\"" + PLACEHOLDER_ID + "\"+i),"
+                    + "t=document.getElementById(\"" + PLACEHOLDER_ID + "\"+i+\"-content\");"
+                    + "if(p&&t){p.replaceWith(t.content);t.remove();}}</script>");
+
+    private final Duration timeout;
+    private ExecutorService executor;
+    private CompletionService<Block> completion;
+    private final List<Future<Block>> futures = new ArrayList<>();
+
+    DeferredBlocks(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Start rendering a block in the background. Returns its placeholder number.
+     */
+    int start(Consumer<HtmlOutput> body) {
+        if (executor == null) {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+            completion = new ExecutorCompletionService<>(executor);
+        }
+        int id = futures.size();
+        futures.add(completion.submit(CandiTasks.withRequestContext(() -> {
+            HtmlOutput out = new HtmlOutput(1024);
+            body.accept(out);
+            for (String stack : out.stackNames()) {
+                out.renderStack(stack);
+            }
+            return new Block(id, out.toByteArray());
+        })));
+        return id;
+    }
+
+    boolean isEmpty() {
+        return futures.isEmpty();
+    }
+
+    /**
+     * Stream the finished blocks with their swap scripts, in completion order,
+     * until all are written or the timeout expires.
+     */
+    void writeTo(OutputStream sink) throws IOException {
+        if (futures.isEmpty()) {
+            return;
+        }
+        sink.write(SWAP_SCRIPT);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (int i = 0; i < futures.size(); i++) {
+            Future<Block> done;
+            try {
+                done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (done == null) {
+                log.warn("Candi: {} deferred block(s) did not finish within {} ms, keeping fallback content",
+                        futures.size() - i, timeout.toMillis());
+                return;
+            }
+            Block block;
+            try {
+                block = done.get();
+            } catch (ExecutionException e) {
+                log.warn("Candi: deferred block failed, keeping fallback content", e.getCause());
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            sink.write(HtmlOutput.utf8("<template id=\"" + PLACEHOLDER_ID + block.id() + "-content\">"));
+            sink.write(block.html());
+            sink.write(HtmlOutput.utf8("</template><script>candiSwap(" + block.id() + ")</script>"));
+            sink.flush();
+        }
+    }
+
+    /**
+     * Cancel blocks that are still running and wait for their threads to end.
+     */
+    @Override
+    public void close() {
+        if (executor == null) {
+            return;
+        }
+        for (Future<Block> future : futures) {
+            future.cancel(true);
+        }
+        executor.close();
+    }
+
+    private record Block(int id, byte[] html) {
+    }
+}
@@ -0,0 +1,72 @@
+package candi.runtime;
+
+/**
+ * Runs a page's data loading at the point where its layout first needs page content.
+ *
+ * <p>Used when {@code candi.output.early-flush} is enabled: the layout markup before
+ * the first slot (typically the {@code <head>} with its stylesheets and scripts) is
+ * flushed to the client, then {@code onGet()} and the {@code @Load} methods run, then
+ * the rest of the page streams. The browser fetches assets while the page loads data.
+ */
+public final class EarlyFlush {
+
+    private final Loader loader;
+    private boolean loaded;
+
+    EarlyFlush(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Wrap the page's slot provider so the first slot flushes and loads data before rendering.
+     */
+    public SlotProvider wrap(SlotProvider slots) {
+        return (slotName, out) -> {
+            load(out);
+            slots.renderSlot(slotName, out);
+        };
+    }
+
+    /**
+     * Flush what has been rendered so far and load the page data, once.
+     * Checked exceptions from loading are wrapped in {@link LoadFailure}.
+     */
+    public void load(HtmlOutput out) {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (out.length() > 0) {
+            // Nothing rendered yet (no layout): keep the response uncommitted for error pages
+            out.flush();
+        }
+        try {
+            loader.load();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Exception e) {
+            throw new LoadFailure(e);
+        }
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * The page's data loading: {@code onGet()} followed by its {@code @Load} methods.
+     */
+    @FunctionalInterface
+    interface Loader {
+        void load() throws Exception;
+    }
+
+    /**
+     * Carries a checked exception out of a slot callback; unwrapped by CandiHandlerAdapter.
+     */
+    static final class LoadFailure extends RuntimeException {
+        LoadFailure(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package candi.runtime;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Several fragments of one page rendered in a single response.
+ *
+ * <p>A request asks for a batch by naming more than one fragment, either comma-separated
+ * ({@code Candi-Fragment: comments, stats} or {@code ?_fragment=comments,stats}) or with a
+ * repeated {@code _fragment} parameter. The page runs its lifecycle once and each fragment
+ * is written as one part of a {@code multipart/form-data} body, named after the fragment,
+ * so browsers can unpack it with {@code Response.formData()}. The bundled
+ * {@code /candi/fragments.js} helper does that and swaps the parts into the document.
+ *
+ * <p>Each response gets a new random boundary, which is not known until the response
+ * has been rendered, so text in the page (user input included) cannot end a part early.
+ * A cached batch keeps the boundary it was rendered with: it is the first line of the
+ * body (see {@link #boundaryOf}).
+ */
+final class FragmentBatch {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final String PREFIX = "candi-";
+
+    private FragmentBatch() {
+    }
+
+    /**
+     * The fragment names of a header or parameter value, in request order without duplicates.
+     */
+    static List<String> names(String... values) {
+        List<String> names = new ArrayList<>();
+        for (String value : values) {
+            for (String name : value.split(",")) {
+                name = name.strip();
+                if (!name.isEmpty() && !names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    static boolean isBatch(String fragmentName) {
+        return fragmentName != null && fragmentName.indexOf(',') >= 0;
+    }
+
+    /**
+     * A boundary for one response.
+     */
+    static String newBoundary() {
+        byte[] random = new byte[12];
+        RANDOM.nextBytes(random);
+        return PREFIX + HexFormat.of().formatHex(random);
+    }
+
+    static String contentType(String boundary) {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * The boundary a batch body was rendered with.
+     */
+    static String boundaryOf(byte[] body) {
+        // "--" + boundary + CRLF, the boundary being the prefix and 24 hex digits
+        return new String(body, 2, PREFIX.length() + 24, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Render each fragment of a comma-joined list as a part of the response body.
+     */
+    static void render(CandiPage page, String fragmentNames, String boundary, HtmlOutput out) {
+        for (String name : fragmentNames.split(",")) {
+            out.append(HtmlOutput.utf8("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + escape(name) + "\"\r\n"
+                    + "Content-Type: text/html;charset=UTF-8\r\n\r\n"));
+            page.renderFragment(name, out);
+            out.append(HtmlOutput.utf8("\r\n"));
+        }
+        out.append(HtmlOutput.utf8("--" + boundary + "--\r\n"));
+    }
+
+    /**
+     * Percent-encode the characters that would end a quoted part name, as browsers do.
+     */
+    private static String escape(String name) {
+        return name.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+}
@@ -0,0 +1,152 @@
+package candi.runtime;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * HTML escaping engine shared by {@link HtmlOutput#appendEscaped(String)} and
+ * {@link CandiFilters#escape(Object)}.
+ *
+ * <p>Escapes {@code & < > " '}. Instead of examining and appending one character at a
+ * time, it locates the next escapable character and bulk-copies the run of safe
+ * characters before it. Over UTF-8 bytes ({@code appendEscaped}) the search reads
+ * eight bytes per step (SWAR: SIMD within a register); multi-byte UTF-8 sequences never
+ * contain ASCII bytes, so the byte scan is exact for any input. A {@code String}'s
+ * characters cannot be read a word at a time without copying them first, so
+ * {@link #escape(String)} searches one character at a time and only skips the copying.
+ *
+ * <p>Setting the system property {@code candi.escape.scalar=true} switches both entry
+ * points to the plain per-character implementation, which is also kept as the reference
+ * for differential testing.
+ */
+public final class HtmlEscaper {
+
+    static final boolean SCALAR = Boolean.getBoolean("candi.escape.scalar");
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long QUOT = ONES * '"';
+    private static final long AMP = ONES * '&';
+    private static final long APOS = ONES * '\'';
+    private static final long LT = ONES * '<';
+    private static final long GT = ONES * '>';
+
+    private static final String[] ENTITIES = new String[128];
+    private static final byte[][] ENTITY_BYTES = new byte[128][];
+
+    static {
+        ENTITIES['&'] = "&amp;";
+        ENTITIES['<'] = "&lt;";
+        ENTITIES['>'] = "&gt;";
+        ENTITIES['"'] = "&quot;";
+        ENTITIES['\''] = "&#x27;";
+        for (int c = 0; c < ENTITIES.length; c++) {
+            if (ENTITIES[c] != null) {
+                ENTITY_BYTES[c] = HtmlOutput.utf8(ENTITIES[c]);
+            }
+        }
+    }
+
+    private HtmlEscaper() {
+    }
+
+    /**
+     * Escape a string, returning the same instance when nothing needs escaping.
+     */
+    public static String escape(String s) {
+        if (SCALAR) {
+            String escaped = escapeScalar(s);
+            // Escaping only ever lengthens a string
+            return escaped.length() == s.length() ? s : escaped;
+        }
+        int len = s.length();
+        int i = 0;
+        while (i < len && !needsEscape(s.charAt(i))) {
+            i++;
+        }
+        if (i == len) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(len + 16);
+        int runStart = 0;
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (needsEscape(c)) {
+                sb.append(s, runStart, i).append(ENTITIES[c]);
+                runStart = i + 1;
+            }
+        }
+        return sb.append(s, runStart, len).toString();
+    }
+
+    /**
+     * Reference implementation: examines and appends one character at a time.
+     */
+    static String escapeScalar(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                case '\'' -> sb.append("&#x27;");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Find the first escapable byte in {@code b[from, to)}, or -1 if there is none.
+     */
+    static int indexOfEscapable(byte[] b, int from, int to) {
+        if (SCALAR) {
+            return indexOfEscapableScalar(b, from, to);
+        }
+        int i = from;
+        for (int limit = to - Long.BYTES; i <= limit; i += Long.BYTES) {
+            long w = (long) LONGS.get(b, i);
+            long m = zeroBytes(w ^ QUOT) | zeroBytes(w ^ AMP) | zeroBytes(w ^ APOS)
+                    | zeroBytes(w ^ LT) | zeroBytes(w ^ GT);
+            if (m != 0) {
+                // Little-endian: the lowest flagged byte comes first in the array
+                return i + (Long.numberOfTrailingZeros(m) >>> 3);
+            }
+        }
+        return indexOfEscapableScalar(b, i, to);
+    }
+
+    static int indexOfEscapableScalar(byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] >= 0 && ENTITIES[b[i]] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Entity bytes for an escapable ASCII byte.
+     */
+    static byte[] entity(byte b) {
+        return ENTITY_BYTES[b];
+    }
+
+    /**
+     * Flag each zero byte of {@code x} with its high bit. A borrow can only produce a false
+     * flag above a genuine zero byte, so the lowest flag is always exact.
+     */
+    private static long zeroBytes(long x) {
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    private static boolean needsEscape(char c) {
+        return c < 128 && ENTITIES[c] != null;
+    }
+}
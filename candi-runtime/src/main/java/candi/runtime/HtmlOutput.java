@@ -1,20 +1,75 @@
 package candi.runtime;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * HTML output buffer used by generated page render methods.
  * Provides both raw append (for static HTML) and escaped append (for expressions).
+ *
+ * <p>Content is stored as UTF-8 bytes, so the buffer can be written to the response
+ * without a re-encoding pass and its {@link #length()} is the exact Content-Length.
+ * Generated code appends static markup as pre-encoded {@code static final byte[]}
+ * constants (see {@link #utf8(String)}); only dynamic values are encoded per request.
+ *
+ * <p>In streaming mode (created with a sink {@link OutputStream}), the buffer is written
+ * to the sink whenever it grows past the flush threshold, so memory per request stays
+ * bounded and the client can start parsing before rendering completes.
  */
 public class HtmlOutput {
 
-    private final StringBuilder sb;
-    private java.util.Map<String, java.util.List<String>> stacks;
+    private byte[] buf;
+    private int count;
+    private java.util.Map<String, java.util.List<byte[]>> stacks;
+    private byte[] scratch;
+    private DeferredBlocks deferred;
+    private OutputCache cache;
+    private int capturing;
+    private java.util.ArrayDeque<Region> cacheRegions;
+    private java.util.Map<WidgetMemo, java.util.Map<java.util.List<Object>, Captured>> widgetMemos;
+    private java.util.List<Hole> holes;
+    private int holeDepth;
+    private ParallelRenders parallel;
+    private java.util.List<AsyncRender> asyncRenders;
+    private int asyncStarted;
+
+    private final OutputStream sink;
+    private final int flushThreshold;
+    private long flushedLength;
 
     public HtmlOutput() {
-        this.sb = new StringBuilder(4096);
+        this(4096);
     }
 
     public HtmlOutput(int initialCapacity) {
-        this.sb = new StringBuilder(initialCapacity);
+        this.buf = new byte[Math.max(initialCapacity, 16)];
+        this.sink = null;
+        this.flushThreshold = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Create a streaming output that writes chunks to the given sink.
+     *
+     * @param sink           the stream to write to (e.g. the servlet response output stream)
+     * @param flushThreshold buffered bytes that trigger a write to the sink
+     */
+    public HtmlOutput(OutputStream sink, int flushThreshold) {
+        if (flushThreshold <= 0) {
+            throw new IllegalArgumentException("flushThreshold must be positive: " + flushThreshold);
+        }
+        this.buf = new byte[flushThreshold + 256];
+        this.sink = sink;
+        this.flushThreshold = flushThreshold;
+    }
+
+    /**
+     * Encode a static HTML chunk to UTF-8 once, for use as a generated constant.
+     */
+    public static byte[] utf8(String html) {
+        return html.getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -22,71 +77,733 @@ public class HtmlOutput {
      * Used for static HTML fragments and {{ raw expr }} output.
      */
     public HtmlOutput append(String html) {
-        sb.append(html);
+        if (html == null) {
+            html = "null";
+        }
+        writeUtf8(html, 0, html.length());
+        if (count >= flushThreshold) {
+            flush();
+        }
+        return this;
+    }
+
+    /**
+     * Append pre-encoded UTF-8 content (no escaping).
+     * Used by generated code for static HTML chunks.
+     */
+    public HtmlOutput append(byte[] utf8) {
+        append(utf8, 0, utf8.length);
         return this;
     }
 
     /**
      * Append HTML-escaped content.
      * Used for {{ expr }} output — prevents XSS.
+     *
+     * <p>The text is encoded into the buffer first and then scanned word-at-a-time by
+     * {@link HtmlEscaper}; in the common case of nothing to escape that is all the work done.
      */
     public HtmlOutput appendEscaped(String text) {
         if (text == null) {
             return this;
         }
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            switch (c) {
-                case '&' -> sb.append("&amp;");
-                case '<' -> sb.append("&lt;");
-                case '>' -> sb.append("&gt;");
-                case '"' -> sb.append("&quot;");
-                case '\'' -> sb.append("&#x27;");
-                default -> sb.append(c);
-            }
+        int start = count;
+        writeUtf8(text, 0, text.length());
+        int i = HtmlEscaper.indexOfEscapable(buf, start, count);
+        if (i >= 0) {
+            escapeFrom(i);
+        }
+        if (count >= flushThreshold) {
+            flush();
+        }
+        return this;
+    }
+
+    /**
+     * Append the decimal digits of a number, as {@code String.valueOf} writes them.
+     * Used by generated code for output of type int: the digits go straight into the
+     * buffer, with no intermediate String and no escaping scan.
+     */
+    public HtmlOutput appendInt(int value) {
+        return appendLong(value);
+    }
+
+    public HtmlOutput appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append("-9223372036854775808");
+        }
+        ensureCapacity(count + 20);
+        if (value < 0) {
+            buf[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = count + digits;
+        count = pos;
+        do {
+            buf[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (count >= flushThreshold) {
+            flush();
         }
         return this;
     }
 
+    /**
+     * Append a double as {@code String.valueOf} writes it. The text is plain ASCII,
+     * so it is copied without the escaping scan.
+     */
+    public HtmlOutput appendDouble(double value) {
+        return append(Double.toString(value));
+    }
+
+    /**
+     * Write buffered content to the sink and flush it to the client.
+     * No-op for non-streaming outputs.
+     */
+    public void flush() {
+        if (sink == null || capturing > 0) {
+            // While a {{ cache }} region is captured its bytes must stay in the buffer
+            return;
+        }
+        joinAsync();
+        if (count == 0) {
+            return;
+        }
+        try {
+            sink.write(buf, 0, count);
+            sink.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stream HTML output", e);
+        }
+        flushedLength += count;
+        count = 0;
+    }
+
+    /**
+     * Whether this output streams to a sink.
+     */
+    public boolean isStreaming() {
+        return sink != null;
+    }
+
+    /**
+     * Write the buffered bytes to the given stream.
+     * In streaming mode, only the content not yet flushed to the sink is written.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    /**
+     * Get a copy of the buffered UTF-8 bytes.
+     * In streaming mode, only the content not yet flushed to the sink is returned.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
     /**
      * Get the accumulated HTML string.
+     * In streaming mode, only the content not yet flushed to the sink is returned.
      */
     public String toHtml() {
-        return sb.toString();
+        return new String(buf, 0, count, StandardCharsets.UTF_8);
     }
 
     /**
-     * Get the current length of the buffer.
+     * Get the total length of the output in UTF-8 bytes,
+     * including content already flushed to the sink.
      */
     public int length() {
-        return sb.length();
+        return (int) (flushedLength + count);
+    }
+
+    /**
+     * A mark that changes whenever content is added: bytes appended, or an async render
+     * started that will be spliced in later. A slot compares marks to tell whether its
+     * content rendered anything, since an async widget adds no bytes until it is joined.
+     */
+    public long contentMark() {
+        return length() + (long) asyncStarted;
     }
 
     /**
      * Push content to a named stack. Used by {{ push "name" }}...{{ end }}.
      */
     public void pushStack(String name, String content) {
+        pushStack(name, utf8(content));
+    }
+
+    /**
+     * Push pre-encoded content to a named stack.
+     */
+    public void pushStack(String name, byte[] utf8) {
         if (stacks == null) {
             stacks = new java.util.LinkedHashMap<>();
         }
-        stacks.computeIfAbsent(name, k -> new java.util.ArrayList<>()).add(content);
+        stacks.computeIfAbsent(name, k -> new java.util.ArrayList<>()).add(utf8);
+    }
+
+    /**
+     * Names of the stacks content was pushed to, in order of their first push.
+     */
+    java.util.List<String> stackNames() {
+        return stacks == null ? java.util.List.of() : java.util.List.copyOf(stacks.keySet());
     }
 
     /**
      * Render all content pushed to a named stack. Used by {{ stack "name" }}.
      */
     public void renderStack(String name) {
+        if (capturing == 0) {
+            // Async widgets may still push assets
+            joinAsync();
+        }
         if (stacks == null) return;
         var items = stacks.get(name);
         if (items != null) {
             for (var item : items) {
-                sb.append(item);
+                append(item);
             }
         }
     }
 
+    /**
+     * Strong ETag over the buffered content, in the same format as Spring's
+     * {@code ShallowEtagHeaderFilter}. Only available on buffered outputs.
+     */
+    String etag() {
+        if (sink != null) {
+            throw new IllegalStateException("Streaming output cannot be hashed");
+        }
+        return etag(buf, count);
+    }
+
+    static String etag(byte[] bytes, int length) {
+        try {
+            java.security.MessageDigest md5 = java.security.MessageDigest.getInstance("MD5");
+            md5.update(bytes, 0, length);
+            return "\"0" + java.util.HexFormat.of().formatHex(md5.digest()) + "\"";
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ========== Deferred blocks ==========
+
+    private static final byte[] DEFER_END = utf8("</candi-defer>");
+
+    /**
+     * Start a {{ defer "name" }} block. When this output renders a full page response,
+     * the block starts rendering in the background and a placeholder is opened: the
+     * caller renders the fallback content and then calls {@link #endDefer()}. Otherwise
+     * (fragments, nested buffers, tests) the block is rendered inline right away.
+     * Content a deferred block pushes to stacks is written and swapped in with the
+     * block rather than in the page's {{ stack }}s (see {@link DeferredBlocks}).
+     *
+     * @return true if the block was deferred and the fallback should be rendered
+     */
+    public boolean beginDefer(String name, java.util.function.Consumer<HtmlOutput> block) {
+        if (deferred == null || capturing > 0) {
+            // Inside a {{ cache }} region the cached copy must hold the block itself
+            block.accept(this);
+            return false;
+        }
+        OutputCache blockCache = cache;
+        int id = deferred.start(blockOut -> {
+            blockOut.cache = blockCache;
+            block.accept(blockOut);
+        });
+        append("<candi-defer id=\"" + DeferredBlocks.PLACEHOLDER_ID + id + "\" data-name=\"");
+        appendEscaped(name);
+        append("\">");
+        return true;
+    }
+
+    /**
+     * Close the placeholder opened by {@link #beginDefer}.
+     */
+    public void endDefer() {
+        append(DEFER_END);
+    }
+
+    void setDeferredBlocks(DeferredBlocks deferred) {
+        this.deferred = deferred;
+    }
+
+    // ========== Fragment cache ==========
+
+    private static final String FRAGMENT_KEY_PREFIX = "fragment ";
+
+    /**
+     * Start a {{ cache key ttl=N }} region. On a hit the cached bytes are appended, the
+     * content the region pushed to stacks is pushed again, and -1 is returned: the caller
+     * skips the region. Otherwise the caller renders the region and passes the returned
+     * mark to {@link #endCache}. Without a cache (tests, nested buffers) regions always
+     * render.
+     *
+     * <p>Keys are shared by all pages, so the same key caches the same markup everywhere.
+     */
+    public int beginCache(String key) {
+        if (cache == null) {
+            return count;
+        }
+        OutputCache.Entry entry = cache.get(FRAGMENT_KEY_PREFIX + key);
+        if (entry != null) {
+            replay(new Captured(entry.body(), entry.stacks()));
+            return -1;
+        }
+        if (cacheRegions == null) {
+            cacheRegions = new java.util.ArrayDeque<>();
+        }
+        Region region = beginRegion();
+        cacheRegions.push(region);
+        return region.mark();
+    }
+
+    /**
+     * Store the bytes rendered since {@code mark}, and what was pushed to stacks since the
+     * region began, under the key for {@code ttlSeconds}.
+     */
+    public void endCache(String key, int mark, long ttlSeconds) {
+        if (cache == null) {
+            return;
+        }
+        Captured captured = endRegion(cacheRegions.pop());
+        cache.put(FRAGMENT_KEY_PREFIX + key,
+                new OutputCache.Rendering(captured.body(), java.util.List.of(), captured.stacks()),
+                new OutputCache.Policy(ttlSeconds * 1000, 0, java.util.Set.of()));
+    }
+
+    void setOutputCache(OutputCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Start capturing the bytes appended from here on. Flushing to the sink is held back
+     * until the matching {@link #endCapture}, so the captured bytes stay in the buffer.
+     *
+     * @return the mark to pass to {@link #endCapture}
+     */
+    public int beginCapture() {
+        capturing++;
+        return count;
+    }
+
+    /**
+     * Finish a capture and return a copy of the bytes appended since {@code mark}.
+     */
+    public byte[] endCapture(int mark) {
+        capturing--;
+        byte[] captured = Arrays.copyOfRange(buf, mark, count);
+        if (count >= flushThreshold) {
+            flush();
+        }
+        return captured;
+    }
+
+    /**
+     * A captured region being rendered: where its bytes start and how many items each
+     * stack held when it began.
+     */
+    public record Region(int mark, java.util.Map<String, Integer> stackSizes) {}
+
+    /**
+     * The output of a region: its bytes and what it pushed to stacks, by stack name.
+     */
+    public record Captured(byte[] body, java.util.Map<String, java.util.List<byte[]>> stacks) {}
+
+    /**
+     * Start capturing a region, bytes and stack pushes, to be replayed later with
+     * {@link #replay}. End it with {@link #endRegion}, also when rendering it fails.
+     */
+    public Region beginRegion() {
+        return new Region(beginCapture(), stackSizes());
+    }
+
+    private java.util.Map<String, Integer> stackSizes() {
+        if (stacks == null) {
+            return java.util.Map.of();
+        }
+        java.util.Map<String, Integer> sizes = new java.util.HashMap<>();
+        stacks.forEach((name, items) -> sizes.put(name, items.size()));
+        return sizes;
+    }
+
+    /**
+     * Finish a region and return a copy of what it rendered.
+     */
+    public Captured endRegion(Region region) {
+        java.util.Map<String, java.util.List<byte[]>> pushed = new java.util.LinkedHashMap<>();
+        if (stacks != null) {
+            stacks.forEach((name, items) -> {
+                int before = region.stackSizes().getOrDefault(name, 0);
+                if (items.size() > before) {
+                    pushed.put(name, java.util.List.copyOf(items.subList(before, items.size())));
+                }
+            });
+        }
+        return new Captured(endCapture(region.mark()), pushed);
+    }
+
+    /**
+     * Append a captured region's bytes and push its stack content again.
+     */
+    public void replay(Captured captured) {
+        append(captured.body());
+        captured.stacks().forEach((name, items) -> items.forEach(item -> pushStack(name, item)));
+    }
+
+    /**
+     * Request-scoped memo of a pure widget, created on demand when {@code create} is set.
+     */
+    java.util.Map<java.util.List<Object>, Captured> widgetMemo(WidgetMemo memo, boolean create) {
+        if (widgetMemos == null) {
+            if (!create) {
+                return null;
+            }
+            widgetMemos = new java.util.HashMap<>();
+        }
+        return create ? widgetMemos.computeIfAbsent(memo, m -> new java.util.HashMap<>()) : widgetMemos.get(memo);
+    }
+
+    // ========== Async widgets ==========
+
+    /**
+     * A widget rendering on another thread, to be inserted at byte {@code offset}; what it
+     * pushes to a stack goes after the first {@code stackSizes} items of that stack.
+     */
+    private record AsyncRender(int offset, java.util.Map<String, Integer> stackSizes,
+                               java.util.concurrent.Future<HtmlOutput> output) {}
+
+    /**
+     * Render a widget call marked {@code async}. When the response allows parallel
+     * rendering, the widget renders on a virtual thread into its own buffer, which is
+     * spliced in at this position once the page has rendered; assets it pushes to stacks
+     * are added then, at the position they would have had in a sequential render. Otherwise (no permit free, {{ cache }} capture, recorded holes,
+     * nested buffers) it renders inline.
+     */
+    public void async(java.util.function.Consumer<HtmlOutput> widget) {
+        java.util.concurrent.Future<HtmlOutput> output = parallel == null || capturing > 0 || holes != null
+                ? null
+                : parallel.tryStart(widget, cache);
+        if (output == null) {
+            widget.accept(this);
+            return;
+        }
+        if (asyncRenders == null) {
+            asyncRenders = new java.util.ArrayList<>();
+        }
+        asyncRenders.add(new AsyncRender(count, stackSizes(), output));
+        asyncStarted++;
+    }
+
+    /** Fewest rows a chunk of a {{ for ... parallel }} loop is given. */
+    static final int PARALLEL_MIN_CHUNK = 256;
+
+    /**
+     * Rows per chunk of a {{ for ... parallel }} loop over {@code size} items. Lists too
+     * small to be worth splitting, and responses that cannot render in parallel, get a
+     * single chunk, which {@link #asyncChunk} renders inline. Otherwise the list is split so that every
+     * parallel render and the page's own thread (which renders the chunks no permit was
+     * free for) get one chunk.
+     */
+    public int parallelChunk(int size) {
+        if (parallel == null || capturing > 0 || holes != null || size < 2 * PARALLEL_MIN_CHUNK) {
+            return Math.max(size, 1);
+        }
+        int chunks = parallel.maxParallel() + 1;
+        return Math.max(PARALLEL_MIN_CHUNK, (size + chunks - 1) / chunks);
+    }
+
+    /**
+     * Render one chunk of a {{ for ... parallel }} loop over {@code size} items: like an
+     * async widget, or directly on this thread when the chunk is the whole list.
+     */
+    public void asyncChunk(int chunk, int size, java.util.function.Consumer<HtmlOutput> rows) {
+        if (chunk >= size) {
+            rows.accept(this);
+            return;
+        }
+        async(rows);
+    }
+
+    void setParallelRenders(ParallelRenders parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Wait for the async widgets and splice their output in, in document order. The
+     * first failure cancels the others and is rethrown.
+     */
+    void joinAsync() {
+        if (asyncRenders == null || asyncRenders.isEmpty()) {
+            return;
+        }
+        java.util.List<AsyncRender> renders = asyncRenders;
+        asyncRenders = null;
+        HtmlOutput[] outputs = new HtmlOutput[renders.size()];
+        int added = 0;
+        try {
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = renders.get(i).output().get();
+                added += outputs[i].count;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(renders);
+            throw new IllegalStateException("Interrupted while waiting for async widgets", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            cancel(renders);
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Async widget failed", e.getCause());
+        }
+
+        byte[] joined = new byte[Math.max(buf.length, count + added)];
+        int from = 0;
+        int to = 0;
+        // Items already inserted into each stack by earlier renders
+        java.util.Map<String, Integer> inserted = new java.util.HashMap<>();
+        for (int i = 0; i < outputs.length; i++) {
+            AsyncRender render = renders.get(i);
+            int offset = render.offset();
+            System.arraycopy(buf, from, joined, to, offset - from);
+            to += offset - from;
+            from = offset;
+            HtmlOutput output = outputs[i];
+            System.arraycopy(output.buf, 0, joined, to, output.count);
+            to += output.count;
+            if (output.stacks != null) {
+                output.stacks.forEach((name, items) -> {
+                    int at = render.stackSizes().getOrDefault(name, 0) + inserted.getOrDefault(name, 0);
+                    if (stacks == null) {
+                        stacks = new java.util.LinkedHashMap<>();
+                    }
+                    stacks.computeIfAbsent(name, k -> new java.util.ArrayList<>()).addAll(at, items);
+                    inserted.merge(name, items.size(), Integer::sum);
+                });
+            }
+        }
+        System.arraycopy(buf, from, joined, to, count - from);
+        buf = joined;
+        count = to + count - from;
+    }
+
+    private static void cancel(java.util.List<AsyncRender> renders) {
+        for (AsyncRender render : renders) {
+            render.output().cancel(true);
+        }
+    }
+
+    // ========== Holes ==========
+
+    /**
+     * A {{ hole }} rendered at bytes [start, end) of the output, by the layout that declares
+     * it or (layout null) by the page.
+     */
+    public record Hole(int start, int end, CandiLayout layout, int id) {}
+
+    /**
+     * Render a {{ hole }} of a page. While holes are recorded (see {@link #recordHoles()})
+     * its position is remembered so a cached copy of the page can re-render just the hole.
+     */
+    public void hole(CandiPage page, int id) {
+        hole(null, id, () -> page.renderHole(id, this));
+    }
+
+    /**
+     * Render a {{ hole }} of a layout.
+     */
+    public void hole(CandiLayout layout, int id) {
+        hole(layout, id, () -> layout.renderHole(id, this));
+    }
+
+    private void hole(CandiLayout layout, int id, Runnable render) {
+        if (holes == null || holeDepth > 0 || capturing > 0) {
+            // Holes nested in holes render with them; inside {{ cache }} they are cached with the region
+            render.run();
+            return;
+        }
+        int start = count;
+        holeDepth++;
+        try {
+            render.run();
+        } finally {
+            holeDepth--;
+        }
+        holes.add(new Hole(start, count, layout, id));
+    }
+
+    /**
+     * Remember where holes are rendered. Only for buffered outputs.
+     */
+    void recordHoles() {
+        if (sink != null) {
+            throw new IllegalStateException("Holes are only recorded in buffered output");
+        }
+        holes = new java.util.ArrayList<>();
+    }
+
+    java.util.List<Hole> holes() {
+        return holes == null ? java.util.List.of() : java.util.List.copyOf(holes);
+    }
+
+    /**
+     * Append a range of pre-encoded UTF-8 content.
+     */
+    void append(byte[] utf8, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(utf8, offset, buf, count, length);
+        count += length;
+        if (count >= flushThreshold) {
+            flush();
+        }
+    }
+
+    // ========== Pooling ==========
+
+    /**
+     * Discard all content and stacks so the buffer can be reused by another request.
+     */
+    void reset() {
+        count = 0;
+        flushedLength = 0;
+        stacks = null;
+        deferred = null;
+        cache = null;
+        capturing = 0;
+        cacheRegions = null;
+        widgetMemos = null;
+        holes = null;
+        holeDepth = 0;
+        asyncStarted = 0;
+        if (asyncRenders != null) {
+            cancel(asyncRenders);
+            asyncRenders = null;
+        }
+        parallel = null;
+    }
+
+    int capacity() {
+        return buf.length;
+    }
+
+    /**
+     * Grow the buffer to at least the given capacity, without copying content.
+     * Only called on an empty buffer.
+     */
+    void reserve(int capacity) {
+        if (capacity > buf.length) {
+            buf = new byte[capacity];
+        }
+    }
+
+    /**
+     * Shrink buffers that grew past the given capacity, so one huge page
+     * does not pin memory in the pool.
+     */
+    void trimTo(int maxCapacity) {
+        if (buf.length > maxCapacity) {
+            buf = new byte[maxCapacity];
+        }
+        if (scratch != null && scratch.length > maxCapacity) {
+            scratch = null;
+        }
+    }
+
     @Override
     public String toString() {
-        return sb.toString();
+        return toHtml();
+    }
+
+    // ========== Encoding ==========
+
+    /**
+     * Rewrite buffer bytes [from, count) with escapable bytes replaced by entities,
+     * copying the safe runs between them in bulk. {@code from} must be escapable.
+     */
+    private void escapeFrom(int from) {
+        int len = count - from;
+        if (scratch == null || scratch.length < len) {
+            scratch = new byte[Math.max(len, 64)];
+        }
+        byte[] src = scratch;
+        System.arraycopy(buf, from, src, 0, len);
+        count = from;
+        int p = 0;
+        while (p < len) {
+            int i = HtmlEscaper.indexOfEscapable(src, p, len);
+            int runEnd = i < 0 ? len : i;
+            byte[] entity = i < 0 ? null : HtmlEscaper.entity(src[i]);
+            ensureCapacity(count + (runEnd - p) + (entity == null ? 0 : entity.length));
+            System.arraycopy(src, p, buf, count, runEnd - p);
+            count += runEnd - p;
+            if (entity == null) {
+                break;
+            }
+            System.arraycopy(entity, 0, buf, count, entity.length);
+            count += entity.length;
+            p = i + 1;
+        }
+    }
+
+    /**
+     * Encode chars [start, end) of the given string as UTF-8 into the buffer.
+     * Unpaired surrogates are replaced with '?', matching String.getBytes(UTF_8).
+     */
+    private void writeUtf8(String s, int start, int end) {
+        // Worst case is 3 bytes per UTF-16 char
+        ensureCapacity(count + (end - start) * 3);
+        byte[] b = buf;
+        int n = count;
+        int i = start;
+        // ASCII fast path
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c >= 0x80) break;
+            b[n++] = (byte) c;
+            i++;
+        }
+        while (i < end) {
+            char c = s.charAt(i++);
+            if (c < 0x80) {
+                b[n++] = (byte) c;
+            } else if (c < 0x800) {
+                b[n++] = (byte) (0xC0 | (c >> 6));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(s.charAt(i))) {
+                    int cp = Character.toCodePoint(c, s.charAt(i++));
+                    b[n++] = (byte) (0xF0 | (cp >> 18));
+                    b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    b[n++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    b[n++] = (byte) '?';
+                }
+            } else {
+                b[n++] = (byte) (0xE0 | (c >> 12));
+                b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        count = n;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            int newCapacity = Math.max(buf.length << 1, minCapacity);
+            buf = Arrays.copyOf(buf, newCapacity);
+        }
     }
 }
@@ -0,0 +1,83 @@
+package candi.runtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable buffered {@link HtmlOutput} instances for CandiHandlerAdapter.
+ *
+ * <p>The pool is a shared lock-free LIFO stack rather than a ThreadLocal cache: with
+ * virtual threads every request runs on a fresh thread, so per-thread caches would
+ * never be hit. Buffers larger than {@code candi.output.pool.max-buffer-size} are
+ * trimmed on release. {@code candi.output.pool.size=0} disables pooling.
+ */
+@Component
+public class HtmlOutputPool {
+
+    @Value("${candi.output.pool.size:64}")
+    private int maxPooled;
+
+    @Value("${candi.output.pool.max-buffer-size:1048576}")
+    private int maxBufferSize;
+
+    private final ConcurrentLinkedDeque<HtmlOutput> free = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder trimmed = new LongAdder();
+
+    /**
+     * Pool counters. {@code pooled} is the number of idle buffers currently held.
+     */
+    public record Stats(long hits, long misses, long trimmed, int pooled) {}
+
+    public HtmlOutputPool() {
+    }
+
+    HtmlOutputPool(int maxPooled, int maxBufferSize) {
+        this.maxPooled = maxPooled;
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * Take an empty buffer with room for at least {@code sizeHint} bytes.
+     */
+    public HtmlOutput acquire(int sizeHint) {
+        HtmlOutput out = free.pollFirst();
+        if (out == null) {
+            misses.increment();
+            return new HtmlOutput(sizeHint);
+        }
+        pooled.decrementAndGet();
+        hits.increment();
+        out.reserve(sizeHint);
+        return out;
+    }
+
+    /**
+     * Return a buffer to the pool. The caller must not use it afterwards.
+     */
+    public void release(HtmlOutput out) {
+        if (out.isStreaming()) {
+            return;
+        }
+        out.reset();
+        if (out.capacity() > maxBufferSize) {
+            out.trimTo(maxBufferSize);
+            trimmed.increment();
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        free.offerFirst(out);
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), trimmed.sum(), pooled.get());
+    }
+}
@@ -0,0 +1,26 @@
+package candi.runtime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Evicts cached output with the given tags after the annotated action method
+ * (@Post, @Put, @Delete, @Patch) completes without throwing.
+ *
+ * <pre>
+ * &#64;Post
+ * &#64;Invalidates("posts")
+ * public ActionResult create() { ... }
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Invalidates {
+
+    /**
+     * Tags to invalidate (see {@link CachedPage#tags()}).
+     */
+    String[] value();
+}
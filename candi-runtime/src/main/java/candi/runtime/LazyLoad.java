@@ -0,0 +1,30 @@
+package candi.runtime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a getter of a page as a lazy data loader.
+ *
+ * <p>The generated {@code _Candi} class overrides the getter so its body runs at most
+ * once per page instance, the first time the template reads the property, and every
+ * later read returns the same value. Fragment requests and branches that do not read
+ * the property never load it. Unlike {@link Load} methods, lazy loaders run on the
+ * rendering thread, one after another as they are reached.
+ *
+ * <pre>
+ * &#64;LazyLoad
+ * public List&lt;Comment&gt; getComments() {
+ *     return commentRepository.findByPost(id);
+ * }
+ * </pre>
+ *
+ * Layouts and widgets cannot declare lazy loaders. The getter must be named {@code getX},
+ * be non-private and non-final, take no arguments and have no {@code throws} clause.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LazyLoad {
+}
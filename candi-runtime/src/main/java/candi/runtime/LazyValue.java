@@ -0,0 +1,39 @@
+package candi.runtime;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A value computed on first use and then kept, including null. Backs the
+ * {@link LazyLoad @LazyLoad} getters of generated page classes.
+ *
+ * <p>Safe to share between the rendering thread and {@code {{ defer }}} blocks: concurrent
+ * first reads wait for one computation. A loader that throws leaves the value unset, so
+ * the next read tries again.
+ */
+public final class LazyValue<T> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean loaded;
+    private T value;
+
+    public T get(Supplier<? extends T> loader) {
+        if (loaded) {
+            return value;
+        }
+        lock.lock();
+        try {
+            if (!loaded) {
+                value = loader.get();
+                loaded = true;
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+}
@@ -0,0 +1,17 @@
+package candi.runtime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a no-arg method as a data loader.
+ * All @Load methods of a page run concurrently on virtual threads after onGet()
+ * and have finished before the page renders. If one fails, the others are
+ * cancelled and the failure propagates as if it had been thrown by onGet().
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Load {
+}
@@ -0,0 +1,476 @@
+package candi.runtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Shared cache of rendered HTML, bounded by total bytes.
+ *
+ * <p>Entries live in an LRU list; a new entry that needs room is only admitted if it
+ * has been requested more often than the entries it would evict (TinyLFU admission,
+ * with request frequencies kept in a small count-min sketch). One-off URLs therefore
+ * cannot flush out popular pages.
+ *
+ * <p>{@link #load} is single-flight: concurrent misses for one key wait for the first
+ * request's render instead of rendering again. Entries past their TTL can still be
+ * served during a stale window while {@link #refreshAsync} re-renders them on a virtual
+ * thread. A render that was running when its key or one of its tags was invalidated
+ * still returns its output to the requests waiting for it, but does not store it, so
+ * the cache never holds output from before an invalidation.
+ * {@code candi.cache.max-size} sets the byte budget.
+ */
+@Component
+public class OutputCache {
+
+    private static final Logger log = LoggerFactory.getLogger(OutputCache.class);
+
+    @Value("${candi.cache.max-size:67108864}")
+    private long maxBytes;
+
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Set<String>> keysByTag = new HashMap<>();
+    private final ConcurrentHashMap<String, Render> inFlight = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long bytes;
+
+    private long hits;
+    private long staleHits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    /**
+     * How long an entry stays fresh and then stale, and the tags it is filed under.
+     */
+    public record Policy(long ttlMillis, long staleMillis, Set<String> tags) {
+        public Policy {
+            tags = Set.copyOf(tags);
+        }
+    }
+
+    /**
+     * Cache counters. {@code staleHits} are also counted in {@code hits}.
+     */
+    public record Stats(long hits, long staleHits, long misses, long evictions, long rejections,
+                        int entries, long bytes) {}
+
+    /**
+     * Rendered output to cache. A page shell keeps the positions of its {{ hole }}
+     * regions, which are rendered again for every request it serves. A {{ cache }}
+     * region keeps what it pushed to stacks, by stack name, to push again on a hit.
+     */
+    public record Rendering(byte[] body, List<HtmlOutput.Hole> holes, Map<String, List<byte[]>> stacks) {
+        public Rendering {
+            holes = List.copyOf(holes);
+            Map<String, List<byte[]>> copy = new LinkedHashMap<>();
+            stacks.forEach((name, items) -> copy.put(name, List.copyOf(items)));
+            stacks = java.util.Collections.unmodifiableMap(copy);
+        }
+
+        public Rendering(byte[] body, List<HtmlOutput.Hole> holes) {
+            this(body, holes, Map.of());
+        }
+
+        public static Rendering of(byte[] body) {
+            return new Rendering(body, List.of());
+        }
+    }
+
+    /**
+     * A cached rendering.
+     */
+    public static final class Entry {
+        private final byte[] body;
+        private final List<HtmlOutput.Hole> holes;
+        private final Map<String, List<byte[]>> stacks;
+        private final String etag;
+        private final long freshUntil;
+        private final long staleUntil;
+        private final Set<String> tags;
+
+        Entry(Rendering rendering, long now, Policy policy) {
+            this.body = rendering.body();
+            this.holes = rendering.holes();
+            this.stacks = rendering.stacks();
+            this.etag = holes.isEmpty() ? HtmlOutput.etag(body, body.length) : null;
+            this.freshUntil = now + policy.ttlMillis();
+            this.staleUntil = freshUntil + policy.staleMillis();
+            this.tags = policy.tags();
+        }
+
+        public byte[] body() {
+            return body;
+        }
+
+        /**
+         * Holes to render into the body, in order; empty for complete pages.
+         */
+        public List<HtmlOutput.Hole> holes() {
+            return holes;
+        }
+
+        /**
+         * Content the rendering pushed to stacks, by stack name; empty for most entries.
+         */
+        public Map<String, List<byte[]>> stacks() {
+            return stacks;
+        }
+
+        /**
+         * Strong ETag of the body, or null for page shells (their responses differ per request).
+         */
+        public String etag() {
+            return etag;
+        }
+
+        boolean isFresh(long now) {
+            return now < freshUntil;
+        }
+
+        boolean isUsable(long now) {
+            return now < staleUntil;
+        }
+    }
+
+    /**
+     * A render in progress for a key. {@code invalidated} is set (with the lock held) when
+     * the key or one of the policy's tags is invalidated while it runs.
+     */
+    private static final class Render {
+        final CompletableFuture<Entry> result = new CompletableFuture<>();
+        final Set<String> tags;
+        boolean invalidated;
+
+        Render(Policy policy) {
+            this.tags = policy.tags();
+        }
+    }
+
+    public OutputCache() {
+        this.clock = System::currentTimeMillis;
+    }
+
+    OutputCache(long maxBytes, LongSupplier clock) {
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Look up an entry that is fresh or within its stale window, or null.
+     * Use {@link #isFresh(Entry)} to tell whether a refresh is due.
+     */
+    public Entry get(String key) {
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            sketch.increment(key);
+            Entry entry = entries.get(key);
+            if (entry != null && !entry.isUsable(now)) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+            } else {
+                hits++;
+                if (!entry.isFresh(now)) {
+                    staleHits++;
+                }
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isFresh(Entry entry) {
+        return entry.isFresh(clock.getAsLong());
+    }
+
+    /**
+     * Return the fresh entry for the key, rendering it with {@code loader} on a miss.
+     * Only one caller per key runs the loader; the others wait for its result. If that
+     * render fails, each waiting caller tries once more itself.
+     */
+    public Entry load(String key, Policy policy, Callable<Rendering> loader) throws Exception {
+        while (true) {
+            Render mine = new Render(policy);
+            Render running = inFlight.putIfAbsent(key, mine);
+            if (running == null) {
+                try {
+                    Entry entry = peekFresh(key);
+                    if (entry == null) {
+                        entry = put(key, loader.call(), policy, mine);
+                    }
+                    mine.result.complete(entry);
+                    return entry;
+                } catch (Throwable t) {
+                    mine.result.completeExceptionally(t);
+                    throw t;
+                } finally {
+                    inFlight.remove(key, mine);
+                }
+            }
+            try {
+                return running.result.get();
+            } catch (ExecutionException e) {
+                // The leading render failed: render ourselves rather than share its error
+            }
+        }
+    }
+
+    /**
+     * Re-render the key on a virtual thread (with the caller's request context), unless a
+     * render for it is already running. Returns the refresh, or null if none was started.
+     */
+    public CompletableFuture<Entry> refreshAsync(String key, Policy policy, Callable<Rendering> loader) {
+        Render mine = new Render(policy);
+        if (inFlight.putIfAbsent(key, mine) != null) {
+            return null;
+        }
+        Callable<Rendering> task = CandiTasks.withRequestContext(loader);
+        Thread.ofVirtual().name("candi-cache-refresh").start(() -> {
+            try {
+                mine.result.complete(put(key, task.call(), policy, mine));
+            } catch (Throwable t) {
+                log.warn("Candi: background refresh of {} failed, serving stale output until it expires", key, t);
+                mine.result.completeExceptionally(t);
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        });
+        return mine.result;
+    }
+
+    /**
+     * Store a rendering. Returns the entry even if it was not admitted to the cache.
+     */
+    public Entry put(String key, byte[] body, Policy policy) {
+        return put(key, Rendering.of(body), policy);
+    }
+
+    /**
+     * Store a rendering. Returns the entry even if it was not admitted to the cache.
+     */
+    public Entry put(String key, Rendering rendering, Policy policy) {
+        return put(key, rendering, policy, null);
+    }
+
+    /**
+     * Store the result of a render, unless it was invalidated while running.
+     */
+    private Entry put(String key, Rendering rendering, Policy policy, Render render) {
+        byte[] body = rendering.body();
+        Entry entry = new Entry(rendering, clock.getAsLong(), policy);
+        lock.lock();
+        try {
+            if (render != null && render.invalidated) {
+                return entry;
+            }
+            Entry old = entries.get(key);
+            if (old != null) {
+                remove(key);
+            }
+            if (body.length > maxBytes || !makeRoom(key, body.length, old != null)) {
+                rejections++;
+                return entry;
+            }
+            entries.put(key, entry);
+            bytes += body.length;
+            for (String tag : entry.tags) {
+                keysByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Evict all entries filed under any of the tags. Renders of such entries that are
+     * running will not store their output.
+     */
+    public void invalidateTags(String... tags) {
+        lock.lock();
+        try {
+            for (String tag : tags) {
+                Set<String> keys = keysByTag.get(tag);
+                if (keys != null) {
+                    for (String key : List.copyOf(keys)) {
+                        remove(key);
+                    }
+                }
+                for (Render render : inFlight.values()) {
+                    render.invalidated |= render.tags.contains(tag);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(String key) {
+        lock.lock();
+        try {
+            remove(key);
+            Render render = inFlight.get(key);
+            if (render != null) {
+                render.invalidated = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            inFlight.values().forEach(render -> render.invalidated = true);
+            entries.clear();
+            keysByTag.clear();
+            bytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(hits, staleHits, misses, evictions, rejections, entries.size(), bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Evict least recently used entries until {@code size} more bytes fit, unless the
+     * candidate is requested less often than an entry it would displace. Updated keys
+     * (already cached) are always admitted. Called with the lock held.
+     */
+    private boolean makeRoom(String key, int size, boolean update) {
+        if (bytes + size <= maxBytes) {
+            return true;
+        }
+        List<String> victims = new ArrayList<>();
+        long freed = 0;
+        int candidateFrequency = sketch.frequency(key);
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes - freed + size > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (!update && sketch.frequency(eldest.getKey()) > candidateFrequency) {
+                return false;
+            }
+            victims.add(eldest.getKey());
+            freed += eldest.getValue().body.length;
+        }
+        for (String victim : victims) {
+            remove(victim);
+            evictions++;
+        }
+        return true;
+    }
+
+    /**
+     * Fresh entry without touching statistics or frequencies.
+     */
+    private Entry peekFresh(String key) {
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            return entry != null && entry.isFresh(now) ? entry : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called with the lock held.
+     */
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        bytes -= entry.body.length;
+        for (String tag : entry.tags) {
+            Set<String> keys = keysByTag.get(tag);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTag.remove(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of recent request frequencies: four rows of 4-bit saturating
+     * counters, all halved periodically so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int WIDTH = 1 << 14;
+        private static final int SAMPLE_SIZE = WIDTH * 10;
+        private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+
+        private final byte[][] counters = new byte[SEEDS.length][WIDTH];
+        private int additions;
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(hash, row);
+                if (counters[row][index] < 15) {
+                    counters[row][index]++;
+                }
+            }
+            if (++additions >= SAMPLE_SIZE) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int min = Integer.MAX_VALUE;
+            for (int row = 0; row < SEEDS.length; row++) {
+                min = Math.min(min, counters[row][index(hash, row)]);
+            }
+            return min;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private static int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & (WIDTH - 1);
+        }
+    }
+}
@@ -24,4 +24,20 @@ public @interface Page {
      * Empty string means no layout.
      */
     String layout() default "";
+
+    /**
+     * Always obtain the page from the Spring context as a request-scoped bean.
+     * By default generated pages with plain {@code @Autowired} fields are created by a
+     * generated {@link CandiPageFactory}; set this when the page relies on other bean
+     * semantics the factory cannot reproduce.
+     */
+    boolean springManaged() default false;
+
+    /**
+     * Render the page's widget calls concurrently on virtual threads, each into its own
+     * buffer spliced back in document order. Calls can opt out with {@code async=false},
+     * and on pages without this setting opt in with {@code async=true}. At most
+     * {@code candi.widget.max-parallel} widgets of a response render at once.
+     */
+    boolean asyncWidgets() default false;
 }
@@ -0,0 +1,103 @@
+package candi.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the @Load methods of a page concurrently via {@link CandiTasks}.
+ *
+ * <p>Like {@link ActionInvoker}, the class hierarchy is scanned once per page class
+ * and the loaders are kept as {@link MethodHandle}s. A loader overridden in a
+ * subclass runs once, in its most specific form.
+ */
+final class PageLoaders {
+
+    private static final MethodType LOADER_TYPE = MethodType.methodType(void.class, CandiPage.class);
+
+    private static final ClassValue<List<MethodHandle>> TABLES = new ClassValue<>() {
+        @Override
+        protected List<MethodHandle> computeValue(Class<?> type) {
+            return buildTable(type);
+        }
+    };
+
+    private PageLoaders() {
+    }
+
+    /**
+     * Build the loader table for a page class ahead of its first request.
+     */
+    static void prepare(Class<?> pageClass) {
+        TABLES.get(pageClass);
+    }
+
+    /**
+     * Run all @Load methods of the page and wait for them to finish.
+     */
+    static void load(CandiPage page, Duration timeout) throws Exception {
+        List<MethodHandle> loaders = TABLES.get(page.getClass());
+        if (loaders.isEmpty()) {
+            return;
+        }
+        List<Callable<Object>> tasks = new ArrayList<>(loaders.size());
+        for (MethodHandle loader : loaders) {
+            tasks.add(() -> {
+                invoke(loader, page);
+                return null;
+            });
+        }
+        CandiTasks.runAll(tasks, timeout);
+    }
+
+    private static void invoke(MethodHandle loader, CandiPage page) throws Exception {
+        try {
+            loader.invokeExact(page);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static List<MethodHandle> buildTable(Class<?> pageClass) {
+        List<MethodHandle> table = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Class<?> current = pageClass;
+        while (current != null && current != Object.class) {
+            for (Method m : current.getDeclaredMethods()) {
+                if (!m.isAnnotationPresent(Load.class)) {
+                    continue;
+                }
+                // Virtual dispatch already runs the override; private methods are never overridden
+                if (Modifier.isPrivate(m.getModifiers()) || seen.add(m.getName())) {
+                    table.add(toHandle(m));
+                }
+            }
+            current = current.getSuperclass();
+        }
+        return List.copyOf(table);
+    }
+
+    private static MethodHandle toHandle(Method m) {
+        if (m.getParameterCount() != 0) {
+            throw new IllegalStateException("@Load method " + m.getName() + " on "
+                    + m.getDeclaringClass().getName() + " must not take parameters");
+        }
+        try {
+            m.setAccessible(true);
+            return MethodHandles.lookup().unreflect(m).asType(LOADER_TYPE);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Cannot access @Load method " + m.getName()
+                    + " on " + m.getDeclaringClass().getName(), e);
+        }
+    }
+}
@@ -12,14 +12,19 @@ import org.springframework.web.util.pattern.PathPattern;
 import org.springframework.web.util.pattern.PathPatternParser;
 
 import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Discovers @CandiRoute-annotated beans and resolves HTTP requests to page bean names.
  * Thread-safe — supports hot reload via unregister/register.
+ *
+ * <p>Requests are resolved against a compiled {@link RouteTable}, rebuilt on every
+ * route change and published atomically, so lookups never see a partial update.
  */
 @Component
 public class PageRegistry {
@@ -28,6 +33,16 @@ public class PageRegistry {
 
     private final PathPatternParser patternParser = new PathPatternParser();
     private final ConcurrentHashMap<String, RouteEntry> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> outputSizes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CandiPageFactory> pageFactories = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CachedPage> cachedPages = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Map<String, String[]>> invalidations = new ConcurrentHashMap<>();
+    private volatile RouteTable routeTable = RouteTable.EMPTY;
+
+    /**
+     * Buffer size used for pages that have not rendered yet.
+     */
+    static final int DEFAULT_OUTPUT_SIZE = 4096;
 
     @Autowired
     private ApplicationContext applicationContext;
@@ -51,6 +66,11 @@ public class PageRegistry {
         ConfigurableListableBeanFactory beanFactory =
                 ((ConfigurableApplicationContext) applicationContext).getBeanFactory();
 
+        Map<String, CandiPageFactory> factoriesByClass = new HashMap<>();
+        for (CandiPageFactory factory : applicationContext.getBeansOfType(CandiPageFactory.class).values()) {
+            factoriesByClass.put(factory.pageClass().getName(), factory);
+        }
+
         for (String beanName : beanFactory.getBeanDefinitionNames()) {
             BeanDefinition bd = beanFactory.getBeanDefinition(beanName);
             String className = bd.getBeanClassName();
@@ -62,7 +82,13 @@ public class PageRegistry {
                 // Check @CandiRoute first (generated by compiler)
                 CandiRoute route = beanClass.getAnnotation(CandiRoute.class);
                 if (route != null) {
-                    register(beanName, route.path(), Set.of(route.methods()));
+                    addRoute(beanName, route.path(), Set.of(route.methods()));
+                    prepareLoaders(beanClass);
+                    registerCaching(beanName, beanClass);
+                    CandiPageFactory factory = factoriesByClass.get(className);
+                    if (factory != null) {
+                        pageFactories.put(beanName, factory);
+                    }
                     continue;
                 }
 
@@ -70,13 +96,85 @@ public class PageRegistry {
                 Page page = beanClass.getAnnotation(Page.class);
                 if (page != null) {
                     Set<String> methods = deriveMethodsFromClass(beanClass);
-                    register(beanName, page.value(), methods);
+                    addRoute(beanName, page.value(), methods);
+                    prepareLoaders(beanClass);
+                    registerCaching(beanName, beanClass);
+                    if (methods.size() > 1) {
+                        prepareActions(beanClass);
+                    }
                 }
             } catch (ClassNotFoundException e) {
                 // Not a page class, skip
             }
         }
-        log.info("Candi PageRegistry: {} page(s) registered", routes.size());
+        rebuildRouteTable();
+        log.info("Candi PageRegistry: {} page(s) registered ({} with page factories)",
+                routes.size(), pageFactories.size());
+    }
+
+    /**
+     * Build the action method handles for a hand-written page up front.
+     * Problems are reported again when the action is invoked.
+     */
+    private void prepareActions(Class<?> beanClass) {
+        try {
+            ActionInvoker.prepare(beanClass);
+        } catch (RuntimeException e) {
+            log.warn("Candi: cannot prepare action methods of {}: {}", beanClass.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Build the @Load method handles of a page up front.
+     * Problems are reported again when the page is requested.
+     */
+    private void prepareLoaders(Class<?> beanClass) {
+        try {
+            PageLoaders.prepare(beanClass);
+        } catch (RuntimeException e) {
+            log.warn("Candi: cannot prepare @Load methods of {}: {}", beanClass.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Record the page's @CachedPage policy and the tags its actions invalidate.
+     * Action methods are looked up along the hierarchy, as generated pages inherit them.
+     */
+    void registerCaching(String beanName, Class<?> beanClass) {
+        CachedPage cachedPage = beanClass.getAnnotation(CachedPage.class);
+        if (cachedPage != null) {
+            cachedPages.put(beanName, cachedPage);
+        }
+        Map<String, String[]> tagsByMethod = new HashMap<>();
+        for (Class<?> c = beanClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                Invalidates invalidates = m.getAnnotation(Invalidates.class);
+                if (invalidates == null) continue;
+                if (m.isAnnotationPresent(Post.class)) tagsByMethod.putIfAbsent("POST", invalidates.value());
+                if (m.isAnnotationPresent(Put.class)) tagsByMethod.putIfAbsent("PUT", invalidates.value());
+                if (m.isAnnotationPresent(Delete.class)) tagsByMethod.putIfAbsent("DELETE", invalidates.value());
+                if (m.isAnnotationPresent(Patch.class)) tagsByMethod.putIfAbsent("PATCH", invalidates.value());
+            }
+        }
+        if (!tagsByMethod.isEmpty()) {
+            invalidations.put(beanName, Map.copyOf(tagsByMethod));
+        }
+    }
+
+    /**
+     * The page's output cache policy, or null if it is not cached.
+     */
+    public CachedPage getCachedPage(String beanName) {
+        return cachedPages.get(beanName);
+    }
+
+    /**
+     * Tags to invalidate after the page's action for the HTTP method succeeds (empty if none).
+     */
+    public String[] getInvalidatedTags(String beanName, String httpMethod) {
+        Map<String, String[]> tagsByMethod = invalidations.get(beanName);
+        String[] tags = tagsByMethod != null ? tagsByMethod.get(httpMethod) : null;
+        return tags != null ? tags : new String[0];
     }
 
     /**
@@ -102,17 +200,35 @@ public class PageRegistry {
      * Register a route.
      */
     public void register(String beanName, String path, Set<String> methods) {
+        addRoute(beanName, path, methods);
+        rebuildRouteTable();
+    }
+
+    private void addRoute(String beanName, String path, Set<String> methods) {
         PathPattern pattern = patternParser.parse(path);
         routes.put(beanName, new RouteEntry(pattern, beanName, methods));
         log.debug("Registered page: {} -> {} ({})", path, beanName, methods);
     }
 
+    /**
+     * Compile the current routes into a new snapshot. Synchronized so concurrent
+     * registrations cannot publish an older snapshot over a newer one.
+     */
+    private synchronized void rebuildRouteTable() {
+        routeTable = new RouteTable(routes.values());
+    }
+
     /**
      * Unregister a route by bean name.
      */
     public void unregister(String beanName) {
         RouteEntry removed = routes.remove(beanName);
+        outputSizes.remove(beanName);
+        pageFactories.remove(beanName);
+        cachedPages.remove(beanName);
+        invalidations.remove(beanName);
         if (removed != null) {
+            rebuildRouteTable();
             log.debug("Unregistered page: {}", beanName);
         }
     }
@@ -125,26 +241,7 @@ public class PageRegistry {
      * @return resolve result with bean name and path variables, or null if no match
      */
     public ResolveResult resolve(String requestPath, String method) {
-        org.springframework.http.server.PathContainer pathContainer =
-                org.springframework.http.server.PathContainer.parsePath(requestPath);
-
-        ResolveResult bestMatch = null;
-        PathPattern bestPattern = null;
-
-        for (RouteEntry entry : routes.values()) {
-            if (!entry.methods().contains(method)) {
-                continue;
-            }
-            PathPattern.PathMatchInfo matchInfo = entry.pattern().matchAndExtract(pathContainer);
-            if (matchInfo != null) {
-                if (bestPattern == null || entry.pattern().compareTo(bestPattern) < 0) {
-                    bestPattern = entry.pattern();
-                    bestMatch = new ResolveResult(entry.beanName, matchInfo.getUriVariables());
-                }
-            }
-        }
-
-        return bestMatch;
+        return routeTable.resolve(requestPath, method);
     }
 
     /**
@@ -152,23 +249,7 @@ public class PageRegistry {
      * Used by HandlerMapping so the adapter can produce proper 405 responses.
      */
     public ResolveResult resolveByPath(String requestPath) {
-        org.springframework.http.server.PathContainer pathContainer =
-                org.springframework.http.server.PathContainer.parsePath(requestPath);
-
-        ResolveResult bestMatch = null;
-        PathPattern bestPattern = null;
-
-        for (RouteEntry entry : routes.values()) {
-            PathPattern.PathMatchInfo matchInfo = entry.pattern().matchAndExtract(pathContainer);
-            if (matchInfo != null) {
-                if (bestPattern == null || entry.pattern().compareTo(bestPattern) < 0) {
-                    bestPattern = entry.pattern();
-                    bestMatch = new ResolveResult(entry.beanName, matchInfo.getUriVariables());
-                }
-            }
-        }
-
-        return bestMatch;
+        return routeTable.resolve(requestPath, null);
     }
 
     /**
@@ -179,6 +260,41 @@ public class PageRegistry {
         return entry != null ? entry.methods() : Set.of();
     }
 
+    /**
+     * Record the rendered size of a page, updating its running estimate
+     * (exponentially weighted, so the estimate follows changing data).
+     */
+    public void recordOutputSize(String beanName, int bytes) {
+        AtomicInteger estimate = outputSizes.get(beanName);
+        if (estimate == null) {
+            estimate = outputSizes.computeIfAbsent(beanName, k -> new AtomicInteger(bytes));
+        }
+        // Racing updates may drop a sample, which is fine for an estimate
+        int current = estimate.get();
+        estimate.set(current + (bytes - current) / 8);
+    }
+
+    /**
+     * Suggested initial buffer size for a page: its running estimate plus 25% headroom,
+     * so typical renders fit without regrowing.
+     */
+    public int estimateOutputSize(String beanName) {
+        AtomicInteger estimate = outputSizes.get(beanName);
+        if (estimate == null) {
+            return DEFAULT_OUTPUT_SIZE;
+        }
+        int size = estimate.get();
+        return Math.max(size + (size >> 2), 256);
+    }
+
+    /**
+     * Get the generated factory for a page bean, or null if the page
+     * must be obtained from the application context.
+     */
+    public CandiPageFactory getPageFactory(String beanName) {
+        return pageFactories.get(beanName);
+    }
+
     /**
      * Get the number of registered routes.
      */
@@ -191,5 +307,10 @@ public class PageRegistry {
      */
     public void clear() {
         routes.clear();
+        outputSizes.clear();
+        pageFactories.clear();
+        cachedPages.clear();
+        invalidations.clear();
+        rebuildRouteTable();
     }
 }
@@ -0,0 +1,65 @@
+package candi.runtime;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * The asynchronous widget renders of one response (see {@link HtmlOutput#async}).
+ *
+ * <p>Each render runs on its own virtual thread, with the request context of the page,
+ * into a separate buffer. At most {@code maxParallel} run at a time; a widget reached
+ * while all permits are taken renders inline on the page's thread instead of waiting,
+ * so a page never blocks on its own cap.
+ */
+final class ParallelRenders implements AutoCloseable {
+
+    private final int maxParallel;
+    private final Semaphore permits;
+    private ExecutorService executor;
+
+    ParallelRenders(int maxParallel) {
+        this.maxParallel = maxParallel;
+        this.permits = new Semaphore(maxParallel);
+    }
+
+    int maxParallel() {
+        return maxParallel;
+    }
+
+    /**
+     * Start a render if a permit is free; returns null (render inline) otherwise.
+     */
+    Future<HtmlOutput> tryStart(Consumer<HtmlOutput> body, OutputCache cache) {
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        if (executor == null) {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+        }
+        Callable<HtmlOutput> task = CandiTasks.withRequestContext(() -> {
+            try {
+                HtmlOutput out = new HtmlOutput();
+                out.setOutputCache(cache);
+                body.accept(out);
+                return out;
+            } finally {
+                permits.release();
+            }
+        });
+        return executor.submit(task);
+    }
+
+    /**
+     * Interrupt renders still running, e.g. after another one failed.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package candi.runtime;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpSession;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A copy of the parts of a request a page render reads, for renders that outlive the
+ * request (background refreshes of a {@link CachedPage}). Servlet containers recycle
+ * request objects once the response is complete, so such a render must not read the
+ * original.
+ *
+ * <p>Method, URL parts, parameters, headers, cookies, locales, addresses, the session and
+ * the user are copied, as are the request attributes except request-scoped beans, which
+ * the render creates afresh. Anything else (the body, async or multipart support) is
+ * unavailable and delegates to the original request.
+ */
+final class RequestSnapshot extends HttpServletRequestWrapper {
+
+    /** Prefix of the attributes Spring stores request-scoped beans under. */
+    private static final String SCOPED_TARGET_PREFIX = "scopedTarget.";
+
+    private final String method;
+    private final String requestUri;
+    private final String requestUrl;
+    private final String queryString;
+    private final String contextPath;
+    private final String servletPath;
+    private final String pathInfo;
+    private final Map<String, String[]> parameters;
+    private final Map<String, List<String>> headers = new LinkedHashMap<>();
+    private final Cookie[] cookies;
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final List<Locale> locales;
+    private final String characterEncoding;
+    private final String scheme;
+    private final String serverName;
+    private final int serverPort;
+    private final boolean secure;
+    private final String remoteAddr;
+    private final HttpSession session;
+    private final String remoteUser;
+    private final Principal userPrincipal;
+
+    private RequestSnapshot(HttpServletRequest request) {
+        super(request);
+        this.method = request.getMethod();
+        this.requestUri = request.getRequestURI();
+        this.requestUrl = request.getRequestURL().toString();
+        this.queryString = request.getQueryString();
+        this.contextPath = request.getContextPath();
+        this.servletPath = request.getServletPath();
+        this.pathInfo = request.getPathInfo();
+        this.parameters = Map.copyOf(request.getParameterMap());
+        for (String name : Collections.list(request.getHeaderNames())) {
+            headers.put(name.toLowerCase(Locale.ROOT), Collections.list(request.getHeaders(name)));
+        }
+        this.cookies = request.getCookies();
+        for (String name : Collections.list(request.getAttributeNames())) {
+            if (!name.startsWith(SCOPED_TARGET_PREFIX)) {
+                attributes.put(name, request.getAttribute(name));
+            }
+        }
+        this.locales = Collections.list(request.getLocales());
+        this.characterEncoding = request.getCharacterEncoding();
+        this.scheme = request.getScheme();
+        this.serverName = request.getServerName();
+        this.serverPort = request.getServerPort();
+        this.secure = request.isSecure();
+        this.remoteAddr = request.getRemoteAddr();
+        this.session = request.getSession(false);
+        this.remoteUser = request.getRemoteUser();
+        this.userPrincipal = request.getUserPrincipal();
+    }
+
+    static RequestSnapshot of(HttpServletRequest request) {
+        return new RequestSnapshot(request);
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return requestUri;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        return new StringBuffer(requestUrl);
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public String getServletPath() {
+        return servletPath;
+    }
+
+    @Override
+    public String getPathInfo() {
+        return pathInfo;
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = parameters.get(name);
+        return values != null && values.length > 0 ? values[0] : null;
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return parameters;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        String[] values = parameters.get(name);
+        return values != null ? values.clone() : null;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = headers.get(name.toLowerCase(Locale.ROOT));
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        return Collections.enumeration(headers.getOrDefault(name.toLowerCase(Locale.ROOT), List.of()));
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        return Collections.enumeration(headers.keySet());
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        return value != null ? Integer.parseInt(value) : -1;
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        return cookies;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        synchronized (attributes) {
+            return attributes.get(name);
+        }
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        synchronized (attributes) {
+            return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+        }
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        synchronized (attributes) {
+            if (value == null) {
+                attributes.remove(name);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        synchronized (attributes) {
+            attributes.remove(name);
+        }
+    }
+
+    @Override
+    public Locale getLocale() {
+        return locales.isEmpty() ? Locale.getDefault() : locales.get(0);
+    }
+
+    @Override
+    public Enumeration<Locale> getLocales() {
+        return Collections.enumeration(locales);
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    @Override
+    public String getScheme() {
+        return scheme;
+    }
+
+    @Override
+    public String getServerName() {
+        return serverName;
+    }
+
+    @Override
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    @Override
+    public boolean isSecure() {
+        return secure;
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return remoteAddr;
+    }
+
+    /**
+     * The request's session, if it had one; a refresh cannot create a session.
+     */
+    @Override
+    public HttpSession getSession(boolean create) {
+        return session;
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return session;
+    }
+
+    @Override
+    public String getRemoteUser() {
+        return remoteUser;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return userPrincipal;
+    }
+}
@@ -0,0 +1,184 @@
+package candi.runtime;
+
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, compiled snapshot of the registered routes, built by PageRegistry
+ * whenever routes change and swapped in atomically.
+ *
+ * <p>Lookup order:
+ * <ol>
+ *   <li>Literal patterns ({@code /about}) — a single hash lookup on the request path</li>
+ *   <li>Negative cache — paths already known to match nothing</li>
+ *   <li>Segment trie — collects the few patterns whose literal segments fit the path,
+ *       which are then confirmed with {@link PathPattern#matchAndExtract} and ranked
+ *       with {@link PathPattern#compareTo}, exactly like a full scan</li>
+ * </ol>
+ * The trie only narrows candidates, so matching semantics stay those of PathPattern.
+ * Paths with encoded or matrix-parameter segments ({@code %}, {@code ;}) skip the
+ * trie and are matched against every route.
+ */
+final class RouteTable {
+
+    static final int NEGATIVE_CACHE_SIZE = 1024;
+
+    static final RouteTable EMPTY = new RouteTable(List.of());
+
+    private final List<PageRegistry.RouteEntry> entries;
+    private final Map<String, PageRegistry.RouteEntry> literals = new HashMap<>();
+    private final Node root = new Node();
+    private final Map<String, Boolean> misses = new ConcurrentHashMap<>();
+
+    RouteTable(Collection<PageRegistry.RouteEntry> routes) {
+        this.entries = List.copyOf(routes);
+        for (PageRegistry.RouteEntry entry : entries) {
+            String pattern = entry.pattern().getPatternString();
+            if (isLiteral(pattern)) {
+                PageRegistry.RouteEntry existing = literals.putIfAbsent(pattern, entry);
+                if (existing != null && entry.pattern().compareTo(existing.pattern()) < 0) {
+                    literals.put(pattern, entry);
+                }
+            }
+            insert(entry);
+        }
+    }
+
+    /**
+     * Find the best route for a path, or null. When {@code method} is non-null,
+     * only routes allowing that HTTP method are considered.
+     */
+    PageRegistry.ResolveResult resolve(String path, String method) {
+        PageRegistry.RouteEntry literal = literals.get(path);
+        if (literal != null && (method == null || literal.methods().contains(method))) {
+            // A literal pattern outranks any pattern with variables or wildcards
+            return new PageRegistry.ResolveResult(literal.beanName(), Map.of());
+        }
+        if (misses.containsKey(path)) {
+            return null;
+        }
+
+        PathContainer container = PathContainer.parsePath(path);
+        PageRegistry.ResolveResult best = null;
+        PathPattern bestPattern = null;
+        boolean anyMatch = false;
+        for (PageRegistry.RouteEntry entry : candidates(path)) {
+            PathPattern.PathMatchInfo matchInfo = entry.pattern().matchAndExtract(container);
+            if (matchInfo == null) {
+                continue;
+            }
+            anyMatch = true;
+            if (method != null && !entry.methods().contains(method)) {
+                continue;
+            }
+            if (bestPattern == null || entry.pattern().compareTo(bestPattern) < 0) {
+                bestPattern = entry.pattern();
+                best = new PageRegistry.ResolveResult(entry.beanName(), matchInfo.getUriVariables());
+            }
+        }
+
+        if (!anyMatch) {
+            if (misses.size() >= NEGATIVE_CACHE_SIZE) {
+                // Bounded: a flood of random 404 paths cannot grow it without limit
+                misses.clear();
+            }
+            misses.put(path, Boolean.TRUE);
+        }
+        return best;
+    }
+
+    int negativeCacheSize() {
+        return misses.size();
+    }
+
+    /**
+     * Routes that may match the path: a superset of the true matches.
+     */
+    private Collection<PageRegistry.RouteEntry> candidates(String path) {
+        if (path.indexOf('%') >= 0 || path.indexOf(';') >= 0 || !path.startsWith("/")) {
+            return entries;
+        }
+        List<PageRegistry.RouteEntry> result = new ArrayList<>();
+        String[] segments = segments(path);
+        collect(root, segments, 0, result);
+        if (path.length() > 1 && path.endsWith("/")) {
+            // Patterns without the trailing slash may still match it
+            collect(root, segments(path.substring(0, path.length() - 1)), 0, result);
+        }
+        return result;
+    }
+
+    private static void collect(Node node, String[] segments, int depth,
+                                List<PageRegistry.RouteEntry> result) {
+        result.addAll(node.catchAll);
+        if (depth == segments.length) {
+            result.addAll(node.terminal);
+            return;
+        }
+        Node literal = node.literals.get(segments[depth]);
+        if (literal != null) {
+            collect(literal, segments, depth + 1, result);
+        }
+        if (node.wildcard != null) {
+            collect(node.wildcard, segments, depth + 1, result);
+        }
+    }
+
+    private void insert(PageRegistry.RouteEntry entry) {
+        String pattern = entry.pattern().getPatternString();
+        if (!pattern.startsWith("/")) {
+            root.catchAll.add(entry);
+            return;
+        }
+        Node node = root;
+        for (String segment : segments(pattern)) {
+            if (segment.equals("**") || segment.startsWith("{*")) {
+                node.catchAll.add(entry);
+                return;
+            }
+            if (isLiteral(segment)) {
+                node = node.literals.computeIfAbsent(segment, k -> new Node());
+            } else {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            }
+        }
+        node.terminal.add(entry);
+    }
+
+    /**
+     * Split "/a/b" into ["a", "b"]; "/" gives no segments, "/a/" gives ["a", ""].
+     */
+    private static String[] segments(String path) {
+        if (path.equals("/")) {
+            return new String[0];
+        }
+        return path.substring(1).split("/", -1);
+    }
+
+    private static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '{' || c == '*' || c == '?' || c == '%' || c == ';' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+        final Map<String, Node> literals = new HashMap<>();
+        final List<PageRegistry.RouteEntry> terminal = new ArrayList<>();
+        final List<PageRegistry.RouteEntry> catchAll = new ArrayList<>();
+        Node wildcard;
+    }
+}
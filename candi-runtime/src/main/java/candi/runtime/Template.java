@@ -25,4 +25,12 @@ public @interface Template {
      * Inline template content (HTML with {{ }} expressions).
      */
     String value();
+
+    /**
+     * Minify the static HTML at compile time: collapse whitespace runs and drop comments,
+     * leaving {@code <pre>}, {@code <textarea>}, {@code <script>}, {@code <style>} and
+     * {{ verbatim }} content as written. The {@code candi.minifyHtml} processor option
+     * turns this on for all templates.
+     */
+    boolean minify() default false;
 }
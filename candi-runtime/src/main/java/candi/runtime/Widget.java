@@ -13,4 +13,24 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Widget {
+
+    /**
+     * The widget renders the same HTML for the same parameter values. Pages compiled
+     * with the widget memoize its output by parameter values (see {@link WidgetMemo})
+     * and skip creating and rendering the widget on a hit. Calls whose parameters are all
+     * literals are rendered when the page is compiled, where the widget's template allows.
+     */
+    boolean pure() default false;
+
+    /**
+     * How long memoized output of a pure widget is reused.
+     */
+    Scope memoScope() default Scope.APPLICATION;
+
+    enum Scope {
+        /** Shared by all requests, in a bounded LRU per widget class. */
+        APPLICATION,
+        /** Only within the request rendering it, for output that depends on request state. */
+        REQUEST
+    }
 }
@@ -0,0 +1,114 @@
+package candi.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memoized output of a {@code @Widget(pure = true)} widget, keyed by its parameter values
+ * (compared with {@code equals}). Generated pages look up the memo of a pure widget before
+ * creating it and store the captured output after rendering it. The output includes what
+ * the widget pushed to stacks, which a hit pushes again.
+ *
+ * <p>Application-scoped memos are an LRU of at most {@code candi.widget.memo.max-entries}
+ * entries per widget class (system property, default 1024); request-scoped memos live on
+ * the request's {@link HtmlOutput}. Outputs over {@value #MAX_ENTRY_BYTES} bytes are not kept.
+ */
+public final class WidgetMemo {
+
+    static final int MAX_ENTRIES = Integer.getInteger("candi.widget.memo.max-entries", 1024);
+    static final int MAX_ENTRY_BYTES = 16384;
+
+    /**
+     * Memo key value of a parameter the call does not pass (the widget keeps its default).
+     * Keys hold one value per widget parameter, so calls passing different parameters with
+     * equal values get different keys.
+     */
+    public static final Object UNSET = new Object() {
+        @Override
+        public String toString() {
+            return "UNSET";
+        }
+    };
+
+    private static final ClassValue<WidgetMemo> MEMOS = new ClassValue<>() {
+        @Override
+        protected WidgetMemo computeValue(Class<?> type) {
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                Widget widget = c.getAnnotation(Widget.class);
+                if (widget != null) {
+                    return new WidgetMemo(widget.memoScope() == Widget.Scope.REQUEST, MAX_ENTRIES);
+                }
+            }
+            return new WidgetMemo(false, MAX_ENTRIES);
+        }
+    };
+
+    private final boolean perRequest;
+    private final int maxEntries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<List<Object>, HtmlOutput.Captured> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    WidgetMemo(boolean perRequest, int maxEntries) {
+        this.perRequest = perRequest;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * The memo of a widget class, scoped by its {@code @Widget(memoScope)}.
+     */
+    public static WidgetMemo of(Class<?> widgetClass) {
+        return MEMOS.get(widgetClass);
+    }
+
+    /**
+     * Memoized output for the parameter values, or null.
+     */
+    public HtmlOutput.Captured get(HtmlOutput out, List<Object> key) {
+        if (perRequest) {
+            Map<List<Object>, HtmlOutput.Captured> memo = out.widgetMemo(this, false);
+            return memo != null ? memo.get(key) : null;
+        }
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remember the output rendered for the parameter values.
+     */
+    public void put(HtmlOutput out, List<Object> key, HtmlOutput.Captured output) {
+        if (output.body().length > MAX_ENTRY_BYTES) {
+            return;
+        }
+        if (perRequest) {
+            Map<List<Object>, HtmlOutput.Captured> memo = out.widgetMemo(this, true);
+            if (memo.size() < maxEntries) {
+                memo.put(key, output);
+            }
+            return;
+        }
+        lock.lock();
+        try {
+            entries.put(key, output);
+            if (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Candi batch fragments: fetch several {{ fragment }} regions of a page in one request
+ * and put each into the elements marked data-candi-fragment="name".
+ *
+ *   <script src="/candi/fragments.js"></script>
+ *   <div data-candi-fragment="comments">...</div>
+ *
+ *   Candi.fragments("/post/42", ["comments", "stats"]);
+ *   Candi.fragments("/post/42", ["comments", "stats"], {method: "POST", body: new FormData(form)});
+ *
+ * The promise resolves to an object mapping fragment names to their HTML.
+ */
+(function (global) {
+    "use strict";
+
+    function apply(name, html) {
+        var targets = document.querySelectorAll('[data-candi-fragment="' + CSS.escape(name) + '"]');
+        for (var i = 0; i < targets.length; i++) {
+            targets[i].innerHTML = html;
+        }
+    }
+
+    function read(response, names) {
+        if (names.length === 1) {
+            // A single fragment is plain HTML
+            return response.text().then(function (html) {
+                var parts = {};
+                parts[names[0]] = html;
+                return parts;
+            });
+        }
+        // Batches are multipart/form-data, one part per fragment
+        return response.formData().then(function (form) {
+            var parts = {};
+            form.forEach(function (html, name) {
+                parts[name] = html;
+            });
+            return parts;
+        });
+    }
+
+    function fragments(url, names, init) {
+        init = Object.assign({}, init);
+        var headers = new Headers(init.headers);
+        headers.set("Candi-Fragment", names.join(","));
+        init.headers = headers;
+        return fetch(url, init).then(function (response) {
+            if (!response.ok) {
+                throw new Error("Candi fragments " + url + ": HTTP " + response.status);
+            }
+            return read(response, names);
+        }).then(function (parts) {
+            Object.keys(parts).forEach(function (name) {
+                apply(name, parts[name]);
+            });
+            return parts;
+        });
+    }
+
+    global.Candi = Object.assign(global.Candi || {}, {fragments: fragments});
+})(window);
@@ -0,0 +1,64 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActionInvokerTest {
+
+    static class BasePage {
+        boolean deleted;
+
+        @Delete
+        private void remove() {
+            deleted = true;
+        }
+    }
+
+    static class EditPage extends BasePage implements CandiPage {
+        @Post
+        ActionResult save() {
+            return ActionResult.redirect("/saved");
+        }
+
+        @Patch
+        String touch() {
+            return "ignored";
+        }
+
+        @Put
+        void replace(String body) {
+        }
+
+        @Override
+        public void render(HtmlOutput out) {
+        }
+    }
+
+    @Test
+    void invokesAnnotatedMethodAndReturnsItsResult() throws Throwable {
+        assertEquals(ActionResult.redirect("/saved"), ActionInvoker.invoke(new EditPage(), "POST"));
+    }
+
+    @Test
+    void findsPrivateActionOnSuperclass() throws Throwable {
+        EditPage page = new EditPage();
+        assertEquals(ActionResult.render(), ActionInvoker.invoke(page, "DELETE"));
+        assertTrue(page.deleted);
+    }
+
+    @Test
+    void nonActionResultReturnRendersPage() throws Throwable {
+        assertEquals(ActionResult.render(), ActionInvoker.invoke(new EditPage(), "PATCH"));
+    }
+
+    @Test
+    void missingActionIsMethodNotAllowed() throws Throwable {
+        assertEquals(ActionResult.methodNotAllowed(), ActionInvoker.invoke(new EditPage(), "OPTIONS"));
+    }
+
+    @Test
+    void actionWithParametersFailsOnInvoke() {
+        assertThrows(IllegalArgumentException.class, () -> ActionInvoker.invoke(new EditPage(), "PUT"));
+    }
+}
@@ -0,0 +1,377 @@
+package candi.runtime;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandiHandlerAdapterTest {
+
+    static final AtomicInteger loads = new AtomicInteger();
+
+    static class VersionedPage implements CandiPage {
+        @Override
+        public String etag() {
+            return "v7";
+        }
+
+        @Override
+        public void onGet() {
+            loads.incrementAndGet();
+        }
+
+        @Override
+        public void render(HtmlOutput out) {
+            out.append("<p>versioned</p>");
+        }
+
+        @Override
+        public void renderFragment(String name, HtmlOutput out) {
+            out.append(name.equals("list") ? "<p>fragment</p>" : "<p>" + name + "</p>");
+        }
+    }
+
+    static class PlainPage implements CandiPage {
+        @Override
+        public void render(HtmlOutput out) {
+            out.append("<p>plain</p>");
+        }
+    }
+
+    @CachedPage(ttl = 60, tags = "news")
+    static class NewsPage implements CandiPage {
+        @Override
+        public void onGet() {
+            loads.incrementAndGet();
+        }
+
+        @Override
+        public void render(HtmlOutput out) {
+            out.append("<p>news " + loads.get() + "</p>");
+        }
+
+        @Override
+        public void renderFragment(String name, HtmlOutput out) {
+            out.append("<p>" + name + "</p>");
+        }
+
+        @Post
+        @Invalidates("news")
+        public void publish() {
+        }
+    }
+
+    static final AtomicInteger visits = new AtomicInteger();
+    static final AtomicInteger shellRenders = new AtomicInteger();
+
+    @CachedPage(ttl = 60)
+    static class ShellPage implements CandiPage {
+        private String user;
+
+        @Override
+        public void onGet() {
+            loads.incrementAndGet();
+            user = "ada";
+        }
+
+        @Override
+        public void render(HtmlOutput out) {
+            shellRenders.incrementAndGet();
+            out.append("<h1>shared</h1>");
+            out.hole(this, 0);
+            out.append("<footer></footer>");
+        }
+
+        @Override
+        public void renderHole(int id, HtmlOutput out) {
+            out.append("<p>visit " + visits.incrementAndGet() + " by " + user + "</p>");
+        }
+    }
+
+    static final CountDownLatch refreshGate = new CountDownLatch(1);
+
+    @CachedPage(ttl = 60)
+    static class StalePage implements CandiPage {
+        private String version;
+
+        @Override
+        public void onGet() {
+            HttpServletRequest request =
+                    ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+            try {
+                refreshGate.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            version = request.getParameter("v");
+        }
+
+        @Override
+        public void render(HtmlOutput out) {
+            out.append("<p>v" + version + "</p>");
+        }
+    }
+
+    private AnnotationConfigApplicationContext context;
+
+    @AfterEach
+    void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+        loads.set(0);
+        visits.set(0);
+        shellRenders.set(0);
+    }
+
+    private CandiHandlerAdapter start(Map<String, Object> properties) {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.registerBean(PageRegistry.class);
+        context.registerBean(HtmlOutputPool.class);
+        context.registerBean(OutputCache.class);
+        context.registerBean(CandiHandlerAdapter.class);
+        context.registerBean("versionedPage", VersionedPage.class, bd -> bd.setScope("prototype"));
+        context.registerBean("plainPage", PlainPage.class, bd -> bd.setScope("prototype"));
+        context.registerBean("newsPage", NewsPage.class, bd -> bd.setScope("prototype"));
+        context.registerBean("shellPage", ShellPage.class, bd -> bd.setScope("prototype"));
+        context.registerBean("stalePage", StalePage.class, bd -> bd.setScope("prototype"));
+        context.refresh();
+        PageRegistry registry = context.getBean(PageRegistry.class);
+        registry.register("versionedPage", "/versioned", Set.of("GET"));
+        registry.register("plainPage", "/plain", Set.of("GET"));
+        registry.register("newsPage", "/news", Set.of("GET", "POST"));
+        registry.registerCaching("newsPage", NewsPage.class);
+        registry.register("shellPage", "/shell", Set.of("GET"));
+        registry.registerCaching("shellPage", ShellPage.class);
+        registry.register("stalePage", "/stalePage", Set.of("GET"));
+        registry.registerCaching("stalePage", StalePage.class);
+        return context.getBean(CandiHandlerAdapter.class);
+    }
+
+    private MockHttpServletResponse get(CandiHandlerAdapter adapter, String beanName, String ifNoneMatch,
+                                        String fragment) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/" + beanName);
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        if (fragment != null) {
+            request.addHeader("Candi-Fragment", fragment);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        adapter.handle(request, response, new CandiHandlerMapping.CandiPageHandler(beanName));
+        return response;
+    }
+
+    @Test
+    void pageEtagSkipsLoadingAndRendering() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+
+        MockHttpServletResponse first = get(adapter, "versionedPage", null, null);
+        assertEquals(200, first.getStatus());
+        assertEquals("\"v7\"", first.getHeader("ETag"));
+        assertEquals("<p>versioned</p>", first.getContentAsString());
+
+        MockHttpServletResponse second = get(adapter, "versionedPage", "\"v7\"", null);
+        assertEquals(304, second.getStatus());
+        assertEquals("", second.getContentAsString());
+        assertEquals(1, loads.get(), "onGet() is skipped on 304");
+    }
+
+    @Test
+    void fragmentsHaveTheirOwnEtag() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+
+        MockHttpServletResponse fragment = get(adapter, "versionedPage", "\"v7\"", "list");
+        assertEquals(200, fragment.getStatus());
+        assertEquals("<p>fragment</p>", fragment.getContentAsString());
+
+        String etag = fragment.getHeader("ETag");
+        assertEquals(304, get(adapter, "versionedPage", etag, "list").getStatus());
+    }
+
+    @Test
+    void outputHashEtagWhenEnabled() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of("candi.etag.enabled", "true"));
+
+        MockHttpServletResponse first = get(adapter, "plainPage", null, null);
+        String etag = first.getHeader("ETag");
+        assertNotNull(etag);
+        assertTrue(etag.startsWith("\"0"), etag);
+
+        MockHttpServletResponse second = get(adapter, "plainPage", etag, null);
+        assertEquals(304, second.getStatus());
+        assertEquals(0, second.getContentAsByteArray().length);
+    }
+
+    @Test
+    void noEtagByDefault() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+        MockHttpServletResponse response = get(adapter, "plainPage", null, null);
+        assertNull(response.getHeader("ETag"));
+        assertEquals("<p>plain</p>", response.getContentAsString());
+    }
+
+    @Test
+    void cachedPageRendersOnceUntilInvalidated() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+
+        assertEquals("<p>news 1</p>", get(adapter, "newsPage", null, null).getContentAsString());
+        assertEquals("<p>news 1</p>", get(adapter, "newsPage", null, null).getContentAsString());
+        assertEquals(1, loads.get(), "second request is served from the cache");
+
+        MockHttpServletRequest post = new MockHttpServletRequest("POST", "/newsPage");
+        adapter.handle(post, new MockHttpServletResponse(), new CandiHandlerMapping.CandiPageHandler("newsPage"));
+
+        // The POST itself rendered the page once more, uncached
+        assertEquals("<p>news 3</p>", get(adapter, "newsPage", null, null).getContentAsString());
+    }
+
+    @Test
+    void staleHitRefreshesFromARequestSnapshotWithoutWaiting() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+        OutputCache cache = context.getBean(OutputCache.class);
+        String key = "stalePage /stalePage?v=2";
+        cache.put(key, "<p>v1</p>".getBytes(StandardCharsets.UTF_8), new OutputCache.Policy(0, 60_000, Set.of()));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stalePage");
+        request.setQueryString("v=2");
+        request.addParameter("v", "2");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        adapter.handle(request, response, new CandiHandlerMapping.CandiPageHandler("stalePage"));
+
+        // Returned while the refresh is still blocked in onGet()
+        assertEquals("<p>v1</p>", response.getContentAsString());
+        // The container recycles the request once the response is complete
+        request.setParameter("v", "recycled");
+        refreshGate.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        OutputCache.Entry entry = cache.get(key);
+        while (!cache.isFresh(entry) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            entry = cache.get(key);
+        }
+        assertEquals("<p>v2</p>", new String(entry.body(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void cacheKeyUsesSelectedParameters() {
+        CachedPage whole = NewsPage.class.getAnnotation(CachedPage.class);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/news");
+        request.setQueryString("page=2&utm=x");
+        request.addParameter("page", "2");
+        request.addParameter("utm", "x");
+        assertEquals("newsPage /news?page=2&utm=x", CandiHandlerAdapter.cacheKey("newsPage", whole, request, null));
+
+        CachedPage selected = KeyedPage.class.getAnnotation(CachedPage.class);
+        assertEquals("keyedPage /news&page=2#list", CandiHandlerAdapter.cacheKey("keyedPage", selected, request, "list"));
+    }
+
+    @CachedPage(key = "page")
+    static class KeyedPage extends PlainPage {
+    }
+
+    @Test
+    void cachedShellRendersHolesPerRequest() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of("candi.etag.enabled", "true"));
+
+        get(adapter, "shellPage", null, null);
+        MockHttpServletResponse second = get(adapter, "shellPage", null, null);
+
+        assertEquals(1, shellRenders.get(), "The shell is rendered once");
+        String html = second.getContentAsString();
+        assertTrue(html.startsWith("<h1>shared</h1><p>visit "), html);
+        assertTrue(html.endsWith("</p><footer></footer>"), html);
+        assertFalse(html.contains("visit 1<"), "The hole is rendered again, not served from the shell");
+        assertEquals(html.length(), second.getContentLength());
+        assertNull(second.getHeader("ETag"), "Responses with holes differ per request");
+    }
+
+    @Test
+    void shellHolesSeeThePageDataOnMissAndHit() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+
+        String miss = get(adapter, "shellPage", null, null).getContentAsString();
+        String hit = get(adapter, "shellPage", null, null).getContentAsString();
+
+        assertTrue(miss.contains(" by ada</p>"), miss);
+        assertEquals(miss.replaceAll("visit \\d+", "visit n"), hit.replaceAll("visit \\d+", "visit n"));
+    }
+
+    @Test
+    void severalFragmentsRenderInOneLifecycle() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+
+        MockHttpServletResponse response = get(adapter, "versionedPage", null, "list, stats,list");
+
+        assertEquals(1, loads.get());
+        String boundary = "--" + boundaryOf(response);
+        assertEquals(boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"list\"\r\n"
+                + "Content-Type: text/html;charset=UTF-8\r\n\r\n"
+                + "<p>fragment</p>\r\n"
+                + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"stats\"\r\n"
+                + "Content-Type: text/html;charset=UTF-8\r\n\r\n"
+                + "<p>stats</p>\r\n"
+                + boundary + "--\r\n", response.getContentAsString());
+    }
+
+    @Test
+    void repeatedFragmentParametersFormABatch() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/versionedPage");
+        request.addParameter("_fragment", "list", "stats");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        adapter.handle(request, response, new CandiHandlerMapping.CandiPageHandler("versionedPage"));
+
+        assertTrue(response.getContentType().startsWith("multipart/form-data; boundary=candi-"));
+        assertTrue(response.getContentAsString().contains("name=\"stats\""));
+        assertEquals(FragmentBatch.names("list", "stats"), FragmentBatch.names("list,stats"));
+    }
+
+    @Test
+    void eachBatchHasItsOwnBoundary() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+
+        MockHttpServletResponse first = get(adapter, "versionedPage", null, "list,stats");
+        MockHttpServletResponse second = get(adapter, "versionedPage", null, "list,stats");
+
+        assertNotEquals(boundaryOf(first), boundaryOf(second),
+                "A boundary seen in one response cannot be forged into the next");
+        assertTrue(second.getContentAsString().startsWith("--" + boundaryOf(second) + "\r\n"));
+    }
+
+    @Test
+    void cachedBatchKeepsItsBoundary() throws Exception {
+        CandiHandlerAdapter adapter = start(Map.of());
+
+        MockHttpServletResponse miss = get(adapter, "newsPage", null, "a,b");
+        MockHttpServletResponse hit = get(adapter, "newsPage", null, "a,b");
+
+        assertEquals(1, loads.get(), "The second batch is served from the cache");
+        assertEquals(miss.getContentType(), hit.getContentType());
+        assertTrue(hit.getContentAsString().startsWith("--" + boundaryOf(hit) + "\r\n"));
+    }
+
+    private static String boundaryOf(MockHttpServletResponse response) {
+        String contentType = response.getContentType();
+        return contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+    }
+}
@@ -0,0 +1,95 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandiLoopsTest {
+
+    /**
+     * Written the way the compiler generates {{ for row in rows }}...{{ end }}.
+     */
+    private static String render(Iterable<?> rows, AtomicInteger maxAhead, AtomicInteger pulled) {
+        StringBuilder out = new StringBuilder();
+        int row_index = 0;
+        try {
+            var _it_row = rows.iterator();
+            while (_it_row.hasNext()) {
+                var row = _it_row.next();
+                boolean row_first = (row_index == 0);
+                boolean row_last = !_it_row.hasNext();
+                maxAhead.accumulateAndGet(pulled.get() - row_index, Math::max);
+                out.append(row_first ? "[" : ",").append(row).append(row_last ? "]" : "");
+                row_index++;
+            }
+        } finally {
+            CandiLoops.close(rows);
+        }
+        return out.toString();
+    }
+
+    @Test
+    void streamsAreReadOneRowAheadAndClosed() {
+        AtomicInteger pulled = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<Integer> rows = Stream.iterate(1, n -> n <= 5, n -> n + 1)
+                .peek(n -> pulled.incrementAndGet())
+                .onClose(() -> closed.set(true));
+
+        assertEquals("[1,2,3,4,5]", render(CandiLoops.iterable(rows), maxAhead, pulled));
+        assertEquals(2, maxAhead.get(), "the current row and one of lookahead");
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void streamIsClosedWhenTheBodyFails() {
+        AtomicBoolean closed = new AtomicBoolean();
+        Iterable<Object> rows = CandiLoops.iterable(Stream.of((Object) "a").onClose(() -> closed.set(true)));
+
+        assertThrows(IllegalStateException.class, () -> {
+            try {
+                for (Object row : rows) {
+                    throw new IllegalStateException("render failed at " + row);
+                }
+            } finally {
+                CandiLoops.close(rows);
+            }
+        });
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void iteratorsAndArraysAreLoopSources() {
+        Iterator<String> cursor = List.of("a", "b").iterator();
+        AtomicInteger counter = new AtomicInteger();
+
+        assertEquals("[a,b]", render(CandiLoops.iterable(cursor), new AtomicInteger(), counter));
+        assertEquals("[x]", render(CandiLoops.iterable(new String[]{"x"}), new AtomicInteger(), counter));
+        assertEquals("[1,2]", render(CandiLoops.iterable(new int[]{1, 2}), new AtomicInteger(), counter));
+        assertEquals("[c]", render(CandiLoops.iterable(List.of("c").spliterator()), new AtomicInteger(), counter));
+        assertEquals("", render(CandiLoops.iterable(List.of()), new AtomicInteger(), counter));
+    }
+
+    @Test
+    void toListKeepsRandomAccessListsAndCopiesTheRest() {
+        List<String> list = new ArrayList<>(List.of("a", "b"));
+        assertSame(list, CandiLoops.toList(list));
+
+        List<String> linked = new LinkedList<>(list);
+        assertEquals(list, CandiLoops.toList(linked));
+        assertNotSame(linked, CandiLoops.toList(linked));
+
+        AtomicBoolean closed = new AtomicBoolean();
+        assertEquals(list, CandiLoops.toList(list.stream().onClose(() -> closed.set(true))));
+        assertTrue(closed.get());
+    }
+}
@@ -0,0 +1,101 @@
+package candi.runtime;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandiPageFactoryTest {
+
+    static class Greeter {
+    }
+
+    static class Counter {
+    }
+
+    @CandiRoute(path = "/factory", methods = {"GET"})
+    static class TestPage implements CandiPage {
+        @Autowired
+        Greeter greeter;
+
+        @Autowired
+        Counter counter;
+
+        @Override
+        public void render(HtmlOutput out) {
+        }
+    }
+
+    /**
+     * Written the way the annotation processor generates page factories.
+     */
+    static class TestPageFactory extends CandiPageFactory {
+        private CandiPageFactory.Dependency<Greeter> _greeter;
+        private CandiPageFactory.Dependency<Counter> _counter;
+
+        @Override
+        public Class<? extends CandiPage> pageClass() {
+            return TestPage.class;
+        }
+
+        @Override
+        protected void resolveDependencies() {
+            _greeter = dependency(TestPage.class, "greeter");
+            _counter = dependency(TestPage.class, "counter");
+        }
+
+        @Override
+        public CandiPage create(HttpServletRequest request) {
+            TestPage page = new TestPage();
+            page.greeter = _greeter.get();
+            page.counter = _counter.get();
+            return page;
+        }
+    }
+
+    private AnnotationConfigApplicationContext context;
+
+    @BeforeEach
+    void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(Greeter.class);
+        context.registerBean(Counter.class, bd -> bd.setScope("prototype"));
+        context.registerBean("testPage", TestPage.class, bd -> bd.setScope("prototype"));
+        context.registerBean(TestPageFactory.class);
+        context.registerBean(PageRegistry.class);
+        context.refresh();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void singletonDependenciesAreSharedAndOthersLookedUpPerPage() {
+        TestPageFactory factory = context.getBean(TestPageFactory.class);
+
+        TestPage first = (TestPage) factory.create(null);
+        TestPage second = (TestPage) factory.create(null);
+
+        assertSame(context.getBean(Greeter.class), first.greeter);
+        assertSame(first.greeter, second.greeter);
+        assertNotNull(first.counter);
+        assertNotSame(first.counter, second.counter);
+    }
+
+    @Test
+    void registryMapsRouteToFactory() {
+        PageRegistry registry = context.getBean(PageRegistry.class);
+        registry.scanForPages();
+
+        assertSame(context.getBean(TestPageFactory.class), registry.getPageFactory("testPage"));
+
+        registry.unregister("testPage");
+        assertNull(registry.getPageFactory("testPage"));
+    }
+}
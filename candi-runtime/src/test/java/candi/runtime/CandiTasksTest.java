@@ -0,0 +1,89 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandiTasksTest {
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void tasksRunConcurrently() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Callable<Object> task = () -> {
+            bothStarted.countDown();
+            // Deadlocks unless the other task runs at the same time
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            return null;
+        };
+        CandiTasks.runAll(List.of(task, task), null);
+    }
+
+    @Test
+    void tasksSeeRequestAttributes() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute("user", "alice");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        Callable<Object> task = () -> {
+            ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+            assertEquals("alice", attributes.getRequest().getAttribute("user"));
+            return null;
+        };
+        CandiTasks.runAll(List.of(task, task), null);
+    }
+
+    @Test
+    void firstFailureIsRethrownAndOthersCancelled() {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Callable<Object> slow = () -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return null;
+        };
+        Callable<Object> failing = () -> {
+            throw new IOException("backend down");
+        };
+
+        IOException error = assertThrows(IOException.class, () -> CandiTasks.runAll(List.of(slow, failing), null));
+        assertEquals("backend down", error.getMessage());
+        // runAll only returns once the cancelled task has finished
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void timeoutCancelsRunningTasks() {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Callable<Object> slow = () -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return null;
+        };
+
+        assertThrows(TimeoutException.class, () -> CandiTasks.runAll(List.of(slow), Duration.ofMillis(50)));
+        assertTrue(interrupted.get());
+    }
+}
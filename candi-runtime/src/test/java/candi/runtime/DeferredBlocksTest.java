@@ -0,0 +1,111 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeferredBlocksTest {
+
+    @Test
+    void withoutDeferredBlocksContentRendersInline() {
+        HtmlOutput out = new HtmlOutput();
+        out.append("<h1>Feed</h1>");
+        assertFalse(out.beginDefer("audit", o -> o.append("<p>log</p>")));
+        assertEquals("<h1>Feed</h1><p>log</p>", out.toHtml());
+    }
+
+    @Test
+    void placeholderShowsFallbackAndBlockIsStreamedAfterPage() throws Exception {
+        CountDownLatch pageWritten = new CountDownLatch(1);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (DeferredBlocks deferred = new DeferredBlocks(Duration.ofSeconds(5))) {
+            HtmlOutput out = new HtmlOutput();
+            out.setDeferredBlocks(deferred);
+
+            out.append("<h1>Feed</h1>");
+            if (out.beginDefer("audit", o -> {
+                // Slow block: only finishes once the rest of the page is out
+                awaitQuietly(pageWritten);
+                o.append("<p>log</p>");
+            })) {
+                out.append("Loading");
+                out.endDefer();
+            }
+            out.append("<footer></footer>");
+
+            out.writeTo(sink);
+            assertEquals("<h1>Feed</h1><candi-defer id=\"candi-defer-0\" data-name=\"audit\">Loading</candi-defer>"
+                    + "<footer></footer>", sink.toString(StandardCharsets.UTF_8));
+            pageWritten.countDown();
+
+            deferred.writeTo(sink);
+        }
+
+        String html = sink.toString(StandardCharsets.UTF_8);
+        assertTrue(html.contains("function candiSwap(i)"));
+        assertTrue(html.endsWith("<template id=\"candi-defer-0-content\"><p>log</p></template>"
+                + "<script>candiSwap(0)</script>"), html);
+    }
+
+    @Test
+    void stackPushesAreSwappedInWithTheBlock() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (DeferredBlocks deferred = new DeferredBlocks(Duration.ofSeconds(5))) {
+            HtmlOutput out = new HtmlOutput();
+            out.setDeferredBlocks(deferred);
+            if (out.beginDefer("chart", o -> {
+                o.append("<canvas></canvas>");
+                o.pushStack("styles", "<link href=\"chart.css\">");
+                o.pushStack("scripts", "<script src=\"chart.js\"></script>");
+            })) {
+                out.endDefer();
+            }
+            out.renderStack("scripts");
+            out.writeTo(sink);
+            deferred.writeTo(sink);
+        }
+
+        String html = sink.toString(StandardCharsets.UTF_8);
+        assertTrue(html.endsWith("<template id=\"candi-defer-0-content\"><canvas></canvas>"
+                + "<link href=\"chart.css\"><script src=\"chart.js\"></script></template>"
+                + "<script>candiSwap(0)</script>"), html);
+    }
+
+    @Test
+    void slowAndFailedBlocksKeepFallback() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (DeferredBlocks deferred = new DeferredBlocks(Duration.ofMillis(100))) {
+            HtmlOutput out = new HtmlOutput();
+            out.setDeferredBlocks(deferred);
+            assertTrue(out.beginDefer("slow", o -> awaitQuietly(new CountDownLatch(1))));
+            out.endDefer();
+            assertTrue(out.beginDefer("broken", o -> {
+                throw new IllegalStateException("boom");
+            }));
+            out.endDefer();
+            assertTrue(out.beginDefer("fast", o -> o.append("ok")));
+            out.endDefer();
+
+            deferred.writeTo(sink);
+        }
+
+        String html = sink.toString(StandardCharsets.UTF_8);
+        assertTrue(html.contains("<template id=\"candi-defer-2-content\">ok</template>"));
+        assertFalse(html.contains("candi-defer-0-content"));
+        assertFalse(html.contains("candi-defer-1-content"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
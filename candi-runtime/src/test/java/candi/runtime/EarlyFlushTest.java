@@ -0,0 +1,96 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EarlyFlushTest {
+
+    static class Layout implements CandiLayout {
+        @Override
+        public void render(HtmlOutput out, SlotProvider slots) {
+            out.append("<head><link rel=\"stylesheet\" href=\"/app.css\"></head><body>");
+            slots.renderSlot("content", out);
+            out.append("</body>");
+        }
+    }
+
+    /**
+     * Written the way SubclassCodeGenerator renders pages with a layout.
+     */
+    static class LayoutPage implements CandiPage {
+        final Layout layout = new Layout();
+        String message;
+
+        @Override
+        public void onGet() {
+            message = "loaded";
+        }
+
+        @Override
+        public void render(HtmlOutput out) {
+            _renderLayout(out, null);
+        }
+
+        @Override
+        public void renderWithEarlyFlush(HtmlOutput out, EarlyFlush earlyFlush) {
+            _renderLayout(out, earlyFlush);
+        }
+
+        private void _renderLayout(HtmlOutput out, EarlyFlush earlyFlush) {
+            SlotProvider _slots = (slotName, slotOut) -> {
+                if ("content".equals(slotName)) {
+                    out.append("<p>" + message + "</p>");
+                }
+            };
+            layout.render(out, earlyFlush != null ? earlyFlush.wrap(_slots) : _slots);
+        }
+    }
+
+    @Test
+    void headIsFlushedBeforeDataLoads() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        HtmlOutput out = new HtmlOutput(sink, 8192);
+        LayoutPage page = new LayoutPage();
+        List<String> sentBeforeLoad = new ArrayList<>();
+
+        page.renderWithEarlyFlush(out, new EarlyFlush(() -> {
+            sentBeforeLoad.add(sink.toString(StandardCharsets.UTF_8));
+            page.onGet();
+        }));
+        out.flush();
+
+        assertEquals(List.of("<head><link rel=\"stylesheet\" href=\"/app.css\"></head><body>"), sentBeforeLoad);
+        assertEquals("<head><link rel=\"stylesheet\" href=\"/app.css\"></head><body><p>loaded</p></body>",
+                sink.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void pageWithoutLayoutLoadsBeforeRenderingAndStaysUncommitted() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        HtmlOutput out = new HtmlOutput(sink, 8192);
+        List<Integer> sentBeforeLoad = new ArrayList<>();
+        CandiPage page = o -> o.append("<p>plain</p>");
+
+        page.renderWithEarlyFlush(out, new EarlyFlush(() -> sentBeforeLoad.add(sink.size())));
+
+        assertEquals(List.of(0), sentBeforeLoad);
+        assertEquals(0, sink.size(), "Nothing is written until the adapter flushes");
+    }
+
+    @Test
+    void checkedLoadFailureIsWrapped() {
+        HtmlOutput out = new HtmlOutput(new ByteArrayOutputStream(), 8192);
+        EarlyFlush earlyFlush = new EarlyFlush(() -> {
+            throw new java.io.IOException("db down");
+        });
+
+        EarlyFlush.LoadFailure failure = assertThrows(EarlyFlush.LoadFailure.class, () -> earlyFlush.load(out));
+        assertEquals("db down", failure.getCause().getMessage());
+    }
+}
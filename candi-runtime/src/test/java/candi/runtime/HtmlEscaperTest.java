@@ -0,0 +1,89 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Differential tests: the run-skipping and SWAR paths must agree with the
+ * per-character reference implementation on every input. The build runs this class
+ * a second time with {@code candi.escape.scalar=true}, so both entry points are also
+ * checked with the scalar switch on.
+ */
+class HtmlEscaperTest {
+
+    private static final String ALPHABET = "abc <>&\"'=?éÿ✓😀\uD800\t\n";
+
+    @Test
+    void escapesAllSpecialCharacters() {
+        assertEquals("&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&#x27;s&lt;/a&gt;",
+                HtmlEscaper.escape("<a href=\"x\">Tom & Jerry's</a>"));
+    }
+
+    @Test
+    void returnsSameInstanceWhenNothingToEscape() {
+        String s = "plain text é";
+        assertSame(s, HtmlEscaper.escape(s));
+    }
+
+    @Test
+    void scalarSwitchFollowsTheSystemProperty() {
+        assertEquals(Boolean.getBoolean("candi.escape.scalar"), HtmlEscaper.SCALAR);
+    }
+
+    @Test
+    void stringEscapeMatchesReference() {
+        Random random = new Random(42);
+        for (int n = 0; n < 5000; n++) {
+            String s = randomString(random, random.nextInt(80));
+            assertEquals(HtmlEscaper.escapeScalar(s), HtmlEscaper.escape(s), () -> "input: " + s);
+        }
+    }
+
+    @Test
+    void appendEscapedMatchesReference() {
+        Random random = new Random(7);
+        for (int n = 0; n < 5000; n++) {
+            String s = randomString(random, random.nextInt(80));
+            HtmlOutput out = new HtmlOutput(16);
+            out.append("x").appendEscaped(s).append("y");
+            byte[] expected = ("x" + HtmlEscaper.escapeScalar(s) + "y").getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(expected, out.toByteArray(), () -> "input: " + s);
+        }
+    }
+
+    @Test
+    void wordScanMatchesScalarScanAtEveryOffset() {
+        Random random = new Random(3);
+        for (int n = 0; n < 500; n++) {
+            byte[] b = randomString(random, 40).getBytes(StandardCharsets.UTF_8);
+            for (int from = 0; from <= b.length; from++) {
+                for (int to = from; to <= b.length; to++) {
+                    assertEquals(HtmlEscaper.indexOfEscapableScalar(b, from, to),
+                            HtmlEscaper.indexOfEscapable(b, from, to));
+                }
+            }
+        }
+    }
+
+    @Test
+    void wordScanIgnoresMultiByteSequences() {
+        // U+203C encodes as E2 80 BC, U+013C as C4 BC: continuation bytes resemble '<' (3C) only in the low bits
+        byte[] b = "‼ļ…¦abcdefgh".getBytes(StandardCharsets.UTF_8);
+        assertEquals(-1, HtmlEscaper.indexOfEscapable(b, 0, b.length));
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            // Bias towards long safe runs, as in real page text
+            sb.append(random.nextInt(4) == 0
+                    ? ALPHABET.charAt(random.nextInt(ALPHABET.length()))
+                    : (char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+}
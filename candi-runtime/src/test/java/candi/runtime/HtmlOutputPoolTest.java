@@ -0,0 +1,65 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlOutputPoolTest {
+
+    @Test
+    void releasedBufferIsReusedEmpty() {
+        HtmlOutputPool pool = new HtmlOutputPool(4, 1 << 20);
+
+        HtmlOutput first = pool.acquire(1024);
+        first.append("<p>old</p>");
+        first.pushStack("scripts", "<script></script>");
+        pool.release(first);
+
+        HtmlOutput second = pool.acquire(1024);
+        assertSame(first, second);
+        assertEquals(0, second.length());
+        second.renderStack("scripts");
+        assertEquals("", second.toHtml(), "Stacks must not leak between requests");
+
+        assertEquals(new HtmlOutputPool.Stats(1, 1, 0, 0), pool.stats());
+    }
+
+    @Test
+    void acquireGrowsBufferToSizeHint() {
+        HtmlOutputPool pool = new HtmlOutputPool(4, 1 << 20);
+        pool.release(new HtmlOutput(64));
+
+        HtmlOutput out = pool.acquire(50_000);
+        assertTrue(out.capacity() >= 50_000);
+    }
+
+    @Test
+    void oversizedBuffersAreTrimmedOnRelease() {
+        HtmlOutputPool pool = new HtmlOutputPool(4, 8192);
+        HtmlOutput out = pool.acquire(4096);
+        out.append("x".repeat(100_000));
+        pool.release(out);
+
+        assertEquals(8192, out.capacity());
+        assertEquals(1, pool.stats().trimmed());
+    }
+
+    @Test
+    void poolSizeIsBounded() {
+        HtmlOutputPool pool = new HtmlOutputPool(2, 8192);
+        for (int i = 0; i < 5; i++) {
+            pool.release(new HtmlOutput());
+        }
+        assertEquals(2, pool.stats().pooled());
+    }
+
+    @Test
+    void zeroSizeDisablesPooling() {
+        HtmlOutputPool pool = new HtmlOutputPool(0, 8192);
+        HtmlOutput out = pool.acquire(128);
+        pool.release(out);
+
+        assertNotSame(out, pool.acquire(128));
+        assertEquals(2, pool.stats().misses());
+    }
+}
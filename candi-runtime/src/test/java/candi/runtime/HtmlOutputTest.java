@@ -0,0 +1,328 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlOutputTest {
+
+    @Test
+    void bufferedOutputAccumulatesHtml() {
+        HtmlOutput out = new HtmlOutput();
+        out.append("<p>").appendEscaped("a < b").append("</p>");
+
+        assertFalse(out.isStreaming());
+        assertEquals("<p>a &lt; b</p>", out.toHtml());
+        assertEquals(out.toHtml().length(), out.length());
+    }
+
+    @Test
+    void lengthIsUtf8ByteCount() {
+        HtmlOutput out = new HtmlOutput();
+        out.append("caf\u00e9 \u2713 \uD83D\uDE00");
+
+        byte[] expected = "caf\u00e9 \u2713 \uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, out.length());
+        assertArrayEquals(expected, out.toByteArray());
+        assertEquals("caf\u00e9 \u2713 \uD83D\uDE00", out.toHtml());
+    }
+
+    @Test
+    void numbersAreWrittenAsStringValueOfWould() {
+        HtmlOutput out = new HtmlOutput(16);
+        long[] longs = {0, 7, -7, 10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+        StringBuilder expected = new StringBuilder();
+        for (long n : longs) {
+            out.appendLong(n).append(",");
+            expected.append(n).append(',');
+        }
+        out.appendInt(Integer.MIN_VALUE).appendInt(42).appendDouble(0.1).appendDouble(-1e21);
+        expected.append(Integer.MIN_VALUE).append(42).append(0.1).append(-1e21);
+
+        assertEquals(expected.toString(), out.toHtml());
+        assertEquals(expected.length(), out.length());
+    }
+
+    @Test
+    void preEncodedChunksAndEscapedTextMix() {
+        byte[] open = HtmlOutput.utf8("<p title=\"\u00fc\">");
+        HtmlOutput out = new HtmlOutput(16);
+        out.append(open).appendEscaped("\u00e9<\uD83D\uDE00>").append(HtmlOutput.utf8("</p>"));
+
+        assertEquals("<p title=\"\u00fc\">\u00e9&lt;\uD83D\uDE00&gt;</p>", out.toHtml());
+    }
+
+    @Test
+    void unpairedSurrogateMatchesJdkEncoding() {
+        String s = "a\uD800b";
+        HtmlOutput out = new HtmlOutput();
+        out.append(s);
+        assertArrayEquals(s.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    void streamingOutputFlushesPastThreshold() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        HtmlOutput out = new HtmlOutput(sink, 8);
+
+        out.append("<ul>");
+        assertEquals("", sink.toString(StandardCharsets.UTF_8), "Below threshold nothing is written");
+
+        out.append("<li>one</li>");
+        assertEquals("<ul><li>one</li>", sink.toString(StandardCharsets.UTF_8));
+        assertEquals("", out.toHtml());
+
+        out.append("</ul>");
+        out.flush();
+        assertEquals("<ul><li>one</li></ul>", sink.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void streamingLengthIncludesFlushedContent() {
+        HtmlOutput out = new HtmlOutput(new ByteArrayOutputStream(), 4);
+        out.append("12345");
+        int before = out.length();
+        out.append("");
+
+        assertEquals(5, before);
+        assertEquals(before, out.length(), "Empty append must not change length (slot fallback relies on it)");
+    }
+
+    @Test
+    void streamingRejectsNonPositiveThreshold() {
+        assertThrows(IllegalArgumentException.class, () -> new HtmlOutput(new ByteArrayOutputStream(), 0));
+    }
+
+    @Test
+    void cacheRegionIsCapturedAcrossFlushesAndReplayed() {
+        OutputCache cache = new OutputCache(1 << 20, System::currentTimeMillis);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        HtmlOutput out = new HtmlOutput(sink, 4);
+        out.setOutputCache(cache);
+
+        out.append("<main>");
+        int mark = out.beginCache("nav");
+        assertTrue(mark >= 0);
+        out.append("<nav>").append("links").append("</nav>");
+        assertEquals("<main>", sink.toString(StandardCharsets.UTF_8), "No flush while capturing");
+        out.endCache("nav", mark, 60);
+        out.flush();
+        assertEquals("<main><nav>links</nav>", sink.toString(StandardCharsets.UTF_8));
+
+        HtmlOutput second = new HtmlOutput();
+        second.setOutputCache(cache);
+        assertEquals(-1, second.beginCache("nav"), "Hit: the region is skipped");
+        assertEquals("<nav>links</nav>", second.toHtml());
+    }
+
+    @Test
+    void cacheHitsPushWhatTheRegionPushed() {
+        OutputCache cache = new OutputCache(1 << 20, System::currentTimeMillis);
+        HtmlOutput out = new HtmlOutput();
+        out.setOutputCache(cache);
+        out.pushStack("scripts", "<script src=\"page.js\"></script>");
+        int mark = out.beginCache("chart");
+        out.append("<canvas></canvas>");
+        out.pushStack("scripts", "<script src=\"chart.js\"></script>");
+        out.pushStack("styles", "<link href=\"chart.css\">");
+        out.endCache("chart", mark, 60);
+
+        HtmlOutput second = new HtmlOutput();
+        second.setOutputCache(cache);
+        assertEquals(-1, second.beginCache("chart"));
+        second.renderStack("scripts");
+        second.renderStack("styles");
+        assertEquals("<canvas></canvas><script src=\"chart.js\"></script><link href=\"chart.css\">",
+                second.toHtml(), "Only the region's own pushes are replayed");
+    }
+
+    @Test
+    void cacheRegionsRenderWithoutCache() {
+        HtmlOutput out = new HtmlOutput();
+        int mark = out.beginCache("nav");
+        out.append("<nav></nav>");
+        out.endCache("nav", mark, 60);
+        assertEquals(0, new HtmlOutput().beginCache("nav"));
+        assertEquals("<nav></nav>", out.toHtml());
+    }
+
+    @Test
+    void holesAreRecordedOutsideOtherHoles() {
+        CandiLayout layout = new CandiLayout() {
+            @Override
+            public void render(HtmlOutput out, SlotProvider slots) {
+            }
+
+            @Override
+            public void renderHole(int id, HtmlOutput out) {
+                out.append("<b>" + id + "</b>");
+                if (id == 0) {
+                    out.hole(this, 1);
+                }
+            }
+        };
+        HtmlOutput out = new HtmlOutput();
+        out.recordHoles();
+        out.append("<p>");
+        out.hole(layout, 0);
+        out.append("</p>");
+
+        assertEquals("<p><b>0</b><b>1</b></p>", out.toHtml());
+        assertEquals(List.of(new HtmlOutput.Hole(3, 19, layout, 0)), out.holes());
+    }
+
+    @Test
+    void asyncWidgetsAreSplicedInDocumentOrder() throws Exception {
+        java.util.concurrent.CountDownLatch bothStarted = new java.util.concurrent.CountDownLatch(2);
+        try (ParallelRenders parallel = new ParallelRenders(4)) {
+            HtmlOutput out = new HtmlOutput();
+            out.setParallelRenders(parallel);
+            out.append("<main>");
+            for (String name : List.of("chart", "table")) {
+                out.async(widget -> {
+                    bothStarted.countDown();
+                    try {
+                        bothStarted.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    widget.append("<" + name + "/>");
+                    widget.pushStack("scripts", "<script src=\"" + name + ".js\"></script>");
+                });
+                out.append("|");
+            }
+            out.append("</main>");
+            out.renderStack("scripts");
+
+            assertEquals("<main><chart/>|<table/>|</main>"
+                    + "<script src=\"chart.js\"></script><script src=\"table.js\"></script>", out.toHtml());
+        }
+    }
+
+    @Test
+    void asyncPushesKeepDocumentOrderInStacks() {
+        try (ParallelRenders parallel = new ParallelRenders(2)) {
+            HtmlOutput out = new HtmlOutput();
+            out.setParallelRenders(parallel);
+            out.pushStack("scripts", "<script src=\"first.js\"></script>");
+            out.async(widget -> widget.pushStack("scripts", "<script src=\"chart.js\"></script>"));
+            out.pushStack("scripts", "<script src=\"page.js\"></script>");
+            out.async(widget -> widget.pushStack("scripts", "<script src=\"table.js\"></script>"));
+            out.pushStack("scripts", "<script src=\"last.js\"></script>");
+            out.renderStack("scripts");
+
+            assertEquals("<script src=\"first.js\"></script><script src=\"chart.js\"></script>"
+                    + "<script src=\"page.js\"></script><script src=\"table.js\"></script>"
+                    + "<script src=\"last.js\"></script>", out.toHtml());
+        }
+    }
+
+    @Test
+    void asyncWidgetFailurePropagates() {
+        try (ParallelRenders parallel = new ParallelRenders(1)) {
+            HtmlOutput out = new HtmlOutput();
+            out.setParallelRenders(parallel);
+            out.async(widget -> {
+                throw new IllegalArgumentException("broken widget");
+            });
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, out::joinAsync);
+            assertEquals("broken widget", e.getMessage());
+        }
+    }
+
+    @Test
+    void asyncWidgetsRenderInlineWithoutParallelRendering() {
+        HtmlOutput out = new HtmlOutput();
+        out.append("a");
+        out.async(widget -> widget.append("b"));
+        out.append("c");
+
+        assertEquals("abc", out.toHtml());
+    }
+
+    @Test
+    void slotHoldingOnlyAnAsyncWidgetSkipsItsDefault() {
+        try (ParallelRenders parallel = new ParallelRenders(1)) {
+            HtmlOutput out = new HtmlOutput();
+            out.setParallelRenders(parallel);
+            SlotProvider slots = (name, slotOut) -> slotOut.async(widget -> widget.append("<chart/>"));
+            // Written the way the compiler generates {{ slot "sidebar" }}default{{ end }}
+            out.append("<aside>");
+            long before = out.contentMark();
+            slots.renderSlot("sidebar", out);
+            if (out.contentMark() == before) {
+                out.append("default");
+            }
+            out.append("</aside>");
+            out.joinAsync();
+
+            assertEquals("<aside><chart/></aside>", out.toHtml());
+        }
+    }
+
+    @Test
+    void parallelLoopChunksCoverTheListInOrder() {
+        try (ParallelRenders parallel = new ParallelRenders(2)) {
+            HtmlOutput out = new HtmlOutput();
+            out.setParallelRenders(parallel);
+            // Written the way the compiler generates {{ for n in numbers parallel }}
+            List<Integer> numbers = CandiLoops.toList(java.util.stream.IntStream.range(0, 1000).boxed().toList());
+            int size = numbers.size();
+            int chunk = out.parallelChunk(size);
+            assertEquals(334, chunk, "one chunk per parallel render and one for the page's thread");
+            for (int from = 0; from < size; from += chunk) {
+                int start = from;
+                out.asyncChunk(chunk, size, o -> {
+                    int end = Math.min(start + chunk, size);
+                    for (int i = start; i < end; i++) {
+                        o.append(i == 0 ? "[" : ",");
+                        o.append(String.valueOf(numbers.get(i)));
+                        if (i == size - 1) {
+                            o.append("]");
+                        }
+                    }
+                });
+            }
+            out.joinAsync();
+
+            assertEquals(numbers.toString().replace(" ", ""), out.toHtml());
+        }
+    }
+
+    @Test
+    void smallOrSequentialLoopsAreOneChunk() {
+        assertEquals(1000, new HtmlOutput().parallelChunk(1000));
+        assertEquals(1, new HtmlOutput().parallelChunk(0));
+        try (ParallelRenders parallel = new ParallelRenders(4)) {
+            HtmlOutput out = new HtmlOutput();
+            out.setParallelRenders(parallel);
+            assertEquals(300, out.parallelChunk(300));
+            assertEquals(HtmlOutput.PARALLEL_MIN_CHUNK, out.parallelChunk(600));
+        }
+    }
+
+    @Test
+    void smallParallelLoopsRenderOnThePagesThread() {
+        try (ParallelRenders parallel = new ParallelRenders(4)) {
+            HtmlOutput out = new HtmlOutput();
+            out.setParallelRenders(parallel);
+            int size = 300;
+            int chunk = out.parallelChunk(size);
+            List<Thread> threads = new ArrayList<>();
+            for (int from = 0; from < size; from += chunk) {
+                out.asyncChunk(chunk, size, o -> {
+                    threads.add(Thread.currentThread());
+                    o.append("rows");
+                });
+            }
+
+            assertEquals(List.of(Thread.currentThread()), threads);
+            assertEquals("rows", out.toHtml(), "Rendered without waiting for a join");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyValueTest {
+
+    @Test
+    void loadsOnceIncludingNull() {
+        LazyValue<String> value = new LazyValue<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertFalse(value.isLoaded());
+        assertNull(value.get(() -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(value.get(() -> "second"));
+
+        assertTrue(value.isLoaded());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadIsRetried() {
+        LazyValue<String> value = new LazyValue<>();
+
+        assertThrows(IllegalStateException.class, () -> value.get(() -> {
+            throw new IllegalStateException("down");
+        }));
+
+        assertFalse(value.isLoaded());
+        assertEquals("ok", value.get(() -> "ok"));
+    }
+}
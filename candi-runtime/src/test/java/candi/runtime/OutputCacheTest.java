@@ -0,0 +1,184 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputCacheTest {
+
+    private static final OutputCache.Policy MINUTE = new OutputCache.Policy(60_000, 0, Set.of());
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private static byte[] bytes(int size) {
+        return new byte[size];
+    }
+
+    @Test
+    void concurrentMissesRenderOnce() throws Exception {
+        OutputCache cache = new OutputCache(1 << 20, now::get);
+        AtomicInteger renders = new AtomicInteger();
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<OutputCache.Entry> leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.load("k", MINUTE, () -> {
+                    renders.incrementAndGet();
+                    rendering.countDown();
+                    release.await();
+                    return OutputCache.Rendering.of("page".getBytes(StandardCharsets.UTF_8));
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        rendering.await();
+
+        List<Thread> waiters = new ArrayList<>();
+        List<OutputCache.Entry> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            waiters.add(Thread.ofVirtual().start(() -> {
+                try {
+                    OutputCache.Entry entry = cache.load("k", MINUTE, () -> {
+                        renders.incrementAndGet();
+                        return OutputCache.Rendering.of(bytes(1));
+                    });
+                    synchronized (results) {
+                        results.add(entry);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        Thread.sleep(50);
+        release.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+
+        assertEquals(1, renders.get());
+        assertEquals(4, results.size());
+        for (OutputCache.Entry entry : results) {
+            assertEquals("page", new String(entry.body(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void staleEntriesAreServedWithinTheWindowAndRefreshed() throws Exception {
+        OutputCache cache = new OutputCache(1 << 20, now::get);
+        OutputCache.Policy policy = new OutputCache.Policy(1_000, 5_000, Set.of());
+        cache.put("k", "old".getBytes(StandardCharsets.UTF_8), policy);
+
+        now.addAndGet(2_000);
+        OutputCache.Entry stale = cache.get("k");
+        assertNotNull(stale);
+        assertFalse(cache.isFresh(stale));
+
+        CompletableFuture<OutputCache.Entry> refresh =
+                cache.refreshAsync("k", policy, () -> OutputCache.Rendering.of("new".getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(refresh);
+        refresh.get(5, TimeUnit.SECONDS);
+
+        OutputCache.Entry fresh = cache.get("k");
+        assertTrue(cache.isFresh(fresh));
+        assertEquals("new", new String(fresh.body(), StandardCharsets.UTF_8));
+
+        now.addAndGet(10_000);
+        assertNull(cache.get("k"), "past the stale window the entry is gone");
+        assertEquals(new OutputCache.Stats(2, 1, 1, 0, 0, 0, 0), cache.stats());
+    }
+
+    @Test
+    void rendersRunningDuringAnInvalidationAreNotStored() throws Exception {
+        OutputCache cache = new OutputCache(1 << 20, now::get);
+        OutputCache.Policy policy = new OutputCache.Policy(60_000, 5_000, Set.of("posts"));
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+
+        CompletableFuture<OutputCache.Entry> load = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.load("k", policy, () -> {
+                    rendering.countDown();
+                    invalidated.await();
+                    return OutputCache.Rendering.of("before".getBytes(StandardCharsets.UTF_8));
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        rendering.await();
+        cache.invalidateTags("posts");
+        invalidated.countDown();
+
+        assertEquals("before", new String(load.get(5, TimeUnit.SECONDS).body(), StandardCharsets.UTF_8),
+                "The request that rendered still gets its output");
+        assertNull(cache.get("k"), "Output from before the invalidation is not cached");
+
+        CountDownLatch refreshing = new CountDownLatch(1);
+        CountDownLatch cleared = new CountDownLatch(1);
+        CompletableFuture<OutputCache.Entry> refresh = cache.refreshAsync("k", policy, () -> {
+            refreshing.countDown();
+            cleared.await();
+            return OutputCache.Rendering.of("before".getBytes(StandardCharsets.UTF_8));
+        });
+        refreshing.await();
+        cache.invalidate("k");
+        cleared.countDown();
+        refresh.get(5, TimeUnit.SECONDS);
+        assertNull(cache.get("k"));
+
+        cache.load("k", policy, () -> OutputCache.Rendering.of("after".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("after", new String(cache.get("k").body(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void evictsByBytesButKeepsFrequentEntries() {
+        OutputCache cache = new OutputCache(100, now::get);
+        for (int i = 0; i < 5; i++) {
+            cache.get("popular");
+        }
+        cache.put("popular", bytes(60), MINUTE);
+
+        cache.get("once");
+        cache.put("once", bytes(60), MINUTE);
+        assertNotNull(cache.get("popular"), "a one-off key cannot evict a popular one");
+        assertEquals(1, cache.stats().rejections());
+
+        for (int i = 0; i < 10; i++) {
+            cache.get("rising");
+        }
+        cache.put("rising", bytes(60), MINUTE);
+        assertNotNull(cache.get("rising"));
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(60, cache.stats().bytes());
+    }
+
+    @Test
+    void tagsInvalidateTheirEntries() {
+        OutputCache cache = new OutputCache(1 << 20, now::get);
+        cache.put("a", bytes(1), new OutputCache.Policy(60_000, 0, Set.of("posts")));
+        cache.put("b", bytes(1), new OutputCache.Policy(60_000, 0, Set.of("posts", "users")));
+        cache.put("c", bytes(1), new OutputCache.Policy(60_000, 0, Set.of("users")));
+
+        cache.invalidateTags("posts");
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1, cache.stats().entries());
+    }
+}
@@ -0,0 +1,73 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageLoadersTest {
+
+    static class BasePage {
+        final Set<String> loaded = ConcurrentHashMap.newKeySet();
+
+        @Load
+        private void loadUser() {
+            loaded.add("user");
+        }
+
+        @Load
+        void loadStats() {
+            loaded.add("base stats");
+        }
+    }
+
+    static class DashboardPage extends BasePage implements CandiPage {
+        @Load
+        @Override
+        void loadStats() {
+            loaded.add("stats");
+        }
+
+        @Load
+        void loadFeed() {
+            loaded.add("feed");
+        }
+
+        void notALoader() {
+            loaded.add("other");
+        }
+
+        @Override
+        public void render(HtmlOutput out) {
+        }
+    }
+
+    static class BrokenPage implements CandiPage {
+        @Load
+        void load(String id) {
+        }
+
+        @Override
+        public void render(HtmlOutput out) {
+        }
+    }
+
+    @Test
+    void runsEveryLoaderOnceIncludingInheritedOnes() throws Exception {
+        DashboardPage page = new DashboardPage();
+        PageLoaders.load(page, null);
+        assertEquals(Set.of("user", "stats", "feed"), page.loaded);
+    }
+
+    @Test
+    void pageWithoutLoadersIsNoOp() throws Exception {
+        PageLoaders.load(out -> { }, null);
+    }
+
+    @Test
+    void loaderWithParametersIsRejected() {
+        assertThrows(IllegalStateException.class, () -> PageLoaders.load(new BrokenPage(), null));
+    }
+}
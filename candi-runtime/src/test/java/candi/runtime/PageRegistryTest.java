@@ -0,0 +1,144 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageRegistryTest {
+
+    @Test
+    void unknownPageUsesDefaultOutputSize() {
+        PageRegistry registry = new PageRegistry();
+        assertEquals(PageRegistry.DEFAULT_OUTPUT_SIZE, registry.estimateOutputSize("missing"));
+    }
+
+    @Test
+    void outputSizeEstimateFollowsRenders() {
+        PageRegistry registry = new PageRegistry();
+        registry.recordOutputSize("bigPage", 300_000);
+        assertEquals(375_000, registry.estimateOutputSize("bigPage"));
+
+        for (int i = 0; i < 100; i++) {
+            registry.recordOutputSize("bigPage", 100_000);
+        }
+        int estimate = registry.estimateOutputSize("bigPage");
+        assertTrue(estimate >= 125_000 && estimate < 126_000, "estimate: " + estimate);
+    }
+
+    @Test
+    void unregisterForgetsOutputSize() {
+        PageRegistry registry = new PageRegistry();
+        registry.register("page", "/page", Set.of("GET"));
+        registry.recordOutputSize("page", 50_000);
+
+        registry.unregister("page");
+
+        assertEquals(PageRegistry.DEFAULT_OUTPUT_SIZE, registry.estimateOutputSize("page"));
+    }
+
+    @Test
+    void resolvesLiteralsVariablesAndCatchAll() {
+        PageRegistry registry = new PageRegistry();
+        registry.register("home", "/", Set.of("GET"));
+        registry.register("postNew", "/post/new", Set.of("GET", "POST"));
+        registry.register("post", "/post/{id}", Set.of("GET"));
+        registry.register("docs", "/docs/**", Set.of("GET"));
+
+        assertEquals("home", registry.resolveByPath("/").beanName());
+        assertEquals("postNew", registry.resolveByPath("/post/new").beanName(), "Literal beats variable");
+
+        PageRegistry.ResolveResult post = registry.resolveByPath("/post/42");
+        assertEquals("post", post.beanName());
+        assertEquals(Map.of("id", "42"), post.pathVariables());
+
+        assertEquals("docs", registry.resolveByPath("/docs").beanName());
+        assertEquals("docs", registry.resolveByPath("/docs/a/b/c").beanName());
+        assertNull(registry.resolveByPath("/missing"));
+    }
+
+    @Test
+    void resolveFiltersByMethod() {
+        PageRegistry registry = new PageRegistry();
+        registry.register("postNew", "/post/new", Set.of("GET"));
+        registry.register("post", "/post/{id}", Set.of("GET", "DELETE"));
+
+        assertEquals("post", registry.resolve("/post/new", "DELETE").beanName());
+        assertNull(registry.resolve("/post/new", "PUT"));
+    }
+
+    @Test
+    void negativeCacheIsDroppedWhenRoutesChange() {
+        PageRegistry registry = new PageRegistry();
+        registry.register("home", "/", Set.of("GET"));
+
+        assertNull(registry.resolveByPath("/later"));
+        registry.register("later", "/later", Set.of("GET"));
+        assertEquals("later", registry.resolveByPath("/later").beanName());
+
+        registry.unregister("later");
+        assertNull(registry.resolveByPath("/later"));
+    }
+
+    @Test
+    void negativeCacheIsBounded() {
+        RouteTable table = new RouteTable(List.of(entry("home", "/")));
+        for (int i = 0; i < RouteTable.NEGATIVE_CACHE_SIZE * 3; i++) {
+            assertNull(table.resolve("/random/" + i, null));
+        }
+        assertTrue(table.negativeCacheSize() <= RouteTable.NEGATIVE_CACHE_SIZE);
+    }
+
+    @Test
+    void compiledRoutingMatchesFullScan() {
+        List<PageRegistry.RouteEntry> routes = List.of(
+                entry("home", "/"),
+                entry("about", "/about"),
+                entry("aboutTeam", "/about/team"),
+                entry("post", "/post/{id}"),
+                entry("postEdit", "/post/{id}/edit"),
+                entry("postNew", "/post/new"),
+                entry("user", "/user/{name}/posts/{page}"),
+                entry("files", "/files/{*path}"),
+                entry("glob", "/img/*.png"),
+                entry("single", "/a?c"),
+                entry("everything", "/api/**"));
+        RouteTable table = new RouteTable(routes);
+
+        List<String> paths = List.of("/", "/about", "/about/", "/about/team", "/about/x",
+                "/post/1", "/post/1/", "/post/new", "/post/1/edit", "/post/1/edit/x", "/post//edit",
+                "/user/bob/posts/2", "/user/bob/posts", "/files", "/files/a/b.txt",
+                "/img/logo.png", "/img/logo.jpg", "/abc", "/abbc", "/api", "/api/v1/x",
+                "/post/caf%C3%A9", "/about;v=1", "/nope", "//", "");
+
+        for (String path : paths) {
+            assertEquals(fullScan(routes, path), table.resolve(path, null), "path: " + path);
+        }
+    }
+
+    private static final PathPatternParser PARSER = new PathPatternParser();
+
+    private static PageRegistry.RouteEntry entry(String beanName, String path) {
+        return new PageRegistry.RouteEntry(PARSER.parse(path), beanName, Set.of("GET"));
+    }
+
+    private static PageRegistry.ResolveResult fullScan(List<PageRegistry.RouteEntry> routes, String path) {
+        PathContainer container = PathContainer.parsePath(path);
+        PageRegistry.ResolveResult best = null;
+        PathPattern bestPattern = null;
+        for (PageRegistry.RouteEntry entry : routes) {
+            PathPattern.PathMatchInfo info = entry.pattern().matchAndExtract(container);
+            if (info != null && (bestPattern == null || entry.pattern().compareTo(bestPattern) < 0)) {
+                bestPattern = entry.pattern();
+                best = new PageRegistry.ResolveResult(entry.beanName(), info.getUriVariables());
+            }
+        }
+        return best;
+    }
+}
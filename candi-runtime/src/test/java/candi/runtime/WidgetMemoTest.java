@@ -0,0 +1,104 @@
+package candi.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WidgetMemoTest {
+
+    @Widget(pure = true)
+    static class Badge {
+    }
+
+    @Widget(pure = true, memoScope = Widget.Scope.REQUEST)
+    static class Avatar {
+    }
+
+    static class Badge_Candi extends Badge {
+    }
+
+    private static HtmlOutput.Captured output(byte[] body) {
+        return new HtmlOutput.Captured(body, Map.of());
+    }
+
+    @Test
+    void applicationMemoIsSharedAndBounded() {
+        WidgetMemo memo = new WidgetMemo(false, 2);
+        HtmlOutput first = new HtmlOutput();
+        HtmlOutput second = new HtmlOutput();
+
+        memo.put(first, List.of("a"), output(HtmlOutput.utf8("<b>a</b>")));
+        assertArrayEquals(HtmlOutput.utf8("<b>a</b>"), memo.get(second, List.of("a")).body());
+
+        memo.put(first, List.of("b"), output(new byte[1]));
+        memo.get(first, List.of("a"));
+        memo.put(first, List.of("c"), output(new byte[1]));
+        assertEquals(2, memo.size());
+        assertNull(memo.get(first, List.of("b")), "Least recently used entry is evicted");
+        assertNotNull(memo.get(first, List.of("a")));
+    }
+
+    @Test
+    void requestMemoLivesOnTheOutput() {
+        WidgetMemo memo = WidgetMemo.of(Avatar.class);
+        HtmlOutput request = new HtmlOutput();
+        memo.put(request, Arrays.asList("bob", null), output(new byte[] {1}));
+
+        assertNotNull(memo.get(request, Arrays.asList("bob", null)));
+        assertNull(memo.get(new HtmlOutput(), Arrays.asList("bob", null)));
+
+        request.reset();
+        assertNull(memo.get(request, Arrays.asList("bob", null)));
+    }
+
+    @Test
+    void scopeIsReadFromTheUserClass() {
+        assertSame(WidgetMemo.of(Badge_Candi.class), WidgetMemo.of(Badge_Candi.class));
+        HtmlOutput out = new HtmlOutput();
+        WidgetMemo.of(Badge_Candi.class).put(out, List.of(), output(new byte[] {1}));
+        assertNotNull(WidgetMemo.of(Badge_Candi.class).get(new HtmlOutput(), List.of()));
+    }
+
+    @Test
+    void largeOutputsAreNotKept() {
+        WidgetMemo memo = new WidgetMemo(false, 8);
+        memo.put(new HtmlOutput(), List.of(), output(new byte[WidgetMemo.MAX_ENTRY_BYTES + 1]));
+        assertEquals(0, memo.size());
+    }
+
+    @Test
+    void hitsPushWhatTheWidgetPushed() {
+        WidgetMemo memo = new WidgetMemo(false, 8);
+        HtmlOutput out = new HtmlOutput();
+        for (int call = 0; call < 2; call++) {
+            // Written the way the compiler generates a pure widget call
+            HtmlOutput.Captured memoized = memo.get(out, List.of("x"));
+            if (memoized != null) {
+                out.replay(memoized);
+            } else {
+                HtmlOutput.Region region = out.beginRegion();
+                try {
+                    out.append("<span class=\"badge\">x</span>");
+                    out.pushStack("styles", "<link href=\"badge.css\">");
+                } finally {
+                    memoized = out.endRegion(region);
+                }
+                memo.put(out, List.of("x"), memoized);
+            }
+        }
+        out.renderStack("styles");
+
+        assertEquals("<span class=\"badge\">x</span><span class=\"badge\">x</span>"
+                + "<link href=\"badge.css\"><link href=\"badge.css\">", out.toHtml());
+
+        HtmlOutput next = new HtmlOutput();
+        next.replay(memo.get(next, List.of("x")));
+        next.renderStack("styles");
+        assertEquals("<span class=\"badge\">x</span><link href=\"badge.css\">", next.toHtml(),
+                "A later request gets the widget's assets from the memo");
+    }
+}
@@ -25,6 +25,7 @@ public class CandiGraalVmHints implements RuntimeHintsRegistrar {
         registerClass(hints, CandiPage.class);
         registerClass(hints, CandiRoute.class);
         registerClass(hints, HtmlOutput.class);
+        registerClass(hints, HtmlOutputPool.class);
         registerClass(hints, ActionResult.class);
         registerClass(hints, ActionResult.Redirect.class);
         registerClass(hints, ActionResult.Render.class);
@@ -33,13 +34,26 @@ public class CandiGraalVmHints implements RuntimeHintsRegistrar {
         registerClass(hints, PageRegistry.class);
         registerClass(hints, CandiHandlerMapping.class);
         registerClass(hints, CandiHandlerAdapter.class);
+        registerClass(hints, CandiPageFactory.class);
         registerClass(hints, CandiLayout.class);
         registerClass(hints, SlotProvider.class);
+        registerClass(hints, EarlyFlush.class);
         registerClass(hints, CandiComponent.class);
+        registerClass(hints, Widget.class);
+        registerClass(hints, WidgetMemo.class);
         registerClass(hints, Post.class);
         registerClass(hints, Put.class);
         registerClass(hints, Delete.class);
         registerClass(hints, Patch.class);
+        registerClass(hints, Load.class);
+        registerClass(hints, LazyLoad.class);
+        registerClass(hints, LazyValue.class);
+        registerClass(hints, CachedPage.class);
+        registerClass(hints, Invalidates.class);
+        registerClass(hints, OutputCache.class);
+
+        // Client scripts served from the runtime jar (e.g. /candi/fragments.js)
+        hints.resources().registerPattern("META-INF/resources/candi/*");
     }
 
     private void registerClass(RuntimeHints hints, Class<?> clazz) {
@@ -9,6 +9,15 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  * candi.dev=true                    # Enable dev mode (hot reload + live reload)
  * candi.source-dir=src/main/candi   # Directory containing .page.html files
  * candi.package=pages               # Default package for generated page classes
+ * candi.output.flush-threshold=0    # Stream pages in chunks of N bytes (0 = buffer whole page)
+ * candi.output.early-flush=false   # Flush the layout head before loading page data
+ * candi.output.pool.size=64         # Reusable output buffers kept (0 = no pooling)
+ * candi.output.pool.max-buffer-size=1048576  # Pooled buffers above this are trimmed
+ * candi.etag.enabled=false         # Hash buffered responses into a strong ETag (304 on match)
+ * candi.defer.timeout=10000         # Max milliseconds to keep streaming {{ defer }} blocks
+ * candi.load.timeout=0              # Max milliseconds for a page's @Load methods (0 = no limit)
+ * candi.cache.max-size=67108864     # Byte budget of the @CachedPage output cache
+ * candi.widget.max-parallel=4       # Async widgets rendering at once per response (0 = inline)
  * </pre>
  */
 @ConfigurationProperties(prefix = "candi")
@@ -30,6 +39,36 @@ public class CandiProperties {
      */
     private String packageName = "pages";
 
+    /**
+     * Response output settings.
+     */
+    private final Output output = new Output();
+
+    /**
+     * Page data loader settings.
+     */
+    private final Load load = new Load();
+
+    /**
+     * Deferred block settings.
+     */
+    private final Defer defer = new Defer();
+
+    /**
+     * ETag settings.
+     */
+    private final Etag etag = new Etag();
+
+    /**
+     * Output cache settings.
+     */
+    private final Cache cache = new Cache();
+
+    /**
+     * Widget rendering settings.
+     */
+    private final Widget widget = new Widget();
+
     public boolean isDev() {
         return dev;
     }
@@ -53,4 +92,203 @@ public class CandiProperties {
     public void setPackageName(String packageName) {
         this.packageName = packageName;
     }
+
+    public Output getOutput() {
+        return output;
+    }
+
+    public Load getLoad() {
+        return load;
+    }
+
+    public Defer getDefer() {
+        return defer;
+    }
+
+    public Etag getEtag() {
+        return etag;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Widget getWidget() {
+        return widget;
+    }
+
+    /**
+     * Response output settings, read by CandiHandlerAdapter.
+     */
+    public static class Output {
+
+        /**
+         * Buffered bytes after which rendered HTML is flushed to the client.
+         * 0 buffers the whole page before writing it.
+         */
+        private int flushThreshold = 0;
+
+        /**
+         * Stream full-page renders and flush the layout markup before the first slot
+         * (typically the head) before running onGet() and the @Load methods.
+         */
+        private boolean earlyFlush = false;
+
+        /**
+         * Output buffer pool settings, read by HtmlOutputPool.
+         */
+        private final Pool pool = new Pool();
+
+        public int getFlushThreshold() {
+            return flushThreshold;
+        }
+
+        public void setFlushThreshold(int flushThreshold) {
+            this.flushThreshold = flushThreshold;
+        }
+
+        public boolean isEarlyFlush() {
+            return earlyFlush;
+        }
+
+        public void setEarlyFlush(boolean earlyFlush) {
+            this.earlyFlush = earlyFlush;
+        }
+
+        public Pool getPool() {
+            return pool;
+        }
+    }
+
+    /**
+     * Output buffer pool settings.
+     */
+    public static class Pool {
+
+        /**
+         * Maximum number of idle buffers kept for reuse. 0 disables pooling.
+         */
+        private int size = 64;
+
+        /**
+         * Buffers that grew beyond this many bytes are shrunk when returned to the pool.
+         */
+        private int maxBufferSize = 1048576;
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public int getMaxBufferSize() {
+            return maxBufferSize;
+        }
+
+        public void setMaxBufferSize(int maxBufferSize) {
+            this.maxBufferSize = maxBufferSize;
+        }
+    }
+
+    /**
+     * Page data loader settings, read by CandiHandlerAdapter.
+     */
+    public static class Load {
+
+        /**
+         * Milliseconds a page's @Load methods may take together before they are
+         * cancelled and the request fails. 0 waits without limit.
+         */
+        private long timeout = 0;
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * Deferred block settings, read by CandiHandlerAdapter.
+     */
+    public static class Defer {
+
+        /**
+         * Milliseconds the response is kept open after the page for its deferred blocks.
+         * Blocks not finished by then keep their fallback content.
+         */
+        private long timeout = 10000;
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * ETag settings, read by CandiHandlerAdapter.
+     */
+    public static class Etag {
+
+        /**
+         * Hash buffered GET/HEAD responses into a strong ETag and answer matching
+         * If-None-Match requests with 304. Pages overriding etag() are validated without this.
+         */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Output cache settings, read by OutputCache.
+     */
+    public static class Cache {
+
+        /**
+         * Total bytes of rendered output kept for @CachedPage pages. Past it, least
+         * recently used entries are evicted unless they are requested more often.
+         */
+        private long maxSize = 67108864;
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    /**
+     * Widget rendering settings, read by CandiHandlerAdapter.
+     */
+    public static class Widget {
+
+        /**
+         * Widget calls marked async that render concurrently for one response. Further
+         * async calls render inline until a slot frees up; 0 renders all of them inline.
+         */
+        private int maxParallel = 4;
+
+        public int getMaxParallel() {
+            return maxParallel;
+        }
+
+        public void setMaxParallel(int maxParallel) {
+            this.maxParallel = maxParallel;
+        }
+    }
 }
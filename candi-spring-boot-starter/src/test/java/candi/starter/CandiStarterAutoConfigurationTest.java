@@ -67,6 +67,46 @@ class CandiStarterAutoConfigurationTest {
             assertFalse(props.isDev());
             assertEquals("src/main/candi", props.getSourceDir());
             assertEquals("pages", props.getPackageName());
+            assertEquals(0, props.getOutput().getFlushThreshold());
+            assertFalse(props.getOutput().isEarlyFlush());
+            assertEquals(64, props.getOutput().getPool().getSize());
+            assertEquals(0, props.getLoad().getTimeout());
+            assertEquals(10000, props.getDefer().getTimeout());
+            assertFalse(props.getEtag().isEnabled());
+            assertEquals(67108864, props.getCache().getMaxSize());
+            assertEquals(4, props.getWidget().getMaxParallel());
         });
     }
+
+    @Test
+    void outputPropertiesAreBound() {
+        contextRunner
+                .withPropertyValues("candi.output.flush-threshold=16384",
+                        "candi.output.early-flush=true",
+                        "candi.output.pool.size=8",
+                        "candi.output.pool.max-buffer-size=65536")
+                .run(context -> {
+                    CandiProperties props = context.getBean(CandiProperties.class);
+                    assertEquals(16384, props.getOutput().getFlushThreshold());
+                    assertTrue(props.getOutput().isEarlyFlush());
+                    assertEquals(8, props.getOutput().getPool().getSize());
+                    assertEquals(65536, props.getOutput().getPool().getMaxBufferSize());
+                });
+    }
+
+    @Test
+    void requestLifecyclePropertiesAreBound() {
+        contextRunner
+                .withPropertyValues("candi.load.timeout=2500", "candi.defer.timeout=3000",
+                        "candi.etag.enabled=true", "candi.cache.max-size=1048576",
+                        "candi.widget.max-parallel=8")
+                .run(context -> {
+                    CandiProperties props = context.getBean(CandiProperties.class);
+                    assertEquals(2500, props.getLoad().getTimeout());
+                    assertEquals(3000, props.getDefer().getTimeout());
+                    assertTrue(props.getEtag().isEnabled());
+                    assertEquals(1048576, props.getCache().getMaxSize());
+                    assertEquals(8, props.getWidget().getMaxParallel());
+                });
+    }
 }